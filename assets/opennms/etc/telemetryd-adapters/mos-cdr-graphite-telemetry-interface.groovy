@@ -44,7 +44,7 @@ import org.opennms.netmgt.telemetry.protocols.graphite.adapter.GraphiteMetric
  * Simple graphite handler. No schema support, you'll have to parse/handle the message paths yourself.
  *
  * You can send test data by doing something like (using IPv4 and setting 'localhost' as the source):
- * <code>echo "mos-cdr:127.0.0.1:Acme_Calling_MOS 100 `date +%s`" | nc -u -w1 -s localhost localhost 2003</code>
+ * <code>echo "mos-cdr:127.0.0.1:Acme_Calling_MOS 4.3 `date +%s`" | nc -u -w1 -s localhost localhost 2003</code>
  *
  * Note that log messages using 'log' will show up in etc/karaf.log. Depending on your Karaf log configuration
  * settings, you may need to use 'log.error()' for them to show up.
@@ -58,17 +58,28 @@ import org.opennms.netmgt.telemetry.protocols.graphite.adapter.GraphiteMetric
  */
 @Slf4j
 class CollectionSetGenerator {
+    /** Graphite base paths of the CDR metrics; must include 'graphiteBasePath' of the processor's runConfig.json. */
+    static final List<String> CDR_BASE_PATHS = ["mos-cdr"]
+
+    /** Graphite base paths of the realm rollups; must include 'realmRollupPath' of the processor's runConfig.json. */
+    static final List<String> REALM_BASE_PATHS = ["mos-cdr-realm"]
+
     static generate(agent, builder, graphiteMsg, factory, agentList, nodeDao) {
         log.debug("Generating collection set for message: {}", graphiteMsg)
 
-        if (graphiteMsg.path.startsWith("mos-cdr:")) {
+        String[] split = graphiteMsg.path.split(":")
+
+        if (split.length == 3 && CDR_BASE_PATHS.contains(split[0])) {
             log.debug("Received CDR message, path {}, value {}, timestamp: {}",
-                graphiteMsg.getPath(), graphiteMsg.longValue(), graphiteMsg.getTimestamp());
+                graphiteMsg.getPath(), graphiteMsg.getValue(), graphiteMsg.getTimestamp());
 
             // message will be something like:
-            // "mos-cdr:127.0.0.1:Acme_Called_MOS 123 1659916800000"
-            String[] split = graphiteMsg.path.split(":");
-            String ipAddr = split[1];
+            // "mos-cdr:127.0.0.1:Acme_Called_MOS 4.3 1659916800000"
+            // IPv6 addresses have '-' in place of ':', e.g. "mos-cdr:2001-db8--1:Acme_Called_MOS 4.3 1659916800000"
+            // With 'aggregateStepSeconds' set, the metric name has the statistic appended,
+            // e.g. "mos-cdr:127.0.0.1:Acme_Called_MOS_mean 4.21 1659916800000", and with 'quantiles' set the quantile,
+            // e.g. "mos-cdr:127.0.0.1:Acme_Called_MOS_p99 4.4 1659916800000"; they are stored under that name
+            String ipAddr = split[1].replace('-', ':');
             String varName = split[2];
 
             // Parse IP address, see if this OpenNMS shard contains the corresponding node
@@ -110,9 +121,7 @@ class CollectionSetGenerator {
             Date d = new Date(graphiteMsg.getTimestamp());
             //log.debug("Date from timestamp: {}", d.toString());
 
-            // MOS values are sent in as 100-500
-            // We convert here to 1.0-5.0
-            double doubleVal = ((double) graphiteMsg.longValue()) / 100.0;
+            double doubleVal = gaugeValue(varName, String.valueOf(graphiteMsg.getValue()));
             log.debug("Adding gauge value: {}", doubleVal);
 
             // will create a timeseries record such as:
@@ -120,10 +129,49 @@ class CollectionSetGenerator {
             interfaceResource.setTimestamp(d);
             builder.withTimestamp(d);
             builder.withGauge(interfaceResource, "mos-cdr", varName, doubleVal);
+        } else if (split.length == 3 && REALM_BASE_PATHS.contains(split[0])) {
+            log.debug("Received realm message, path {}, value {}, timestamp: {}",
+                graphiteMsg.getPath(), graphiteMsg.getValue(), graphiteMsg.getTimestamp());
+
+            // message will be something like:
+            // "mos-cdr-realm:core:Ingress_Acme_Calling_MOS_mean 4.21 1659916800000"
+            // A realm is not tied to a device, so its metrics are stored on the node the messages are sent from,
+            // which must be a node in OpenNMS, under a resource per realm such as "realm-core"
+            String realm = split[1];
+            String varName = split[2];
+
+            NodeLevelResource nodeLevelResource = new NodeLevelResource(agent.getNodeId());
+            InterfaceLevelResource realmResource = new InterfaceLevelResource(nodeLevelResource, "realm-" + realm);
+
+            Date d = new Date(graphiteMsg.getTimestamp());
+            double doubleVal = gaugeValue(varName, String.valueOf(graphiteMsg.getValue()));
+            log.debug("Adding realm gauge value: {}", doubleVal);
+
+            realmResource.setTimestamp(d);
+            builder.withTimestamp(d);
+            builder.withGauge(realmResource, split[0], varName, doubleVal);
         } else {
             log.warn("Script does not know how to handle this message from graphite. :(  {}", graphiteMsg);
         }
     }
+
+    /**
+     * The value to store for a metric. Values sent as decimals are already scaled by the processor, e.g. MOS as 1.0-5.0
+     * with a 'scale' of 0.01, and are stored as they are, as are other integers, e.g. jitter in ms.
+     * Integer MOS values, as sent by default and by the Groovy message generator script, are 100-500,
+     * and are converted to 1.0-5.0 here.
+     * Aggregates such as "Acme_Calling_MOS_count", "Acme_Calling_MOS_sum" or "Acme_Calling_MOS_p99" are never converted;
+     * they are in the units the metric is sent in, so MOS aggregates are 1.0-5.0 only if MOS has a 'scale' of 0.01.
+     */
+    static double gaugeValue(String varName, String value) {
+        double doubleVal = Double.parseDouble(value);
+
+        if (varName.endsWith("_MOS") && value ==~ /[-+]?\d+/) {
+            return doubleVal / 100.0;
+        }
+
+        return doubleVal;
+    }
 }
 
 // The following variables are passed in as globals from the adapter:
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opennms.moscdrprocessor.log.ConsoleLogAdapter;
+import org.opennms.moscdrprocessor.model.MetricBatch;
+
+/**
+ * Sends batches to another {@link GraphiteClient} on a sender thread of its own, through a bounded queue,
+ * so a slow or unreachable recipient neither delays nor fails the sends to the others.
+ *
+ * {@link #sendBatch(MetricBatch)} only queues the batch, which must not be changed afterwards; a batch may be queued
+ * to several clients. The other send methods are passed straight on.
+ * When the queue is full, the batch is dropped, or with a block timeout, dropped only if no room is made in time.
+ * Errors sending a batch are logged and counted, and the last one is thrown by the next call to {@link #sendBatch}.
+ * {@link #close()} waits for the queue to drain, for up to the drain timeout, then closes the other client.
+ */
+public class AsyncGraphiteClient implements GraphiteClient {
+    public static final long DEFAULT_DRAIN_MILLIS = 60_000L;
+
+    /** How long a batch for a TCP or pickle recipient waits for room in the queue before it is dropped. */
+    public static final long DEFAULT_BLOCK_MILLIS = 30_000L;
+
+    private static final MetricBatch STOP = new MetricBatch();
+
+    protected final ConsoleLogAdapter LOG = new ConsoleLogAdapter();
+
+    private final GraphiteClient client;
+
+    private final BlockingQueue<Queued> queue;
+
+    private final long drainMillis;
+
+    private final long blockMillis;
+
+    private final AtomicLong sentBatches = new AtomicLong();
+
+    private final AtomicLong droppedBatches = new AtomicLong();
+
+    private final AtomicLong droppedMetrics = new AtomicLong();
+
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private final AtomicLong lastLagMillis = new AtomicLong();
+
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    /** Last error sending a batch, not yet thrown to the caller. */
+    private final AtomicReference<GraphiteClientException> lastFailure = new AtomicReference<>();
+
+    private Thread sender;
+
+    public AsyncGraphiteClient(GraphiteClient client, int queueSize, boolean debug) {
+        this(client, queueSize, DEFAULT_DRAIN_MILLIS, 0L, debug);
+    }
+
+    /**
+     * @param blockMillis how long {@link #sendBatch} waits for room in a full queue before dropping the batch;
+     *     0 drops it straight away
+     */
+    public AsyncGraphiteClient(GraphiteClient client, int queueSize, long drainMillis, long blockMillis, boolean debug) {
+        this.client = client;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.drainMillis = drainMillis;
+        this.blockMillis = blockMillis;
+        LOG.setDebug(debug);
+    }
+
+    /** The client batches are sent with. */
+    public GraphiteClient getClient() {
+        return client;
+    }
+
+    @Override
+    public String getHostName() {
+        return client.getHostName();
+    }
+
+    @Override
+    public int getPort() {
+        return client.getPort();
+    }
+
+    @Override
+    public void sendMetric(String key, Number value) {
+        client.sendMetric(key, value);
+    }
+
+    @Override
+    public void sendMetrics(Map<String, List<Number>> metrics) {
+        client.sendMetrics(metrics);
+    }
+
+    @Override
+    public void sendMetric(String key, Number value, long timeStamp) {
+        client.sendMetric(key, value, timeStamp);
+    }
+
+    @Override
+    public void sendMetrics(Map<String, List<Number>> metrics, long timeStamp) {
+        client.sendMetrics(metrics, timeStamp);
+    }
+
+    @Override
+    public void sendMessages(List<String> messages) {
+        try {
+            sendBatch(MetricBatch.fromLines(messages));
+        } catch (IllegalArgumentException e) {
+            throw new GraphiteClientException("Error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Queue a batch to send.
+     * @throws GraphiteClientException if sending an earlier batch failed; this batch is still queued
+     */
+    @Override
+    public void sendBatch(MetricBatch batch) {
+        ensureSender();
+
+        // taken first, so it is the failure of an earlier batch
+        GraphiteClientException failure = lastFailure.getAndSet(null);
+
+        if (!offer(new Queued(batch))) {
+            droppedBatches.incrementAndGet();
+            droppedMetrics.addAndGet(batch.size());
+
+            LOG.warn("Send queue for host: {}, port: {} is full, dropped {} metrics", getHostName(), getPort(), batch.size());
+        }
+
+        if (failure != null) {
+            throw new GraphiteClientException(
+                String.format("Error sending to host: %s, port: %d: %s", getHostName(), getPort(), failure.getMessage()), failure);
+        }
+    }
+
+    /** Log the queue statistics, e.g. after each file. */
+    public void logStatistics() {
+        LOG.info("GraphiteClient queue for host: {}, port: {} has {} batches queued, sent {}, {} failed, {} dropped ({} metrics), "
+            + "lag {}ms, max lag {}ms",
+            getHostName(), getPort(), getQueuedBatches(), getSentBatches(), getFailedBatches(), getDroppedBatches(),
+            getDroppedMetrics(), getLastLagMillis(), getMaxLagMillis());
+    }
+
+    @Override
+    public void close() {
+        Thread stopping;
+
+        synchronized (this) {
+            stopping = sender;
+            sender = null;
+        }
+
+        if (stopping != null) {
+            try {
+                final long deadline = System.currentTimeMillis() + drainMillis;
+
+                if (queue.offer(new Queued(STOP), drainMillis, TimeUnit.MILLISECONDS)) {
+                    stopping.join(Math.max(1L, deadline - System.currentTimeMillis()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (stopping.isAlive()) {
+                stopping.interrupt();
+            }
+
+            // whatever didn't drain in time
+            Queued queued;
+
+            while ((queued = queue.poll()) != null) {
+                if (queued.batch != STOP) {
+                    droppedBatches.incrementAndGet();
+                    droppedMetrics.addAndGet(queued.batch.size());
+                }
+            }
+
+            logStatistics();
+        }
+
+        client.close();
+    }
+
+    /** Batches waiting to be sent. */
+    public int getQueuedBatches() {
+        return queue.size();
+    }
+
+    public long getSentBatches() {
+        return sentBatches.get();
+    }
+
+    /** Batches dropped because the queue was full, or didn't drain on close. */
+    public long getDroppedBatches() {
+        return droppedBatches.get();
+    }
+
+    public long getDroppedMetrics() {
+        return droppedMetrics.get();
+    }
+
+    /** Batches the other client failed to send. */
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    /** Time from queueing the last batch to having sent it. */
+    public long getLastLagMillis() {
+        return lastLagMillis.get();
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    private boolean offer(Queued queued) {
+        if (blockMillis <= 0) {
+            return queue.offer(queued);
+        }
+
+        try {
+            return queue.offer(queued, blockMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized void ensureSender() {
+        if (sender == null) {
+            sender = new Thread(this::drain, "graphite-send-" + getHostName() + ":" + getPort());
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Queued queued = queue.take();
+
+                if (queued.batch == STOP) {
+                    return;
+                }
+
+                try {
+                    client.sendBatch(queued.batch);
+                    sentBatches.incrementAndGet();
+                } catch (GraphiteClientException e) {
+                    lastFailure.set(e);
+                    failedBatches.incrementAndGet();
+                    LOG.warn("Error sending {} metrics to host: {}, port: {}: {}", queued.batch.size(), getHostName(), getPort(), e.getMessage());
+                } catch (RuntimeException e) {
+                    // any other error must not stop the sender, or the queue would never drain again
+                    lastFailure.set(new GraphiteClientException("Error: " + e, e));
+                    failedBatches.incrementAndGet();
+                    LOG.warn("Error sending {} metrics to host: {}, port: {}: {}", queued.batch.size(), getHostName(), getPort(), e.toString());
+                }
+
+                long lag = System.currentTimeMillis() - queued.queuedMillis;
+                lastLagMillis.set(lag);
+                maxLagMillis.accumulateAndGet(lag, Math::max);
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Sender for host: {}, port: {} interrupted", getHostName(), getPort());
+        }
+    }
+
+    private static class Queued {
+        final MetricBatch batch;
+        final long queuedMillis = System.currentTimeMillis();
+
+        Queued(MetricBatch batch) {
+            this.batch = batch;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.moscdrprocessor.log.ConsoleLogAdapter;
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+/**
+ * Common part of the {@link GraphiteClient} transports: everything is turned into a {@link MetricBatch},
+ * which the transport sends in {@link #sendBatch(MetricBatch)}.
+ */
+public abstract class BaseGraphiteClient implements GraphiteClient {
+    protected final String host;
+    protected final int port;
+
+    protected final ConsoleLogAdapter LOG = new ConsoleLogAdapter();
+
+    protected BaseGraphiteClient(String host, int port, boolean debug) {
+        this.host = host;
+        this.port = port;
+        LOG.setDebug(debug);
+    }
+
+    @Override
+    public String getHostName() {
+        return this.host;
+    }
+
+    @Override
+    public int getPort() {
+        return this.port;
+    }
+
+    @Override
+    public void sendMetric(String key, Number value) {
+        sendMetric(key, value, getCurrentTimestamp());
+    }
+     
+    @Override
+    public void sendMetrics(Map<String, List<Number>> metrics) {
+        sendMetrics(metrics, getCurrentTimestamp());
+    }
+
+    @Override
+    public void sendMetric(String key, Number value, long timestamp) {
+        final var map = Map.of(key, List.of(value));
+
+        sendMetrics(map, timestamp);
+    }
+  
+    @Override
+    public void sendMetrics(Map<String, List<Number>> metrics, long timeStamp) {
+        sendMetricsImpl(metrics, timeStamp);
+    }
+
+    @Override
+    public void sendMessages(List<String> messages) {
+        MetricBatch batch;
+
+        try {
+            batch = MetricBatch.fromLines(messages);
+        } catch (IllegalArgumentException e) {
+            throw new GraphiteClientException("Error: " + e.getMessage(), e);
+        }
+
+        sendBatch(batch);
+    }
+
+    private void sendMetricsImpl(Map<String, List<Number>> metrics, long timeStamp) {
+        LOG.info("GraphiteClient.sendMetrics start");
+        LOG.debug("host: {}, port: {}", host, port);
+
+        // ad hoc paths, kept out of the shared path table
+        MetricBatch batch = new MetricBatch(new MetricPathTable(), metrics.size());
+
+        for (Map.Entry<String, List<Number>> metric : metrics.entrySet()) {
+            for (Number value : metric.getValue()) {
+                batch.add(metric.getKey(), value, timeStamp);
+            }
+        }
+
+        sendBatch(batch);
+
+        LOG.info("GraphiteClient.sendMetrics completed.");
+    }
+
+    private long getCurrentTimestamp() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
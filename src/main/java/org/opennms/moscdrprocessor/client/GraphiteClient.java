@@ -31,7 +31,9 @@ package org.opennms.moscdrprocessor.client;
 import java.util.List;
 import java.util.Map;
 
-public interface GraphiteClient {
+import org.opennms.moscdrprocessor.model.MetricBatch;
+
+public interface GraphiteClient extends AutoCloseable {
     String getHostName();
 
     int getPort();
@@ -44,5 +46,13 @@ public interface GraphiteClient {
   
     void sendMetrics(Map<String, List<Number>> metrics, long timeStamp);
 
+    /** Send Graphite plaintext lines, "path value timestamp"; these are parsed into a {@link MetricBatch}. */
     void sendMessages(List<String> messages);
+
+    /** Send a batch of metrics, encoded in this client's wire format. */
+    void sendBatch(MetricBatch batch);
+
+    /** Release the connection; the client connects again if it is used after this. */
+    @Override
+    void close();
 }
@@ -29,122 +29,237 @@
 package org.opennms.moscdrprocessor.client;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
-import org.opennms.moscdrprocessor.log.ConsoleLogAdapter;
+import org.opennms.moscdrprocessor.model.MetricBatch;
 
-public class GraphiteClientImpl implements GraphiteClient {
-    private String host;
-    private int port;
+/**
+ * Sends Graphite plaintext lines over UDP.
+ *
+ * The client is long-lived: it keeps a connected {@link DatagramChannel}, and the resolved address of the host,
+ * which is resolved again once it is older than the address TTL; the channel is reconnected if the address changed.
+ * Lines are copied into a reused direct buffer to be written. Sends are synchronized, so one client can be shared
+ * by all worker threads, see {@link GraphiteClientRegistry}.
+ *
+ * Each datagram is filled with as many complete lines as fit in the max packet size; a line is never split,
+ * and a line longer than that is sent on its own. A line too long for any datagram is skipped, with a warning.
+ * The Graphite UDP listener of OpenNMS reads every line of a datagram.
+ */
+public class GraphiteClientImpl extends BaseGraphiteClient {
+    /** Name of this transport for 'RunConfig.RecipientInfo.protocol'. */
+    public static final String PROTOCOL = "udp";
+
+    public static final long DEFAULT_ADDRESS_TTL_MILLIS = 60_000L;
+
+    /** Fits in a 1500 byte Ethernet MTU with IP and UDP headers to spare. */
+    public static final int DEFAULT_MAX_PACKET_BYTES = 1400;
+
+    /** Largest UDP payload over IPv4. */
+    public static final int MAX_DATAGRAM_BYTES = 65507;
+
+    /** Batches are encoded into this, then sent a line at a time. */
+    private final GraphiteLineEncoder lineEncoder = new GraphiteLineEncoder();
+
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+
+    private final long addressTtlMillis;
+
+    private final int maxPacketBytes;
+
+    private long packetsSent;
+
+    private long linesSent;
+
+    private long linesSkipped;
+
+    private long bytesSent;
 
-    protected final ConsoleLogAdapter LOG = new ConsoleLogAdapter();
+    private long firstSendMillis;
+
+    private long lastSendMillis;
+
+    private DatagramChannel channel;
+
+    private InetSocketAddress address;
+
+    private long addressResolvedMillis;
 
     public GraphiteClientImpl(String host, int port, boolean debug) {
-        this.host = host;
-        this.port = port;
-        LOG.setDebug(debug);
+        this(host, port, debug, DEFAULT_MAX_PACKET_BYTES, DEFAULT_ADDRESS_TTL_MILLIS);
     }
 
-    @Override
-    public String getHostName() {
-        return this.host;
+    /**
+     * @param maxPacketBytes most bytes of lines to pack into a datagram, at most {@link #MAX_DATAGRAM_BYTES};
+     *                       0 sends one line per datagram
+     */
+    public GraphiteClientImpl(String host, int port, boolean debug, int maxPacketBytes, long addressTtlMillis) {
+        super(host, port, debug);
+        this.maxPacketBytes = Math.min(Math.max(0, maxPacketBytes), MAX_DATAGRAM_BYTES);
+        this.addressTtlMillis = addressTtlMillis;
     }
 
     @Override
-    public int getPort() {
-        return this.port;
+    public synchronized void sendBatch(MetricBatch batch) {
+        lineEncoder.clear();
+        lineEncoder.encode(batch);
+
+        sendLines(lineEncoder);
     }
 
     @Override
-    public void sendMetric(String key, Number value) {
-        sendMetric(key, value, getCurrentTimestamp());
+    public synchronized void close() {
+        if (packetsSent > 0) {
+            LOG.info("GraphiteClient sent {} lines in {} packets to host: {}, port: {}, {} bytes/packet, {} packets/sec",
+                linesSent, packetsSent, host, port, getBytesPerPacket(), getPacketsPerSecond());
+        }
+
+        closeChannel();
+        address = null;
     }
-     
-    @Override
-    public void sendMetrics(Map<String, List<Number>> metrics) {
-        sendMetrics(metrics, getCurrentTimestamp());
+
+    public synchronized long getPacketsSent() {
+        return packetsSent;
     }
 
-    @Override
-    public void sendMetric(String key, Number value, long timestamp) {
-        final var map = Map.of(key, List.of(value));
+    public synchronized long getLinesSent() {
+        return linesSent;
+    }
 
-        sendMetrics(map, timestamp);
+    /** Lines longer than {@link #MAX_DATAGRAM_BYTES}, which could not be sent. */
+    public synchronized long getLinesSkipped() {
+        return linesSkipped;
     }
-  
-    @Override
-    public void sendMetrics(Map<String, List<Number>> metrics, long timeStamp) {
-        sendMetricsImpl(metrics, timeStamp);
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
     }
 
-    @Override
-    public void sendMessages(List<String> messages) {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Preparing {} messages to send", messages.size());
+    public synchronized long getBytesPerPacket() {
+        return packetsSent == 0 ? 0L : bytesSent / packetsSent;
+    }
 
-            for (String msg : messages) {
-                LOG.debug("Message: {}", msg);
-            }
-        }
+    /** Packets sent per second between the first and the last send. */
+    public synchronized double getPacketsPerSecond() {
+        long elapsedMillis = Math.max(1L, lastSendMillis - firstSendMillis);
+
+        return packetsSent * 1000.0 / elapsedMillis;
+    }
+
+    private void sendLines(GraphiteLineEncoder lines) {
+        final int lineCount = lines.getLineCount();
+
+        LOG.debug("Preparing {} lines to send", lineCount);
+
+        try {
+            DatagramChannel udpChannel = ensureChannel();
+
+            int i = 0;
+
+            while (i < lineCount) {
+                if (lines.getLineLength(i) > MAX_DATAGRAM_BYTES) {
+                    LOG.warn("Skipping line of {} bytes to host: {}, port: {}, longer than a datagram: {}...",
+                        lines.getLineLength(i), host, port, lines.getLine(i).substring(0, 100));
+                    linesSkipped++;
+                    i++;
+                    continue;
+                }
 
-        LOG.debug("Creating UDP socket");
+                // pack the lines which fit, but always at least one
+                final int start = lines.getLineStart(i);
+                int end = start + lines.getLineLength(i);
+                int next = i + 1;
 
-        try (DatagramSocket udpSocket = new DatagramSocket()) {
-            // port is probably "-1"
-            LOG.debug("UDP socket created on port {}", udpSocket.getPort());
+                while (next < lineCount && lines.getLineStart(next) + lines.getLineLength(next) - start <= maxPacketBytes) {
+                    end = lines.getLineStart(next) + lines.getLineLength(next);
+                    next++;
+                }
 
-            InetAddress serverAddress = InetAddress.getByName(host);
+                if (LOG.isDebugEnabled()) {
+                    for (int j = i; j < next; j++) {
+                        LOG.debug("Sending message: {}", lines.getLine(j));
+                    }
+                }
 
-            for (String msg : messages) {
-                LOG.debug("Sending message: {}", msg);
+                sendBuffer.clear();
+                sendBuffer.put(lines.array(), start, end - start);
+                sendBuffer.flip();
 
-                DatagramPacket p = new DatagramPacket(msg.getBytes(), msg.getBytes().length, serverAddress, port);
-                udpSocket.send(p);                    
+                try {
+                    udpChannel.write(sendBuffer);
+                } catch (PortUnreachableException e) {
+                    // nothing listening right now; UDP is fire and forget, as with an unconnected socket
+                    LOG.debug("Port unreachable sending to host: {}, port: {}", host, port);
+                }
 
-                LOG.debug("...message sent");
+                countPacket(next - i, end - start);
+                i = next;
             }
-         } catch (UnknownHostException e) {
-            throw new GraphiteClientException("Error: Unknown host: " + host);
-         } catch (IOException e) {
+        } catch (IOException e) {
+            closeChannel();
             throw new GraphiteClientException("Error writing graphite data: " + e.getMessage(), e);
-         }
+        }
 
-        LOG.info("GraphiteClient.sendMessages completed.");
+        LOG.debug("GraphiteClient.sendBatch completed.");
     }
 
-    private void sendMetricsImpl(Map<String, List<Number>> metrics, long timeStamp) {
-        LOG.info("GraphiteClient.sendMetrics start");
-        LOG.debug("host: {}, port: {}", host, port);
-
-        List<String> messages = createMessages(metrics, timeStamp);
+    private void countPacket(int lines, int bytes) {
+        lastSendMillis = System.currentTimeMillis();
 
-        sendMessages(messages);;
+        if (packetsSent == 0) {
+            firstSendMillis = lastSendMillis;
+        }
 
-        LOG.info("GraphiteClient.sendMetrics completed.");
+        packetsSent++;
+        linesSent += lines;
+        bytesSent += bytes;
     }
 
-    private List<String> createMessages(Map<String, List<Number>> metrics, long timeStamp) {
-        List<String> messages = new ArrayList<>();
-            
-        for (Map.Entry<String, List<Number>> metric : metrics.entrySet()) {
-            final String path = metric.getKey();
-            
-            for (Number value : metric.getValue()) {
-                String msg = String.format("%s %s %d%n", path, value, timeStamp);
-                messages.add(msg);
+    /** Get the connected channel, resolving the host again if the address is older than the TTL. */
+    private DatagramChannel ensureChannel() throws IOException {
+        final long now = System.currentTimeMillis();
+
+        if (address == null || now - addressResolvedMillis >= addressTtlMillis) {
+            InetSocketAddress resolved = new InetSocketAddress(host, port);
+
+            if (resolved.isUnresolved()) {
+                if (address == null) {
+                    throw new GraphiteClientException("Error: Unknown host: " + host);
+                }
+
+                // keep sending to the last known address, and try again once the TTL is over again,
+                // rather than looking the host up on every send while DNS is down
+                addressResolvedMillis = now;
+                LOG.warn("Could not resolve host {}, still using {}", host, address.getAddress().getHostAddress());
+            } else {
+                addressResolvedMillis = now;
+
+                if (!resolved.equals(address)) {
+                    closeChannel();
+                    address = resolved;
+                }
             }
         }
 
-        return messages;
+        if (channel == null || !channel.isOpen()) {
+            channel = DatagramChannel.open();
+            channel.connect(address);
+        }
+
+        return channel;
     }
 
-    private long getCurrentTimestamp() {
-        return System.currentTimeMillis() / 1000;
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing channel to host: {}, port: {}: {}", host, port, e.getMessage());
+            }
+
+            channel = null;
+        }
     }
 }
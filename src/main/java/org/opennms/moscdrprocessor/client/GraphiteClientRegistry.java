@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Strings;
+
+import org.opennms.moscdrprocessor.commands.RunConfig.RecipientInfo;
+
+/**
+ * Keeps one long-lived {@link GraphiteClient} per recipient, so the runners of every file and worker thread
+ * share its connection instead of setting one up per file.
+ * Recipients are the same if their address, protocol and client settings are; recipients which only differ
+ * in settings, such as 'maxPacketBytes', get clients of their own.
+ */
+public class GraphiteClientRegistry {
+    private static final GraphiteClientRegistry INSTANCE = new GraphiteClientRegistry();
+
+    private final ConcurrentHashMap<String, GraphiteClient> clients = new ConcurrentHashMap<>();
+
+    public static GraphiteClientRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /** Get the client for a recipient, creating it on first use. */
+    public GraphiteClient getClient(RecipientInfo info, boolean debug) {
+        return getClient(info, 0, debug);
+    }
+
+    /**
+     * Get the client for a recipient, creating it on first use.
+     * With a queue size, the client is an {@link AsyncGraphiteClient} sending with a thread of its own.
+     * For TCP and pickle recipients, a full queue holds up the caller for up to
+     * {@link AsyncGraphiteClient#DEFAULT_BLOCK_MILLIS}, rather than dropping batches straight away.
+     */
+    public GraphiteClient getClient(RecipientInfo info, int queueSize, boolean debug) {
+        return clients.computeIfAbsent(getKey(info, queueSize), key -> {
+            GraphiteClient client = createClient(info, debug);
+
+            if (queueSize <= 0) {
+                return client;
+            }
+
+            long blockMillis = GraphiteClientImpl.PROTOCOL.equals(getProtocol(info)) ? 0L : AsyncGraphiteClient.DEFAULT_BLOCK_MILLIS;
+
+            return new AsyncGraphiteClient(client, queueSize, AsyncGraphiteClient.DEFAULT_DRAIN_MILLIS, blockMillis, debug);
+        });
+    }
+
+    /** The address, protocol and settings of a recipient, with defaults applied, so a setting left out equals its default. */
+    private static String getKey(RecipientInfo info, int queueSize) {
+        return info.hostName + ":" + info.port + "/" + getProtocol(info)
+            + "?maxPacketBytes=" + getMaxPacketBytes(info)
+            + "&pickleBatchSize=" + getPickleBatchSize(info)
+            + "&queueSize=" + Math.max(0, queueSize);
+    }
+
+    private static int getMaxPacketBytes(RecipientInfo info) {
+        return info.maxPacketBytes != null ? info.maxPacketBytes : GraphiteClientImpl.DEFAULT_MAX_PACKET_BYTES;
+    }
+
+    private static int getPickleBatchSize(RecipientInfo info) {
+        return info.pickleBatchSize != null ? info.pickleBatchSize : GraphitePickleClient.DEFAULT_BATCH_SIZE;
+    }
+
+    private static String getProtocol(RecipientInfo info) {
+        return Strings.isNullOrEmpty(info.protocol) ? GraphiteClientImpl.PROTOCOL : info.protocol.toLowerCase();
+    }
+
+    private static GraphiteClient createClient(RecipientInfo info, boolean debug) {
+        String protocol = getProtocol(info);
+
+        if (GraphiteTcpClient.PROTOCOL.equals(protocol)) {
+            return new GraphiteTcpClient(info.hostName, info.port, debug);
+        } else if (GraphitePickleClient.PROTOCOL.equals(protocol)) {
+            return new GraphitePickleClient(info.hostName, info.port, debug, getPickleBatchSize(info),
+                GraphiteTcpClient.DEFAULT_BUFFER_BYTES, GraphiteTcpClient.DEFAULT_FLUSH_MILLIS, GraphiteTcpClient.DEFAULT_MAX_ATTEMPTS);
+        } else if (!GraphiteClientImpl.PROTOCOL.equals(protocol)) {
+            throw new GraphiteClientException("Unknown protocol '" + info.protocol + "' for host: " + info.hostName);
+        }
+
+        return new GraphiteClientImpl(info.hostName, info.port, debug, getMaxPacketBytes(info),
+            GraphiteClientImpl.DEFAULT_ADDRESS_TTL_MILLIS);
+    }
+
+    /** Close and forget all clients, e.g. when a command completes. */
+    public void closeAll() {
+        List<GraphiteClient> closing = new ArrayList<>(clients.values());
+        clients.clear();
+
+        for (GraphiteClient client : closing) {
+            client.close();
+        }
+    }
+}
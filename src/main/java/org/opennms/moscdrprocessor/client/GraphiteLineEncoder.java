@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.client;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+/**
+ * Encodes Graphite plaintext lines, "base:ip:metric value timestamp\n", straight into a reusable buffer.
+ *
+ * The path of each line is written from the bytes cached by the {@link MetricPathTable}, and longs are formatted
+ * by hand, so once the buffer has grown to size, encoding a line with an integer value allocates nothing.
+ * The start of each line is recorded, so the lines can still be sent one at a time.
+ *
+ * Not thread safe.
+ */
+public class GraphiteLineEncoder {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    /** Longest decimal long, with sign. */
+    private static final int MAX_LONG_CHARS = 20;
+
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private ByteBuffer buffer;
+
+    /** Offset of each line in the buffer, followed by the end of the last line. */
+    private int[] lineStarts = new int[1024 + 1];
+
+    private int lineCount;
+
+    public GraphiteLineEncoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public GraphiteLineEncoder(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(initialCapacity, 256));
+    }
+
+    /** Add a line for each metric of a batch. */
+    public void encode(MetricBatch batch) {
+        final MetricPathTable paths = batch.getPaths();
+        final int size = batch.size();
+
+        for (int i = 0; i < size; i++) {
+            byte[] path = paths.getPathBytes(batch.getPathId(i));
+
+            if (batch.isDouble(i)) {
+                encode(path, Double.toString(batch.getDouble(i)), batch.getTimestamp(i));
+            } else {
+                encode(path, batch.getLong(i), batch.getTimestamp(i));
+            }
+        }
+    }
+
+    /** Add a line with an integer value. */
+    public void encode(byte[] path, long value, long timestamp) {
+        ensureRemaining(path.length + 2 * MAX_LONG_CHARS + 3);
+
+        buffer.put(path).put((byte) ' ');
+        putLong(buffer, value);
+        buffer.put((byte) ' ');
+        putLong(buffer, timestamp);
+        buffer.put((byte) '\n');
+
+        endLine();
+    }
+
+    /** Add a line with a value that is already formatted, such as a decimal. */
+    public void encode(byte[] path, String value, long timestamp) {
+        ensureRemaining(path.length + value.length() + MAX_LONG_CHARS + 3);
+
+        buffer.put(path).put((byte) ' ');
+
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+
+        buffer.put((byte) ' ');
+        putLong(buffer, timestamp);
+        buffer.put((byte) '\n');
+
+        endLine();
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /** Number of bytes encoded. */
+    public int size() {
+        return buffer.position();
+    }
+
+    /** The buffer the lines are encoded into; valid until the next line is encoded. */
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    /** Offset of a line in {@link #array()}. */
+    public int getLineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /** Length of a line, including the newline. */
+    public int getLineLength(int line) {
+        return lineStarts[line + 1] - lineStarts[line];
+    }
+
+    /** A line as a String, without the newline; for logging. */
+    public String getLine(int line) {
+        return new String(buffer.array(), lineStarts[line], getLineLength(line) - 1, StandardCharsets.UTF_8);
+    }
+
+    /** Discard the lines, keeping the buffer for the next batch. */
+    public void clear() {
+        buffer.clear();
+        lineCount = 0;
+    }
+
+    /** Write a long in decimal ASCII. */
+    static void putLong(ByteBuffer buf, long value) {
+        if (value == Long.MIN_VALUE) {
+            for (int i = 0; i < MIN_LONG.length; i++) {
+                buf.put(MIN_LONG[i]);
+            }
+
+            return;
+        }
+
+        if (value < 0) {
+            buf.put((byte) '-');
+            value = -value;
+        }
+
+        int digits = 1;
+
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+
+        int end = buf.position() + digits;
+
+        for (int pos = end - 1; pos >= buf.position(); pos--) {
+            buf.put(pos, (byte) ('0' + (value % 10)));
+            value /= 10;
+        }
+
+        buf.position(end);
+    }
+
+    private void endLine() {
+        lineCount++;
+
+        if (lineCount + 1 > lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+        }
+
+        lineStarts[lineCount] = buffer.position();
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import org.opennms.moscdrprocessor.model.MetricBatch;
+
+/**
+ * Sends metrics to a Graphite pickle receiver, usually on port 2004, which is cheaper for both sides than plaintext
+ * when backfilling large amounts of data. Batches are encoded by {@link GraphitePickleEncoder} into messages of at most
+ * batchSize metrics, which are buffered and written over a persistent connection like the lines of {@link GraphiteTcpClient}.
+ */
+public class GraphitePickleClient extends GraphiteTcpClient {
+    /** Name of this transport for 'RunConfig.RecipientInfo.protocol'. */
+    public static final String PROTOCOL = "pickle";
+
+    /** Carbon's default MAX_DATAPOINTS_PER_MESSAGE is 500. */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final GraphitePickleEncoder pickleEncoder = new GraphitePickleEncoder();
+
+    private final int batchSize;
+
+    public GraphitePickleClient(String host, int port, boolean debug) {
+        this(host, port, debug, DEFAULT_BATCH_SIZE, DEFAULT_BUFFER_BYTES, DEFAULT_FLUSH_MILLIS, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public GraphitePickleClient(String host, int port, boolean debug, int batchSize, int bufferBytes, long flushMillis,
+            int maxAttempts) {
+        super(host, port, debug, bufferBytes, flushMillis, maxAttempts);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public synchronized void sendBatch(MetricBatch batch) {
+        pickleEncoder.clear();
+        pickleEncoder.encode(batch, batchSize);
+
+        final int messageCount = pickleEncoder.getMessageCount();
+
+        LOG.debug("Buffering {} metrics in {} pickle messages for host: {}, port: {}", batch.size(), messageCount, host, port);
+
+        for (int i = 0; i < messageCount; i++) {
+            appendRecord(pickleEncoder.array(), pickleEncoder.getMessageStart(i), pickleEncoder.getMessageLength(i));
+        }
+
+        endSend();
+    }
+}
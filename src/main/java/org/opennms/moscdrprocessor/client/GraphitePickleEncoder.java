@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+/**
+ * Encodes metrics for the Graphite pickle receiver, straight into a reusable buffer: messages of a 4 byte big-endian
+ * length followed by a pickled list of (path, (timestamp, value)) tuples, at most batchSize tuples per message.
+ *
+ * Only the pickle protocol 2 opcodes the Carbon unpickler needs are written, with no memo. Paths are written from the
+ * bytes cached by the {@link MetricPathTable}, so, as with {@link GraphiteLineEncoder}, no Strings are created.
+ *
+ * Not thread safe.
+ */
+public class GraphitePickleEncoder {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private static final byte PROTO = (byte) 0x80;
+    private static final byte EMPTY_LIST = ']';
+    private static final byte MARK = '(';
+    private static final byte BINUNICODE = 'X';
+    private static final byte BININT = 'J';
+    private static final byte LONG1 = (byte) 0x8a;
+    private static final byte BINFLOAT = 'G';
+    private static final byte TUPLE2 = (byte) 0x86;
+    private static final byte APPENDS = 'e';
+    private static final byte STOP = '.';
+
+    /** Most bytes a tuple takes besides its path. */
+    private static final int MAX_TUPLE_BYTES = 5 + 2 * 10 + 2;
+
+    private ByteBuffer buffer;
+
+    /** Offset of each message in the buffer, followed by the end of the last message. */
+    private int[] messageStarts = new int[64 + 1];
+
+    private int messageCount;
+
+    public GraphitePickleEncoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public GraphitePickleEncoder(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(initialCapacity, 256));
+    }
+
+    /** Add messages for the metrics of a batch, batchSize metrics to a message. */
+    public void encode(MetricBatch batch, int batchSize) {
+        final MetricPathTable paths = batch.getPaths();
+        final int size = batch.size();
+        final int perMessage = Math.max(1, batchSize);
+
+        for (int first = 0; first < size; first += perMessage) {
+            final int end = Math.min(size, first + perMessage);
+            final int start = buffer.position();
+
+            ensureRemaining(8);
+            // length, filled in at the end
+            buffer.putInt(0);
+            buffer.put(PROTO).put((byte) 2).put(EMPTY_LIST).put(MARK);
+
+            for (int i = first; i < end; i++) {
+                byte[] path = paths.getPathBytes(batch.getPathId(i));
+
+                ensureRemaining(path.length + MAX_TUPLE_BYTES);
+
+                buffer.put(BINUNICODE);
+                putIntLE(path.length);
+                buffer.put(path);
+
+                putLong(batch.getTimestamp(i));
+
+                if (batch.isDouble(i)) {
+                    buffer.put(BINFLOAT).putDouble(batch.getDouble(i));
+                } else {
+                    putLong(batch.getLong(i));
+                }
+
+                buffer.put(TUPLE2).put(TUPLE2);
+            }
+
+            ensureRemaining(2);
+            buffer.put(APPENDS).put(STOP);
+            buffer.putInt(start, buffer.position() - start - 4);
+
+            endMessage();
+        }
+    }
+
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /** Number of bytes encoded. */
+    public int size() {
+        return buffer.position();
+    }
+
+    /** The buffer the messages are encoded into; valid until the next message is encoded. */
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    /** Offset of a message, starting with its length, in {@link #array()}. */
+    public int getMessageStart(int message) {
+        return messageStarts[message];
+    }
+
+    /** Length of a message, including its length prefix. */
+    public int getMessageLength(int message) {
+        return messageStarts[message + 1] - messageStarts[message];
+    }
+
+    /** Discard the messages, keeping the buffer. */
+    public void clear() {
+        buffer.clear();
+        messageCount = 0;
+    }
+
+    /** Write a Python int: 4 bytes if it fits, else a two's complement 8 byte long. */
+    private void putLong(long value) {
+        if (value == (int) value) {
+            buffer.put(BININT);
+            putIntLE((int) value);
+        } else {
+            buffer.put(LONG1).put((byte) 8);
+            putIntLE((int) value);
+            putIntLE((int) (value >>> 32));
+        }
+    }
+
+    private void putIntLE(int value) {
+        buffer.put((byte) value).put((byte) (value >>> 8)).put((byte) (value >>> 16)).put((byte) (value >>> 24));
+    }
+
+    private void endMessage() {
+        messageCount++;
+
+        if (messageCount + 1 > messageStarts.length) {
+            messageStarts = Arrays.copyOf(messageStarts, messageStarts.length * 2);
+        }
+
+        messageStarts[messageCount] = buffer.position();
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.moscdrprocessor.model.MetricBatch;
+
+/**
+ * Sends Graphite plaintext lines over a persistent TCP connection, so bursts are not dropped
+ * when the receiver falls behind, as they are over UDP.
+ *
+ * Lines are collected in a direct buffer, which is written out once it is full, or once its oldest line
+ * has waited for the flush interval, checked on every send and by a background thread.
+ * The buffer only holds complete lines, or the complete records of a subclass. If a write fails, the client reconnects with exponential backoff,
+ * resolving the host again, and writes the whole buffer again; the receiver may get a line twice, which
+ * overwrites the same value. Sends are synchronized, and wait while the client reconnects.
+ */
+public class GraphiteTcpClient extends BaseGraphiteClient {
+    /** Name of this transport for 'RunConfig.RecipientInfo.protocol'. */
+    public static final String PROTOCOL = "tcp";
+
+    public static final int DEFAULT_BUFFER_BYTES = 256 * 1024;
+
+    public static final long DEFAULT_FLUSH_MILLIS = 1000L;
+
+    /** With the backoff doubling from 100ms, gives up after about 25 seconds. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100L;
+
+    private static final long MAX_BACKOFF_MILLIS = 30_000L;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final GraphiteLineEncoder lineEncoder = new GraphiteLineEncoder();
+
+    /** Lines not yet written; always in fill mode between calls. */
+    private final ByteBuffer writeBuffer;
+
+    private final long flushMillis;
+
+    private final int maxAttempts;
+
+    private SocketChannel channel;
+
+    private ScheduledExecutorService flusher;
+
+    /** When the first line now in the write buffer was added. */
+    private long oldestLineMillis;
+
+    private long bytesSent;
+
+    private long reconnects;
+
+    public GraphiteTcpClient(String host, int port, boolean debug) {
+        this(host, port, debug, DEFAULT_BUFFER_BYTES, DEFAULT_FLUSH_MILLIS, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public GraphiteTcpClient(String host, int port, boolean debug, int bufferBytes, long flushMillis, int maxAttempts) {
+        super(host, port, debug);
+        this.writeBuffer = ByteBuffer.allocateDirect(Math.max(1024, bufferBytes));
+        this.flushMillis = Math.max(1L, flushMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    @Override
+    public synchronized void sendBatch(MetricBatch batch) {
+        lineEncoder.clear();
+        lineEncoder.encode(batch);
+
+        final int lineCount = lineEncoder.getLineCount();
+
+        LOG.debug("Buffering {} lines for host: {}, port: {}", lineCount, host, port);
+
+        for (int i = 0; i < lineCount; i++) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sending message: {}", lineEncoder.getLine(i));
+            }
+
+            appendRecord(lineEncoder.array(), lineEncoder.getLineStart(i), lineEncoder.getLineLength(i));
+        }
+
+        endSend();
+    }
+
+    /** Add a complete record, such as a line, to the write buffer, writing the buffer out first if it doesn't fit. */
+    protected void appendRecord(byte[] bytes, int start, int length) {
+        if (length > writeBuffer.remaining()) {
+            flush();
+
+            if (length > writeBuffer.remaining()) {
+                // longer than the whole buffer
+                writeFully(ByteBuffer.wrap(bytes, start, length));
+                return;
+            }
+        }
+
+        if (writeBuffer.position() == 0) {
+            oldestLineMillis = System.currentTimeMillis();
+        }
+
+        writeBuffer.put(bytes, start, length);
+    }
+
+    /** Call after appending the records of a send; writes the buffer out if its oldest record is due. */
+    protected void endSend() {
+        if (writeBuffer.position() > 0 && System.currentTimeMillis() - oldestLineMillis >= flushMillis) {
+            flush();
+        } else {
+            ensureFlusher();
+        }
+    }
+
+    /** Write out all buffered records. */
+    public synchronized void flush() {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+
+        writeBuffer.flip();
+
+        try {
+            writeFully(writeBuffer);
+            writeBuffer.clear();
+        } catch (GraphiteClientException e) {
+            // keep the lines to try again with the next flush
+            writeBuffer.position(writeBuffer.limit());
+            writeBuffer.limit(writeBuffer.capacity());
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (GraphiteClientException e) {
+            LOG.error("Dropping {} buffered bytes for host: {}, port: {}: {}", writeBuffer.position(), host, port, e.getMessage());
+            writeBuffer.clear();
+        }
+
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+
+        if (bytesSent > 0) {
+            LOG.info("GraphiteClient sent {} bytes over TCP to host: {}, port: {}, {} reconnects", bytesSent, host, port, reconnects);
+        }
+
+        closeChannel();
+    }
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    public synchronized long getReconnects() {
+        return reconnects;
+    }
+
+    /** Write all of buf, reconnecting and starting over from its position until the attempts run out. */
+    private void writeFully(ByteBuffer buf) {
+        final int start = buf.position();
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                SocketChannel tcpChannel = ensureChannel();
+
+                while (buf.hasRemaining()) {
+                    tcpChannel.write(buf);
+                }
+
+                bytesSent += buf.position() - start;
+                return;
+            } catch (IOException e) {
+                closeChannel();
+
+                if (attempt >= maxAttempts) {
+                    throw new GraphiteClientException(String.format("Error writing graphite data to host: %s, port: %d after %d attempts: %s",
+                        host, port, attempt, e.getMessage()), e);
+                }
+
+                LOG.warn("Error writing graphite data to host: {}, port: {}, reconnecting in {}ms: {}", host, port, backoffMillis, e.getMessage());
+                sleep(backoffMillis);
+
+                backoffMillis = Math.min(MAX_BACKOFF_MILLIS, 2 * backoffMillis);
+                buf.position(start);
+                reconnects++;
+            }
+        }
+    }
+
+    private SocketChannel ensureChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            // resolved on every connect, so a moved host is found again
+            InetSocketAddress address = new InetSocketAddress(host, port);
+
+            if (address.isUnresolved()) {
+                throw new UnknownHostException("Unknown host: " + host);
+            }
+
+            SocketChannel tcpChannel = SocketChannel.open();
+
+            try {
+                tcpChannel.socket().connect(address, CONNECT_TIMEOUT_MILLIS);
+                tcpChannel.socket().setTcpNoDelay(true);
+            } catch (IOException e) {
+                tcpChannel.close();
+                throw e;
+            }
+
+            channel = tcpChannel;
+        }
+
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing channel to host: {}, port: {}: {}", host, port, e.getMessage());
+            }
+
+            channel = null;
+        }
+    }
+
+    private void ensureFlusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "graphite-flush-" + host + ":" + port);
+                t.setDaemon(true);
+                return t;
+            });
+
+            flusher.scheduleWithFixedDelay(this::flushIfDue, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flushIfDue() {
+        if (writeBuffer.position() > 0 && System.currentTimeMillis() - oldestLineMillis >= flushMillis) {
+            try {
+                flush();
+            } catch (GraphiteClientException e) {
+                LOG.warn("{}", e.getMessage());
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GraphiteClientException("Interrupted reconnecting to graphite host", e);
+        }
+    }
+}
@@ -43,6 +43,7 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.OptionHandlerFilter;
 
+import org.opennms.moscdrprocessor.client.GraphiteClientRegistry;
 import org.opennms.moscdrprocessor.log.ConsoleLogAdapter;
 
 /**
@@ -84,7 +85,12 @@ public abstract class Command {
             printUsage();
         } else {
             validate(getParser());
-            execute();
+
+            try {
+                execute();
+            } finally {
+                GraphiteClientRegistry.getInstance().closeAll();
+            }
         }
     }
 
@@ -63,10 +63,11 @@ public class ProcessCdrCommand extends BasicCommand {
     }
 
     private void processOneFile(RunConfig config) throws CmdRunException {
-        ProcessRunner runner = new ProcessRunnerImpl(config, LOG);
+        ProcessRunnerImpl runner = new ProcessRunnerImpl(config, LOG);
 
         try {
             runner.execute();
+            runner.flushIntervals();
         } catch (CmdRunException e) {
             throw e;
         }
@@ -69,7 +69,7 @@ public class ProcessFolderCommand extends BasicCommand {
         // Sort by filename, should be in ascending timestamp order if CDR files are named correctly
         files.sort((a, b) -> a.getName().compareTo(b.getName()));
         
-        var processor = new SingleCdrFileProcessor();
+        var processor = new SingleCdrFileProcessor(this.runConfig);
 
         for (File f : files) {
             RunConfig clonedConfig = cloneRunConfig(this.runConfig);
@@ -87,6 +87,9 @@ public class ProcessFolderCommand extends BasicCommand {
                 }
             }
         }
+
+        // the last interval is only complete now
+        processor.flush(cloneRunConfig(this.runConfig), LOG);
     }
 
     @Override
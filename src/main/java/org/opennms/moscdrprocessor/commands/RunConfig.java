@@ -52,6 +52,18 @@ public class RunConfig {
     /** Base path/prefix to use in Graphite message, default is 'mos-cdr'. Must be understood by receiver. */
     public String graphiteBasePath;
 
+    /**
+     * CDR parser engine used by the built-in processor:
+     * 'csv' (default) uses Commons CSV, 'mmap' memory-maps the file and tokenizes it in place.
+     */
+    public String parserEngine;
+
+    /** Number of threads the 'mmap' parser engine uses to parse a single large CDR file. Default is 1, no parallel parsing. */
+    public Integer parserWorkers;
+
+    /** Smallest chunk, in bytes, the 'mmap' parser engine splits a CDR file into when parsing in parallel. Default is 8MB. */
+    public Long parserMinChunkBytes;
+
     /** Use Groovy script 'cdrParseScript' to perform the CDR file processing. */
     public boolean useScript;
 
@@ -86,6 +98,52 @@ public class RunConfig {
      */
     public List<String> sourceIpFiltersAnyOf;
 
+    /**
+     * Number of candidate address tuples whose chosen IP is cached, so repeated endpoints skip the filters.
+     * The cache is dropped when 'sourceIpFiltersAnyOf' changes. Default is 65536, 0 disables it.
+     */
+    public Integer endpointCacheSize;
+
+    /**
+     * Number of Graphite messages to collect while streaming a CDR file before sending them.
+     * Keeps memory bounded for large files. Default is 1000.
+     */
+    public Integer sendBatchSize;
+
+    /**
+     * Graphite metrics to emit for each CDR record, see {@link MetricInfo}.
+     * Default is 'Acme-Calling-MOS' and 'Acme-Called-MOS'.
+     */
+    public List<MetricInfo> metrics;
+
+    /**
+     * If set, metrics are aggregated per IP, metric and interval of this many seconds, and only the count, min, max,
+     * mean and sum of each interval are sent, as e.g. 'Acme_Calling_MOS_mean'. Default is to send a metric per record.
+     */
+    public Long aggregateStepSeconds;
+
+    /**
+     * If set, e.g. [0.5, 0.9, 0.99], these quantiles of each metric are also sent per IP and interval of
+     * 'aggregateStepSeconds' (default 300), as e.g. 'Acme_Calling_MOS_p99'. Files for the same interval are merged,
+     * and an interval is sent once a file for a later interval is processed, or the command completes.
+     */
+    public List<Double> quantiles;
+
+    /**
+     * If set, e.g. 'mos-cdr-realm', the metrics are also rolled up per ingress and egress session realm and interval of
+     * 'aggregateStepSeconds' (default 300), and sent under this Graphite path, e.g. 'mos-cdr-realm:core:Ingress_Acme_Calling_MOS_mean'.
+     */
+    public String realmRollupPath;
+
+    /**
+     * If set, e.g. 256, the number of metric batches queued per recipient, each of which is then sent to on a thread
+     * of its own, so a slow or unreachable recipient doesn't hold up the others.
+     * When a UDP recipient's queue is full the batch is dropped; a TCP or pickle recipient's queue holds up
+     * the parsing thread for up to 30 seconds first. An error sending a batch is thrown when the next one is queued.
+     * Default is 0, sending to the recipients one after another on the parsing thread.
+     */
+    public Integer sendQueueSize;
+
     /** Placeholder for any extra attributes. */
     public List<String> extra = new ArrayList<>();
 
@@ -93,5 +151,36 @@ public class RunConfig {
     public static class RecipientInfo {
         public String hostName;
         public Integer port;
+
+        /**
+         * Transport: 'udp' (default), or 'tcp' for a persistent connection which buffers lines
+         * and reconnects with backoff, for sending at full rate without drops.
+         * 'pickle' sends over such a connection to a Graphite pickle receiver, usually port 2004, e.g. for backfills.
+         */
+        public String protocol;
+
+        /** With protocol 'pickle', most metrics per pickle message. Default is 500. */
+        public Integer pickleBatchSize;
+
+        /**
+         * Most bytes of Graphite lines to pack into one UDP datagram; lines are never split.
+         * Default is 1400, to fit the Ethernet MTU; up to 65507 makes sense on loopback. 0 sends one line per datagram.
+         */
+        public Integer maxPacketBytes;
+    }
+
+    /** A Graphite metric to emit for each CDR record. */
+    public static class MetricInfo {
+        /** Integer CDR field to emit, e.g. 'Acme-Calling-RTP-Avg-Jitter_FS1'. */
+        public String field;
+
+        /** Metric name in the Graphite path. Default is the field name with '-' replaced by '_', e.g. 'Acme_Calling_MOS'. */
+        public String name;
+
+        /**
+         * Optional factor to multiply the value by, e.g. 0.01 for MOS x100, or 0.001 for a value in microseconds.
+         * The value is then sent as a decimal, rounded to the decimal places of the scale.
+         */
+        public Double scale;
     }
 }
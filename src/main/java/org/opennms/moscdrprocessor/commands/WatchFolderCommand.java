@@ -47,7 +47,6 @@ import java.util.List;
 import com.google.common.base.Strings;
 
 import org.opennms.moscdrprocessor.runners.ProcessRunner;
-import org.opennms.moscdrprocessor.runners.ProcessRunnerImpl;
 import org.opennms.moscdrprocessor.runners.ProcessScriptRunner;
 import org.opennms.moscdrprocessor.runners.SingleCdrFileProcessor;
 
@@ -61,6 +60,9 @@ public class WatchFolderCommand extends BasicCommand {
 
     private List<String> fileQueue = new ArrayList<>();
 
+    /** Processes the files in the order they are dropped, aggregating the metrics of an interval across files. */
+    private SingleCdrFileProcessor processor;
+
     @Override
     protected void execute() throws CmdRunException {
         LOG.info("In WatchFolderCommand.execute");
@@ -70,6 +72,8 @@ public class WatchFolderCommand extends BasicCommand {
             throw new CmdRunException("Watch command called without enabling watch or specifying a dropFolder");
         }
 
+        processor = new SingleCdrFileProcessor(this.runConfig);
+
         // launch consumer
         Thread consumer = new Thread(() -> {
             try {
@@ -101,6 +105,9 @@ public class WatchFolderCommand extends BasicCommand {
         } catch (InterruptedException e) {
         }
 
+        // send the metrics of the intervals still open
+        processor.flush(cloneRunConfig(this.runConfig), LOG);
+
         LOG.info("WatchFolderCommand completed.");
     }
 
@@ -197,8 +204,6 @@ public class WatchFolderCommand extends BasicCommand {
                 }
             }
 
-            var processor = new SingleCdrFileProcessor();
-
             if (!Strings.isNullOrEmpty(filePathToProcess)) {
                 RunConfig clonedConfig = cloneRunConfig(this.runConfig);
                 clonedConfig.filePath = filePathToProcess;
@@ -28,63 +28,174 @@
 
 package org.opennms.moscdrprocessor.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Map of fields of CDR file that we care about to their type.  Used by CdrParser.
+ * Also holds a setter for each field, used by {@link CdrRecordBinder} to write column values
+ * directly into a {@link CdrRecordItem}, and a getter, used by {@link CdrRecordColumns}.
  */
 public class CdrFieldMap {
     private static final Map<String,String> fieldTypeMap = new HashMap<>();
 
+    private static final Map<String,LongFieldSetter> longSetterMap = new HashMap<>();
+
+    private static final Map<String,StringFieldSetter> stringSetterMap = new HashMap<>();
+
+    private static final Map<String,LongFieldGetter> longGetterMap = new HashMap<>();
+
+    private static final Map<String,StringFieldGetter> stringGetterMap = new HashMap<>();
+
+    private static final Map<String,Ipv4FieldGetter> ipv4GetterMap = new HashMap<>();
+
+    private static final Map<String,Ipv4FieldSetter> ipv4SetterMap = new HashMap<>();
+
+    private static final Map<String,Ipv6FieldGetter> ipv6GetterMap = new HashMap<>();
+
+    private static final Map<String,Ipv6FieldSetter> ipv6SetterMap = new HashMap<>();
+
+    /** Field names in the order they appear in the CDR, as registered below. */
+    private static final List<String> fieldNames = new ArrayList<>();
+
     private static boolean initialized;
 
-    public static void initialize() {
+    /** Sets an "integer" field on a CdrRecordItem. */
+    @FunctionalInterface
+    public interface LongFieldSetter {
+        void set(CdrRecordItem item, long value);
+    }
+
+    /** Sets a "string" or "ipaddr" field on a CdrRecordItem. */
+    @FunctionalInterface
+    public interface StringFieldSetter {
+        void set(CdrRecordItem item, String value);
+    }
+
+    /** Gets an "integer" field of a CdrRecordItem. */
+    @FunctionalInterface
+    public interface LongFieldGetter {
+        long get(CdrRecordItem item);
+    }
+
+    /** Gets a "string" or "ipaddr" field of a CdrRecordItem. */
+    @FunctionalInterface
+    public interface StringFieldGetter {
+        String get(CdrRecordItem item);
+    }
+
+    /** Gets the packed IPv4 address of an "ipaddr" field of a CdrRecordItem. */
+    @FunctionalInterface
+    public interface Ipv4FieldGetter {
+        int get(CdrRecordItem item);
+    }
+
+    /** Sets the packed IPv4 address of an "ipaddr" field on a CdrRecordItem. */
+    @FunctionalInterface
+    public interface Ipv4FieldSetter {
+        void set(CdrRecordItem item, int value);
+    }
+
+    /** Gets the IPv6 address of an "ipaddr" field of a CdrRecordItem. */
+    @FunctionalInterface
+    public interface Ipv6FieldGetter {
+        Ipv6Address get(CdrRecordItem item);
+    }
+
+    /** Sets the IPv6 address of an "ipaddr" field on a CdrRecordItem. */
+    @FunctionalInterface
+    public interface Ipv6FieldSetter {
+        void set(CdrRecordItem item, Ipv6Address value);
+    }
+
+    public static synchronized void initialize() {
         if (initialized) {
             return;
         }
 
-        fieldTypeMap.put("Acct-Status-Type", "integer");
-        fieldTypeMap.put("Acct-Session-Time", "integer");
-        fieldTypeMap.put("NAS-IP-Address", "string");
-        fieldTypeMap.put("h323-setup-time", "string");
-        fieldTypeMap.put("h323-connect-time", "string");
-        fieldTypeMap.put("h323-disconnect-time", "string");
-        fieldTypeMap.put("Acme-Session-Egress-Realm", "string");
-        fieldTypeMap.put("Acme-Session-Ingress-Realm", "string");
-        fieldTypeMap.put("Acme-Flow-In-Src-Addr_FS1_F", "ipaddr");
-        fieldTypeMap.put("Acme-Flow-In-Dst-Addr_FS1_F", "ipaddr");
-        fieldTypeMap.put("Acme-Flow-Out-Src-Addr_FS1_F", "ipaddr");
-        fieldTypeMap.put("Acme-Flow-Out-Dst-Addr_FS1_F", "ipaddr");
-        fieldTypeMap.put("Acme-Calling-RTCP-Packets-Lost_FS1", "integer");
-        fieldTypeMap.put("Acme-Calling-RTCP-Avg-Jitter_FS1", "integer");
-        fieldTypeMap.put("Acme-Calling-RTCP-Avg-Latency_FS1", "integer");
-        fieldTypeMap.put("Acme-Calling-RTCP-MaxJitter_FS1", "integer");
-        fieldTypeMap.put("Acme-Calling-RTCP-MaxLatency_FS1", "integer");
-        fieldTypeMap.put("Acme-Calling-RTP-Packets-Lost_FS1", "integer");
-        fieldTypeMap.put("Acme-Calling-RTP-Avg-Jitter_FS1", "integer");
-        fieldTypeMap.put("Acme-Calling-RTP-MaxJitter_FS1", "integer");
-        fieldTypeMap.put("Acme-Calling-R-Factor", "integer");
-        fieldTypeMap.put("Acme-Calling-MOS", "integer");
-        fieldTypeMap.put("Acme-FlowType_FS1_R", "string");
-        fieldTypeMap.put("Acme-Flow-In-Src-Addr_FS1_R", "ipaddr");
-        fieldTypeMap.put("Acme-Flow-In-Dst-Addr_FS1_R", "ipaddr");
-        fieldTypeMap.put("Acme-Flow-Out-Src-Addr_FS1_R", "ipaddr");
-        fieldTypeMap.put("Acme-Flow-Out-Dst-Addr_FS1_R", "ipaddr");
-        fieldTypeMap.put("Acme-Called-RTCP-Packets-Lost_FS1", "integer");
-        fieldTypeMap.put("Acme-Called-RTCP-Avg-Jitter_FS1", "integer");
-        fieldTypeMap.put("Acme-Called-RTCP-Avg-Latency_FS1", "integer");
-        fieldTypeMap.put("Acme-Called-RTCP-MaxJitter_FS1", "integer");
-        fieldTypeMap.put("Acme-Called-RTCP-MaxLatency_FS1", "integer");
-        fieldTypeMap.put("Acme-Called-RTP-Packets-Lost_FS1", "integer");
-        fieldTypeMap.put("Acme-Called-RTP-Avg-Jitter_FS1", "integer");
-        fieldTypeMap.put("Acme-Called-RTP-MaxJitter_FS1", "integer");
-        fieldTypeMap.put("Acme-Called-R-Factor", "integer");
-        fieldTypeMap.put("Acme-Called-MOS", "integer");
+        putLongField("Acct-Status-Type", item -> item.acctStatusType, (item, value) -> item.acctStatusType = value);
+        putLongField("Acct-Session-Time", item -> item.acctSessionTime, (item, value) -> item.acctSessionTime = value);
+        putStringField("NAS-IP-Address", "string", item -> item.nasIpAddress, (item, value) -> item.nasIpAddress = value);
+        putStringField("h323-setup-time", "string", item -> item.h323SetupTime, (item, value) -> item.h323SetupTime = value);
+        putStringField("h323-connect-time", "string", item -> item.h323ConnectTime, (item, value) -> item.h323ConnectTime = value);
+        putStringField("h323-disconnect-time", "string", item -> item.h323DisconnectTime, (item, value) -> item.h323DisconnectTime = value);
+        putStringField("Acme-Session-Egress-Realm", "string", item -> item.acmeSessionEgressRealm, (item, value) -> item.acmeSessionEgressRealm = value);
+        putStringField("Acme-Session-Ingress-Realm", "string", item -> item.acmeSessionIngressRealm, (item, value) -> item.acmeSessionIngressRealm = value);
+        putAddressField("Acme-Flow-In-Src-Addr_FS1_F", item -> item.acmeFlowInSrcAddrFS1F, (item, value) -> item.acmeFlowInSrcAddrFS1F = value,
+            item -> item.acmeFlowInSrcAddrFS1FIpv4, (item, value) -> item.acmeFlowInSrcAddrFS1FIpv4 = value,
+            item -> item.acmeFlowInSrcAddrFS1FIpv6, (item, value) -> item.acmeFlowInSrcAddrFS1FIpv6 = value);
+        putAddressField("Acme-Flow-In-Dst-Addr_FS1_F", item -> item.acmeFlowInDstAddrFS1F, (item, value) -> item.acmeFlowInDstAddrFS1F = value,
+            item -> item.acmeFlowInDstAddrFS1FIpv4, (item, value) -> item.acmeFlowInDstAddrFS1FIpv4 = value,
+            item -> item.acmeFlowInDstAddrFS1FIpv6, (item, value) -> item.acmeFlowInDstAddrFS1FIpv6 = value);
+        putAddressField("Acme-Flow-Out-Src-Addr_FS1_F", item -> item.acmeFlowOutSrcAddrFS1F, (item, value) -> item.acmeFlowOutSrcAddrFS1F = value,
+            item -> item.acmeFlowOutSrcAddrFS1FIpv4, (item, value) -> item.acmeFlowOutSrcAddrFS1FIpv4 = value,
+            item -> item.acmeFlowOutSrcAddrFS1FIpv6, (item, value) -> item.acmeFlowOutSrcAddrFS1FIpv6 = value);
+        putAddressField("Acme-Flow-Out-Dst-Addr_FS1_F", item -> item.acmeFlowOutDstAddrFS1F, (item, value) -> item.acmeFlowOutDstAddrFS1F = value,
+            item -> item.acmeFlowOutDstAddrFS1FIpv4, (item, value) -> item.acmeFlowOutDstAddrFS1FIpv4 = value,
+            item -> item.acmeFlowOutDstAddrFS1FIpv6, (item, value) -> item.acmeFlowOutDstAddrFS1FIpv6 = value);
+        putLongField("Acme-Calling-RTCP-Packets-Lost_FS1", item -> item.acmeCallingRTCPPacketsLostFS1, (item, value) -> item.acmeCallingRTCPPacketsLostFS1 = value);
+        putLongField("Acme-Calling-RTCP-Avg-Jitter_FS1", item -> item.acmeCallingRTCPAvgJitterFS1, (item, value) -> item.acmeCallingRTCPAvgJitterFS1 = value);
+        putLongField("Acme-Calling-RTCP-Avg-Latency_FS1", item -> item.acmeCallingRTCPAvgLatencyFS1, (item, value) -> item.acmeCallingRTCPAvgLatencyFS1 = value);
+        putLongField("Acme-Calling-RTCP-MaxJitter_FS1", item -> item.acmeCallingRTCPMaxJitterFS1, (item, value) -> item.acmeCallingRTCPMaxJitterFS1 = value);
+        putLongField("Acme-Calling-RTCP-MaxLatency_FS1", item -> item.acmeCallingRTCPMaxLatencyFS1, (item, value) -> item.acmeCallingRTCPMaxLatencyFS1 = value);
+        putLongField("Acme-Calling-RTP-Packets-Lost_FS1", item -> item.acmeCallingRTPPacketsLostFS1, (item, value) -> item.acmeCallingRTPPacketsLostFS1 = value);
+        putLongField("Acme-Calling-RTP-Avg-Jitter_FS1", item -> item.acmeCallingRTPAvgJitterFS1, (item, value) -> item.acmeCallingRTPAvgJitterFS1 = value);
+        putLongField("Acme-Calling-RTP-MaxJitter_FS1", item -> item.acmeCallingRTPMaxJitterFS1, (item, value) -> item.acmeCallingRTPMaxJitterFS1 = value);
+        putLongField("Acme-Calling-R-Factor", item -> item.acmeCallingRFactor, (item, value) -> item.acmeCallingRFactor = value);
+        putLongField("Acme-Calling-MOS", item -> item.acmeCallingMOS, (item, value) -> item.acmeCallingMOS = value);
+        putStringField("Acme-FlowType_FS1_R", "string", item -> item.acmeFlowTypeFS1R, (item, value) -> item.acmeFlowTypeFS1R = value);
+        putAddressField("Acme-Flow-In-Src-Addr_FS1_R", item -> item.acmeFlowInSrcAddrFS1R, (item, value) -> item.acmeFlowInSrcAddrFS1R = value,
+            item -> item.acmeFlowInSrcAddrFS1RIpv4, (item, value) -> item.acmeFlowInSrcAddrFS1RIpv4 = value,
+            item -> item.acmeFlowInSrcAddrFS1RIpv6, (item, value) -> item.acmeFlowInSrcAddrFS1RIpv6 = value);
+        putAddressField("Acme-Flow-In-Dst-Addr_FS1_R", item -> item.acmeFlowInDstAddrFS1R, (item, value) -> item.acmeFlowInDstAddrFS1R = value,
+            item -> item.acmeFlowInDstAddrFS1RIpv4, (item, value) -> item.acmeFlowInDstAddrFS1RIpv4 = value,
+            item -> item.acmeFlowInDstAddrFS1RIpv6, (item, value) -> item.acmeFlowInDstAddrFS1RIpv6 = value);
+        putAddressField("Acme-Flow-Out-Src-Addr_FS1_R", item -> item.acmeFlowOutSrcAddrFS1R, (item, value) -> item.acmeFlowOutSrcAddrFS1R = value,
+            item -> item.acmeFlowOutSrcAddrFS1RIpv4, (item, value) -> item.acmeFlowOutSrcAddrFS1RIpv4 = value,
+            item -> item.acmeFlowOutSrcAddrFS1RIpv6, (item, value) -> item.acmeFlowOutSrcAddrFS1RIpv6 = value);
+        putAddressField("Acme-Flow-Out-Dst-Addr_FS1_R", item -> item.acmeFlowOutDstAddrFS1R, (item, value) -> item.acmeFlowOutDstAddrFS1R = value,
+            item -> item.acmeFlowOutDstAddrFS1RIpv4, (item, value) -> item.acmeFlowOutDstAddrFS1RIpv4 = value,
+            item -> item.acmeFlowOutDstAddrFS1RIpv6, (item, value) -> item.acmeFlowOutDstAddrFS1RIpv6 = value);
+        putLongField("Acme-Called-RTCP-Packets-Lost_FS1", item -> item.acmeCalledRTCPPacketsLostFS1, (item, value) -> item.acmeCalledRTCPPacketsLostFS1 = value);
+        putLongField("Acme-Called-RTCP-Avg-Jitter_FS1", item -> item.acmeCalledRTCPAvgJitterFS1, (item, value) -> item.acmeCalledRTCPAvgJitterFS1 = value);
+        putLongField("Acme-Called-RTCP-Avg-Latency_FS1", item -> item.acmeCalledRTCPAvgLatencyFS1, (item, value) -> item.acmeCalledRTCPAvgLatencyFS1 = value);
+        putLongField("Acme-Called-RTCP-MaxJitter_FS1", item -> item.acmeCalledRTCPMaxJitterFS1, (item, value) -> item.acmeCalledRTCPMaxJitterFS1 = value);
+        putLongField("Acme-Called-RTCP-MaxLatency_FS1", item -> item.acmeCalledRTCPMaxLatencyFS1, (item, value) -> item.acmeCalledRTCPMaxLatencyFS1 = value);
+        putLongField("Acme-Called-RTP-Packets-Lost_FS1", item -> item.acmeCalledRTPPacketsLostFS1, (item, value) -> item.acmeCalledRTPPacketsLostFS1 = value);
+        putLongField("Acme-Called-RTP-Avg-Jitter_FS1", item -> item.acmeCalledRTPAvgJitterFS1, (item, value) -> item.acmeCalledRTPAvgJitterFS1 = value);
+        putLongField("Acme-Called-RTP-MaxJitter_FS1", item -> item.acmeCalledRTPMaxJitterFS1, (item, value) -> item.acmeCalledRTPMaxJitterFS1 = value);
+        putLongField("Acme-Called-R-Factor", item -> item.acmeCalledRFactor, (item, value) -> item.acmeCalledRFactor = value);
+        putLongField("Acme-Called-MOS", item -> item.acmeCalledMOS, (item, value) -> item.acmeCalledMOS = value);
     
         initialized = true;
     }
 
+    private static void putLongField(String field, LongFieldGetter getter, LongFieldSetter setter) {
+        fieldTypeMap.put(field, "integer");
+        fieldNames.add(field);
+        longGetterMap.put(field, getter);
+        longSetterMap.put(field, setter);
+    }
+
+    private static void putStringField(String field, String fieldType, StringFieldGetter getter, StringFieldSetter setter) {
+        fieldTypeMap.put(field, fieldType);
+        fieldNames.add(field);
+        stringGetterMap.put(field, getter);
+        stringSetterMap.put(field, setter);
+    }
+
+    private static void putAddressField(String field, StringFieldGetter getter, StringFieldSetter setter,
+            Ipv4FieldGetter ipv4Getter, Ipv4FieldSetter ipv4Setter, Ipv6FieldGetter ipv6Getter, Ipv6FieldSetter ipv6Setter) {
+        putStringField(field, "ipaddr", getter, setter);
+        ipv4GetterMap.put(field, ipv4Getter);
+        ipv4SetterMap.put(field, ipv4Setter);
+        ipv6GetterMap.put(field, ipv6Getter);
+        ipv6SetterMap.put(field, ipv6Setter);
+    }
+
     public static boolean containsField(String field) {
         return fieldTypeMap.containsKey(field);
     }
@@ -93,6 +204,42 @@ public class CdrFieldMap {
         return fieldTypeMap.get(field);
     }
 
+    public static LongFieldSetter getLongFieldSetter(String field) {
+        return longSetterMap.get(field);
+    }
+
+    public static StringFieldSetter getStringFieldSetter(String field) {
+        return stringSetterMap.get(field);
+    }
+
+    public static LongFieldGetter getLongFieldGetter(String field) {
+        return longGetterMap.get(field);
+    }
+
+    public static StringFieldGetter getStringFieldGetter(String field) {
+        return stringGetterMap.get(field);
+    }
+
+    public static Ipv4FieldGetter getIpv4FieldGetter(String field) {
+        return ipv4GetterMap.get(field);
+    }
+
+    public static Ipv4FieldSetter getIpv4FieldSetter(String field) {
+        return ipv4SetterMap.get(field);
+    }
+
+    public static Ipv6FieldGetter getIpv6FieldGetter(String field) {
+        return ipv6GetterMap.get(field);
+    }
+
+    public static Ipv6FieldSetter getIpv6FieldSetter(String field) {
+        return ipv6SetterMap.get(field);
+    }
+
+    public static List<String> getFieldNames() {
+        return Collections.unmodifiableList(fieldNames);
+    }
+
     public static Map<String,String> getFieldTypeMap() {
         // TODO: Make read-only
         return fieldTypeMap;
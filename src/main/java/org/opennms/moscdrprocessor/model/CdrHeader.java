@@ -30,6 +30,7 @@ package org.opennms.moscdrprocessor.model;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents CDR header columns.
@@ -41,6 +42,9 @@ public class CdrHeader {
     /** Map of 0-based column index to column name. */
     private Map<Integer, String> indexToColumnNameMap = new HashMap<>();
 
+    /** Binders compiled for this header, by projection. */
+    private final transient Map<CdrProjection, CdrRecordBinder> binders = new ConcurrentHashMap<>();
+
     public Map<String, Integer> getColumnNameToIndexMap() {
         return columnNameToIndexMap;
     }
@@ -48,4 +52,12 @@ public class CdrHeader {
     public Map<Integer, String> getIndexToColumnNameMap() {
         return indexToColumnNameMap;
     }
+
+    /**
+     * Get the binder for this header and projection, compiling it on first use.
+     * The column maps must not be changed after this is called.
+     */
+    public CdrRecordBinder getBinder(CdrProjection projection) {
+        return binders.computeIfAbsent(projection, p -> CdrRecordBinder.compile(this, p));
+    }
 }
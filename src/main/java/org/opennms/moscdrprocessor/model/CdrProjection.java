@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The set of CDR fields (by column name) a consumer of parsed CDR records needs.
+ * Parsers only convert these fields, and stop scanning a row after the last column holding one of them.
+ * "ipaddr" fields are always bound as packed IPv4 addresses; see {@link #packedAddresses()} to skip their text.
+ */
+public class CdrProjection {
+    /** All fields known to {@link CdrFieldMap}. */
+    public static final CdrProjection ALL = new CdrProjection(null);
+
+    /** Field names, or null for all fields. */
+    private final Set<String> fields;
+
+    /** If set, "ipaddr" fields are only bound as packed IPv4 addresses, without creating their String. */
+    private final boolean packedAddresses;
+
+    private CdrProjection(Set<String> fields) {
+        this(fields, false);
+    }
+
+    private CdrProjection(Set<String> fields, boolean packedAddresses) {
+        this.fields = fields;
+        this.packedAddresses = packedAddresses;
+    }
+
+    public static CdrProjection of(String... fields) {
+        return of(Arrays.asList(fields));
+    }
+
+    public static CdrProjection of(Collection<String> fields) {
+        return new CdrProjection(Collections.unmodifiableSet(new HashSet<>(fields)));
+    }
+
+    /** This projection, binding "ipaddr" fields only as packed IPv4 addresses. */
+    public CdrProjection packedAddresses() {
+        return packedAddresses ? this : new CdrProjection(fields, true);
+    }
+
+    /** A projection with the fields of both this one and other; addresses are packed only if both are. */
+    public CdrProjection with(CdrProjection other) {
+        boolean packed = this.packedAddresses && other.packedAddresses;
+
+        if (this.isAll() || other.isAll()) {
+            return packed ? ALL.packedAddresses() : ALL;
+        }
+
+        Set<String> union = new HashSet<>(this.fields);
+        union.addAll(other.fields);
+
+        return new CdrProjection(Collections.unmodifiableSet(union), packed);
+    }
+
+    /** A projection with the fields of this one that are not in other. */
+    public CdrProjection without(CdrProjection other) {
+        if (other.isAll()) {
+            return new CdrProjection(Collections.emptySet(), packedAddresses);
+        }
+
+        CdrFieldMap.initialize();
+
+        Set<String> difference = new HashSet<>(isAll() ? CdrFieldMap.getFieldTypeMap().keySet() : this.fields);
+        difference.removeAll(other.fields);
+
+        return new CdrProjection(Collections.unmodifiableSet(difference), packedAddresses);
+    }
+
+    public boolean isAll() {
+        return fields == null;
+    }
+
+    public boolean includes(String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    public boolean isPackedAddresses() {
+        return packedAddresses;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof CdrProjection)) {
+            return false;
+        }
+
+        CdrProjection other = (CdrProjection) o;
+
+        return packedAddresses == other.packedAddresses &&
+            (fields == null ? other.fields == null : fields.equals(other.fields));
+    }
+
+    @Override
+    public int hashCode() {
+        return (fields == null ? 0 : fields.hashCode()) * 31 + (packedAddresses ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        String text = fields == null ? "ALL" : fields.toString();
+
+        return packedAddresses ? text + " (packed addresses)" : text;
+    }
+}
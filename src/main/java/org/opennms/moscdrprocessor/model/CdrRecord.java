@@ -108,6 +108,11 @@ public class CdrRecord implements Iterable<CdrRecordItem> {
         return items.get(index);
     }
 
+    /** Copy the items to columnar storage, keeping just the fields of the projection. */
+    public CdrRecordColumns toColumns(CdrProjection projection) {
+        return CdrRecordColumns.from(items, projection);
+    }
+
     public Iterator<CdrRecordItem> iterator() {
         return items.iterator();
     }
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.Map;
+
+import org.opennms.moscdrprocessor.model.CdrFieldMap.Ipv4FieldSetter;
+import org.opennms.moscdrprocessor.model.CdrFieldMap.Ipv6FieldSetter;
+import org.opennms.moscdrprocessor.model.CdrFieldMap.LongFieldSetter;
+import org.opennms.moscdrprocessor.model.CdrFieldMap.StringFieldSetter;
+
+/**
+ * Binds CDR columns directly to {@link CdrRecordItem} fields.
+ * Compiled from {@link CdrFieldMap} into a plan indexed by column: a type tag and a field setter per column,
+ * so binding a column value is an array lookup and a field write, with no intermediate objects.
+ * Only fields in the {@link CdrProjection} it was compiled for are mapped.
+ * Use {@link CdrHeader#getBinder} to get a binder compiled once per header and projection.
+ */
+public class CdrRecordBinder {
+    public static final byte TYPE_NONE = 0;
+    public static final byte TYPE_LONG = 1;
+    public static final byte TYPE_STRING = 2;
+    public static final byte TYPE_IPADDR = 3;
+
+    /** Column names by 0-based column index, for error messages. */
+    private final String[] columnNames;
+
+    /** Type tag of each column, TYPE_NONE if the column is not mapped. */
+    private final byte[] columnTypes;
+
+    /** Setter for each "integer" column, null if the column is not an integer field we map. */
+    private final LongFieldSetter[] longSetters;
+
+    /** Setter for each "string" or "ipaddr" column, null if the column is not a string field we map. */
+    private final StringFieldSetter[] stringSetters;
+
+    /** Packed address setter for each "ipaddr" column, null if the column is not an address field we map. */
+    private final Ipv4FieldSetter[] ipv4Setters;
+
+    /** IPv6 address setter for each "ipaddr" column, null if the column is not an address field we map. */
+    private final Ipv6FieldSetter[] ipv6Setters;
+
+    /** Whether "ipaddr" columns are bound as text as well as packed, see {@link CdrProjection#packedAddresses()}. */
+    private boolean bindingAddressText = true;
+
+    /** One past the highest mapped column; columns from here on do not need to be tokenized. */
+    private int scanColumnCount;
+
+    private CdrRecordBinder(int columnCount) {
+        this.columnNames = new String[columnCount];
+        this.columnTypes = new byte[columnCount];
+        this.longSetters = new LongFieldSetter[columnCount];
+        this.stringSetters = new StringFieldSetter[columnCount];
+        this.ipv4Setters = new Ipv4FieldSetter[columnCount];
+        this.ipv6Setters = new Ipv6FieldSetter[columnCount];
+    }
+
+    public static CdrRecordBinder compile(CdrHeader cdrHeader) {
+        return compile(cdrHeader, CdrProjection.ALL);
+    }
+
+    public static CdrRecordBinder compile(CdrHeader cdrHeader, CdrProjection projection) {
+        CdrFieldMap.initialize();
+
+        int columnCount = cdrHeader.getIndexToColumnNameMap().keySet().stream()
+            .mapToInt(Integer::intValue)
+            .max()
+            .orElse(-1) + 1;
+
+        CdrRecordBinder binder = new CdrRecordBinder(columnCount);
+        binder.bindingAddressText = !projection.isPackedAddresses();
+
+        for (Map.Entry<Integer, String> entry : cdrHeader.getIndexToColumnNameMap().entrySet()) {
+            int colIndex = entry.getKey();
+            String columnName = entry.getValue();
+
+            binder.columnNames[colIndex] = columnName;
+
+            if (!projection.includes(columnName)) {
+                continue;
+            }
+
+            binder.longSetters[colIndex] = CdrFieldMap.getLongFieldSetter(columnName);
+            binder.stringSetters[colIndex] = CdrFieldMap.getStringFieldSetter(columnName);
+            binder.ipv4Setters[colIndex] = CdrFieldMap.getIpv4FieldSetter(columnName);
+            binder.ipv6Setters[colIndex] = CdrFieldMap.getIpv6FieldSetter(columnName);
+
+            if (binder.longSetters[colIndex] != null) {
+                binder.columnTypes[colIndex] = TYPE_LONG;
+            } else if (binder.ipv4Setters[colIndex] != null) {
+                binder.columnTypes[colIndex] = TYPE_IPADDR;
+            } else if (binder.stringSetters[colIndex] != null) {
+                binder.columnTypes[colIndex] = TYPE_STRING;
+            }
+
+            if (binder.isMapped(colIndex)) {
+                binder.scanColumnCount = Math.max(binder.scanColumnCount, colIndex + 1);
+            }
+        }
+
+        // the first column, "Acct-Status-Type", is always needed to accept or reject a row
+        binder.scanColumnCount = Math.max(binder.scanColumnCount, Math.min(1, columnCount));
+
+        return binder;
+    }
+
+    /** Number of columns in the header; columns past this are never mapped. */
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    /** Number of leading columns which need to be tokenized to bind all mapped fields. */
+    public int getScanColumnCount() {
+        return scanColumnCount;
+    }
+
+    public String getColumnName(int colIndex) {
+        return columnNames[colIndex];
+    }
+
+    public byte getColumnType(int colIndex) {
+        return colIndex < columnTypes.length ? columnTypes[colIndex] : TYPE_NONE;
+    }
+
+    public boolean isMapped(int colIndex) {
+        return getColumnType(colIndex) != TYPE_NONE;
+    }
+
+    public boolean isLongColumn(int colIndex) {
+        return getColumnType(colIndex) == TYPE_LONG;
+    }
+
+    public boolean isAddressColumn(int colIndex) {
+        return getColumnType(colIndex) == TYPE_IPADDR;
+    }
+
+    /** Whether the text of "ipaddr" columns is bound, as well as the packed address. */
+    public boolean isBindingAddressText() {
+        return bindingAddressText;
+    }
+
+    public void bindLong(CdrRecordItem item, int colIndex, long value) {
+        longSetters[colIndex].set(item, value);
+    }
+
+    public void bindString(CdrRecordItem item, int colIndex, String value) {
+        stringSetters[colIndex].set(item, value);
+    }
+
+    /**
+     * Bind the packed forms of an "ipaddr" column: an IPv4 address, else any IPv6 address.
+     * An IPv4-mapped IPv6 address is bound as the IPv4 address.
+     */
+    public void bindAddress(CdrRecordItem item, int colIndex, int ipv4, Ipv6Address ipv6) {
+        if (ipv6 != null && ipv6.isIpv4Mapped()) {
+            ipv4 = ipv6.toIpv4();
+            ipv6 = null;
+        }
+
+        ipv4Setters[colIndex].set(item, ipv4);
+        ipv6Setters[colIndex].set(item, ipv6);
+    }
+}
@@ -0,0 +1,412 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * CDR record items stored by column rather than as one object per row.
+ * Each "integer" field is a long[], each "string" field an int[] of codes into a per-column dictionary,
+ * and each "ipaddr" field additionally has an int[] of packed IPv4 addresses (and an array of the rarer
+ * IPv6 addresses, null where there is none), so a consumer can scan
+ * a single column in a tight loop. Only the fields of the projection are stored; the text of an "ipaddr"
+ * field is null (so takes no dictionary space) if it was parsed with packed addresses only.
+ *
+ * Column arrays returned by the getters are the backing arrays: only the first {@link #size()} entries
+ * are valid, and they are replaced when the columns grow, so get them again after adding rows.
+ * The Iterable view creates a CdrRecordItem for each row.
+ *
+ * Not thread safe.
+ */
+public class CdrRecordColumns implements Iterable<CdrRecordItem> {
+    /** Code of a null string value. */
+    public static final int NULL_CODE = -1;
+
+    /** Value in an IPv4 column when the field is not an IPv4 address. */
+    public static final int NO_IPV4 = Ipv4Address.NONE;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int TYPE_LONG = 1;
+    private static final int TYPE_STRING = 2;
+    private static final int TYPE_IPADDR = 3;
+
+    private final String[] fieldNames;
+
+    private final Map<String,Integer> columnIndexes = new HashMap<>();
+
+    private final int[] columnTypes;
+
+    private final CdrFieldMap.LongFieldGetter[] longGetters;
+    private final CdrFieldMap.LongFieldSetter[] longSetters;
+    private final CdrFieldMap.StringFieldGetter[] stringGetters;
+    private final CdrFieldMap.StringFieldSetter[] stringSetters;
+    private final CdrFieldMap.Ipv4FieldGetter[] ipv4Getters;
+    private final CdrFieldMap.Ipv4FieldSetter[] ipv4Setters;
+    private final CdrFieldMap.Ipv6FieldGetter[] ipv6Getters;
+    private final CdrFieldMap.Ipv6FieldSetter[] ipv6Setters;
+
+    private final long[][] longColumns;
+    private final int[][] codeColumns;
+    private final int[][] ipv4Columns;
+    private final Ipv6Address[][] ipv6Columns;
+    private final StringDictionary[] dictionaries;
+
+    /** The packed IP address each item was correlated with, which is not a CDR field. */
+    private int[] correlationIpv4s;
+    private Ipv6Address[] correlationIpv6s;
+
+    private int size;
+
+    /** Dictionary of the distinct strings of a column. */
+    private static class StringDictionary {
+        private final Map<String,Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return NULL_CODE;
+            }
+
+            Integer code = codes.get(value);
+
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+
+            return code;
+        }
+
+        String decode(int code) {
+            return code == NULL_CODE ? null : values.get(code);
+        }
+
+        void clear() {
+            codes.clear();
+            values.clear();
+        }
+    }
+
+    public CdrRecordColumns(CdrProjection projection) {
+        this(projection, DEFAULT_CAPACITY);
+    }
+
+    public CdrRecordColumns(CdrProjection projection, int initialCapacity) {
+        CdrFieldMap.initialize();
+
+        this.fieldNames = CdrFieldMap.getFieldNames().stream()
+            .filter(projection::includes)
+            .toArray(String[]::new);
+
+        int columnCount = fieldNames.length;
+        int capacity = Math.max(1, initialCapacity);
+
+        columnTypes = new int[columnCount];
+        longGetters = new CdrFieldMap.LongFieldGetter[columnCount];
+        longSetters = new CdrFieldMap.LongFieldSetter[columnCount];
+        stringGetters = new CdrFieldMap.StringFieldGetter[columnCount];
+        stringSetters = new CdrFieldMap.StringFieldSetter[columnCount];
+        ipv4Getters = new CdrFieldMap.Ipv4FieldGetter[columnCount];
+        ipv4Setters = new CdrFieldMap.Ipv4FieldSetter[columnCount];
+        ipv6Getters = new CdrFieldMap.Ipv6FieldGetter[columnCount];
+        ipv6Setters = new CdrFieldMap.Ipv6FieldSetter[columnCount];
+        longColumns = new long[columnCount][];
+        codeColumns = new int[columnCount][];
+        ipv4Columns = new int[columnCount][];
+        ipv6Columns = new Ipv6Address[columnCount][];
+        dictionaries = new StringDictionary[columnCount];
+        correlationIpv4s = new int[capacity];
+        correlationIpv6s = new Ipv6Address[capacity];
+
+        for (int i = 0; i < columnCount; i++) {
+            String field = fieldNames[i];
+            String fieldType = CdrFieldMap.getFieldType(field);
+
+            columnIndexes.put(field, i);
+
+            if (fieldType.equals("integer")) {
+                columnTypes[i] = TYPE_LONG;
+                longGetters[i] = CdrFieldMap.getLongFieldGetter(field);
+                longSetters[i] = CdrFieldMap.getLongFieldSetter(field);
+                longColumns[i] = new long[capacity];
+            } else {
+                columnTypes[i] = fieldType.equals("ipaddr") ? TYPE_IPADDR : TYPE_STRING;
+                stringGetters[i] = CdrFieldMap.getStringFieldGetter(field);
+                stringSetters[i] = CdrFieldMap.getStringFieldSetter(field);
+                codeColumns[i] = new int[capacity];
+                dictionaries[i] = new StringDictionary();
+
+                if (columnTypes[i] == TYPE_IPADDR) {
+                    ipv4Getters[i] = CdrFieldMap.getIpv4FieldGetter(field);
+                    ipv4Setters[i] = CdrFieldMap.getIpv4FieldSetter(field);
+                    ipv4Columns[i] = new int[capacity];
+                    ipv6Getters[i] = CdrFieldMap.getIpv6FieldGetter(field);
+                    ipv6Setters[i] = CdrFieldMap.getIpv6FieldSetter(field);
+                    ipv6Columns[i] = new Ipv6Address[capacity];
+                }
+            }
+        }
+    }
+
+    /** Store the items by column, keeping just the fields of the projection. */
+    public static CdrRecordColumns from(Iterable<CdrRecordItem> items, CdrProjection projection) {
+        CdrRecordColumns columns = new CdrRecordColumns(projection);
+
+        for (CdrRecordItem item : items) {
+            columns.add(item);
+        }
+
+        return columns;
+    }
+
+    public void add(CdrRecordItem item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Item must not be null");
+        }
+
+        if (size == correlationIpv4s.length) {
+            grow();
+        }
+
+        final int row = size;
+
+        for (int i = 0; i < fieldNames.length; i++) {
+            switch (columnTypes[i]) {
+                case TYPE_LONG:
+                    longColumns[i][row] = longGetters[i].get(item);
+                    break;
+                case TYPE_IPADDR:
+                    ipv4Columns[i][row] = ipv4Getters[i].get(item);
+                    ipv6Columns[i][row] = ipv6Getters[i].get(item);
+                    codeColumns[i][row] = dictionaries[i].encode(stringGetters[i].get(item));
+                    break;
+                default:
+                    codeColumns[i][row] = dictionaries[i].encode(stringGetters[i].get(item));
+            }
+        }
+
+        correlationIpv4s[row] = item.correlationIpv4;
+        correlationIpv6s[row] = item.correlationIpv6;
+
+        size++;
+    }
+
+    private void grow() {
+        int capacity = correlationIpv4s.length * 2;
+
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (longColumns[i] != null) {
+                longColumns[i] = Arrays.copyOf(longColumns[i], capacity);
+            }
+
+            if (codeColumns[i] != null) {
+                codeColumns[i] = Arrays.copyOf(codeColumns[i], capacity);
+            }
+
+            if (ipv4Columns[i] != null) {
+                ipv4Columns[i] = Arrays.copyOf(ipv4Columns[i], capacity);
+                ipv6Columns[i] = Arrays.copyOf(ipv6Columns[i], capacity);
+            }
+        }
+
+        correlationIpv4s = Arrays.copyOf(correlationIpv4s, capacity);
+        correlationIpv6s = Arrays.copyOf(correlationIpv6s, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Remove all rows, keeping the allocated columns for reuse. */
+    public void clear() {
+        // drop references to IPv6 addresses
+        for (Ipv6Address[] ipv6Column : ipv6Columns) {
+            if (ipv6Column != null) {
+                Arrays.fill(ipv6Column, 0, size, null);
+            }
+        }
+
+        Arrays.fill(correlationIpv6s, 0, size, null);
+        size = 0;
+
+        for (StringDictionary dictionary : dictionaries) {
+            if (dictionary != null) {
+                dictionary.clear();
+            }
+        }
+    }
+
+    public boolean hasColumn(String field) {
+        return columnIndexes.containsKey(field);
+    }
+
+    /** The values of an "integer" field, one per row. */
+    public long[] getLongColumn(String field) {
+        int column = columnIndex(field);
+
+        if (columnTypes[column] != TYPE_LONG) {
+            throw new IllegalArgumentException("Field is not an integer field: " + field);
+        }
+
+        return longColumns[column];
+    }
+
+    /** The dictionary codes of a "string" or "ipaddr" field, one per row; see {@link #getDictionaryValue}. */
+    public int[] getCodeColumn(String field) {
+        int column = columnIndex(field);
+
+        if (columnTypes[column] == TYPE_LONG) {
+            throw new IllegalArgumentException("Field is not a string field: " + field);
+        }
+
+        return codeColumns[column];
+    }
+
+    /** Number of distinct values in the dictionary of a "string" or "ipaddr" field; codes are 0 to size - 1. */
+    public int getDictionarySize(String field) {
+        getCodeColumn(field);
+
+        return dictionaries[columnIndex(field)].values.size();
+    }
+
+    public String getDictionaryValue(String field, int code) {
+        getCodeColumn(field);
+
+        return dictionaries[columnIndex(field)].decode(code);
+    }
+
+    /** The packed IPv4 addresses of an "ipaddr" field, one per row, {@link #NO_IPV4} if the field has none. */
+    public int[] getIpv4Column(String field) {
+        int column = columnIndex(field);
+
+        if (columnTypes[column] != TYPE_IPADDR) {
+            throw new IllegalArgumentException("Field is not an ipaddr field: " + field);
+        }
+
+        return ipv4Columns[column];
+    }
+
+    /** The IPv6 addresses of an "ipaddr" field, one per row, null if the field has none. */
+    public Ipv6Address[] getIpv6Column(String field) {
+        getIpv4Column(field);
+
+        return ipv6Columns[columnIndex(field)];
+    }
+
+    /** The value of a "string" or "ipaddr" field as the parser returned it. */
+    public String getString(String field, int row) {
+        checkRow(row);
+
+        int column = columnIndex(field);
+
+        return dictionaries[column].decode(codeColumns[column][row]);
+    }
+
+    /** The packed IP address each row was correlated with, {@link #NO_IPV4} if none; see CdrRecordItem.correlationIpv4. */
+    public int[] getCorrelationIpv4Column() {
+        return correlationIpv4s;
+    }
+
+    /** The IPv6 address each row was correlated with, null if it was correlated with an IPv4 address or none. */
+    public Ipv6Address[] getCorrelationIpv6Column() {
+        return correlationIpv6s;
+    }
+
+    /** Create a CdrRecordItem holding the stored fields of the row. */
+    public CdrRecordItem get(int row) {
+        checkRow(row);
+
+        CdrRecordItem item = new CdrRecordItem();
+
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (columnTypes[i] == TYPE_LONG) {
+                longSetters[i].set(item, longColumns[i][row]);
+            } else {
+                stringSetters[i].set(item, dictionaries[i].decode(codeColumns[i][row]));
+
+                if (ipv4Setters[i] != null) {
+                    ipv4Setters[i].set(item, ipv4Columns[i][row]);
+                    ipv6Setters[i].set(item, ipv6Columns[i][row]);
+                }
+            }
+        }
+
+        item.correlationIpv4 = correlationIpv4s[row];
+        item.correlationIpv6 = correlationIpv6s[row];
+
+        return item;
+    }
+
+    public Iterator<CdrRecordItem> iterator() {
+        return new Iterator<CdrRecordItem>() {
+            private int row;
+
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            public CdrRecordItem next() {
+                if (row >= size) {
+                    throw new NoSuchElementException();
+                }
+
+                return get(row++);
+            }
+        };
+    }
+
+    private int columnIndex(String field) {
+        Integer column = columnIndexes.get(field);
+
+        if (column == null) {
+            throw new IllegalArgumentException("Field is not stored: " + field);
+        }
+
+        return column;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Index out of range of record items.");
+        }
+    }
+}
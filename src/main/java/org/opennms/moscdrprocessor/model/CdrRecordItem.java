@@ -70,6 +70,38 @@ public class CdrRecordItem {
     public long acmeCalledRFactor;
     public long acmeCalledMOS;
 
+    /**
+     * The "ipaddr" fields as packed IPv4 addresses (see {@link Ipv4Address}), {@link Ipv4Address#NONE} if absent or invalid.
+     * Parsed along with the field text, or instead of it for a projection with packed addresses.
+     */
+    public transient int acmeFlowInSrcAddrFS1FIpv4;
+    public transient int acmeFlowInDstAddrFS1FIpv4;
+    public transient int acmeFlowOutSrcAddrFS1FIpv4;
+    public transient int acmeFlowOutDstAddrFS1FIpv4;
+    public transient int acmeFlowInSrcAddrFS1RIpv4;
+    public transient int acmeFlowInDstAddrFS1RIpv4;
+    public transient int acmeFlowOutSrcAddrFS1RIpv4;
+    public transient int acmeFlowOutDstAddrFS1RIpv4;
+
+    /** The "ipaddr" fields holding an IPv6 address (other than IPv4-mapped), else null. */
+    public transient Ipv6Address acmeFlowInSrcAddrFS1FIpv6;
+    public transient Ipv6Address acmeFlowInDstAddrFS1FIpv6;
+    public transient Ipv6Address acmeFlowOutSrcAddrFS1FIpv6;
+    public transient Ipv6Address acmeFlowOutDstAddrFS1FIpv6;
+    public transient Ipv6Address acmeFlowInSrcAddrFS1RIpv6;
+    public transient Ipv6Address acmeFlowInDstAddrFS1RIpv6;
+    public transient Ipv6Address acmeFlowOutSrcAddrFS1RIpv6;
+    public transient Ipv6Address acmeFlowOutDstAddrFS1RIpv6;
+
+    /**
+     * IP address chosen to correlate this record with an OpenNMS node, packed, {@link Ipv4Address#NONE} if not chosen.
+     * Set while processing, not parsed from the CDR file, so not part of the Json output.
+     */
+    public transient int correlationIpv4;
+
+    /** IPv6 address chosen to correlate this record with, if it is not an IPv4 address, else null. */
+    public transient Ipv6Address correlationIpv6;
+
     @JsonSetter("Acct-Status-Type")
     public void setAcctStatusType(long value) {
         this.acctStatusType = value;
@@ -113,21 +145,29 @@ public class CdrRecordItem {
     @JsonSetter("Acme-Flow-In-Src-Addr_FS1_F")
     public void setAcmeFlowInSrcAddrFS1F(String value) {
         this.acmeFlowInSrcAddrFS1F = value;
+        this.acmeFlowInSrcAddrFS1FIpv4 = Ipv4Address.parseField(value);
+        this.acmeFlowInSrcAddrFS1FIpv6 = this.acmeFlowInSrcAddrFS1FIpv4 == Ipv4Address.NONE ? Ipv6Address.parseField(value) : null;
     }
 
     @JsonSetter("Acme-Flow-In-Dst-Addr_FS1_F")
     public void setAcmeFlowInDstAddrFS1F(String value) {
         this.acmeFlowInDstAddrFS1F = value;
+        this.acmeFlowInDstAddrFS1FIpv4 = Ipv4Address.parseField(value);
+        this.acmeFlowInDstAddrFS1FIpv6 = this.acmeFlowInDstAddrFS1FIpv4 == Ipv4Address.NONE ? Ipv6Address.parseField(value) : null;
     }
 
     @JsonSetter("Acme-Flow-Out-Src-Addr_FS1_F")
     public void setAcmeFlowOutSrcAddrFS1F(String value) {
         this.acmeFlowOutSrcAddrFS1F = value;
+        this.acmeFlowOutSrcAddrFS1FIpv4 = Ipv4Address.parseField(value);
+        this.acmeFlowOutSrcAddrFS1FIpv6 = this.acmeFlowOutSrcAddrFS1FIpv4 == Ipv4Address.NONE ? Ipv6Address.parseField(value) : null;
     }
 
     @JsonSetter("Acme-Flow-Out-Dst-Addr_FS1_F")
     public void setAcmeFlowOutDstAddrFS1F(String value) {
         this.acmeFlowOutDstAddrFS1F = value;
+        this.acmeFlowOutDstAddrFS1FIpv4 = Ipv4Address.parseField(value);
+        this.acmeFlowOutDstAddrFS1FIpv6 = this.acmeFlowOutDstAddrFS1FIpv4 == Ipv4Address.NONE ? Ipv6Address.parseField(value) : null;
     }
 
     @JsonSetter("Acme-Calling-RTCP-Packets-Lost_FS1")
@@ -188,21 +228,29 @@ public class CdrRecordItem {
     @JsonSetter("Acme-Flow-In-Src-Addr_FS1_R")
     public void setAcmeFlowInSrcAddrFS1R(String value) {
         this.acmeFlowInSrcAddrFS1R = value;
+        this.acmeFlowInSrcAddrFS1RIpv4 = Ipv4Address.parseField(value);
+        this.acmeFlowInSrcAddrFS1RIpv6 = this.acmeFlowInSrcAddrFS1RIpv4 == Ipv4Address.NONE ? Ipv6Address.parseField(value) : null;
     }
 
     @JsonSetter("Acme-Flow-In-Dst-Addr_FS1_R")
     public void setAcmeFlowInDstAddrFS1R(String value) {
         this.acmeFlowInDstAddrFS1R = value;
+        this.acmeFlowInDstAddrFS1RIpv4 = Ipv4Address.parseField(value);
+        this.acmeFlowInDstAddrFS1RIpv6 = this.acmeFlowInDstAddrFS1RIpv4 == Ipv4Address.NONE ? Ipv6Address.parseField(value) : null;
     }
 
     @JsonSetter("Acme-Flow-Out-Src-Addr_FS1_R")
     public void setAcmeFlowOutSrcAddrFS1R(String value) {
         this.acmeFlowOutSrcAddrFS1R = value;
+        this.acmeFlowOutSrcAddrFS1RIpv4 = Ipv4Address.parseField(value);
+        this.acmeFlowOutSrcAddrFS1RIpv6 = this.acmeFlowOutSrcAddrFS1RIpv4 == Ipv4Address.NONE ? Ipv6Address.parseField(value) : null;
     }
 
     @JsonSetter("Acme-Flow-Out-Dst-Addr_FS1_R")
     public void setAcmeFlowOutDstAddrFS1R(String value) {
         this.acmeFlowOutDstAddrFS1R = value;
+        this.acmeFlowOutDstAddrFS1RIpv4 = Ipv4Address.parseField(value);
+        this.acmeFlowOutDstAddrFS1RIpv6 = this.acmeFlowOutDstAddrFS1RIpv4 == Ipv4Address.NONE ? Ipv6Address.parseField(value) : null;
     }
 
     @JsonSetter("Acme-Called-RTCP-Packets-Lost_FS1")
@@ -258,16 +306,29 @@ public class CdrRecordItem {
     public String ipCandidateDiagnosticString() {
         StringBuilder builder = new StringBuilder();
 
-        builder.append("Acme-Flow-In-Src-Addr-FS1_F").append(": ").append(this.acmeFlowInSrcAddrFS1F).append(",\n");
-        builder.append("Acme-Flow-In-Dst-Addr-FS1_F").append(": ").append(this.acmeFlowInDstAddrFS1F).append(",\n");
-        builder.append("Acme-Flow-Out-Src-Addr-FS1_F").append(": ").append(this.acmeFlowOutSrcAddrFS1F).append(",\n");
-        builder.append("Acme-Flow-Out-Dst-Addr-FS1_F").append(": ").append(this.acmeFlowOutDstAddrFS1F).append(",\n");
+        builder.append("Acme-Flow-In-Src-Addr-FS1_F").append(": ").append(addressText(this.acmeFlowInSrcAddrFS1F, this.acmeFlowInSrcAddrFS1FIpv4, this.acmeFlowInSrcAddrFS1FIpv6)).append(",\n");
+        builder.append("Acme-Flow-In-Dst-Addr-FS1_F").append(": ").append(addressText(this.acmeFlowInDstAddrFS1F, this.acmeFlowInDstAddrFS1FIpv4, this.acmeFlowInDstAddrFS1FIpv6)).append(",\n");
+        builder.append("Acme-Flow-Out-Src-Addr-FS1_F").append(": ").append(addressText(this.acmeFlowOutSrcAddrFS1F, this.acmeFlowOutSrcAddrFS1FIpv4, this.acmeFlowOutSrcAddrFS1FIpv6)).append(",\n");
+        builder.append("Acme-Flow-Out-Dst-Addr-FS1_F").append(": ").append(addressText(this.acmeFlowOutDstAddrFS1F, this.acmeFlowOutDstAddrFS1FIpv4, this.acmeFlowOutDstAddrFS1FIpv6)).append(",\n");
 
-        builder.append("Acme-Flow-In-Src-Addr-FS1_R").append(": ").append(this.acmeFlowInSrcAddrFS1R).append(",\n");
-        builder.append("Acme-Flow-In-Dst-Addr-FS1_R").append(": ").append(this.acmeFlowInDstAddrFS1R).append(",\n");
-        builder.append("Acme-Flow-Out-Src-Addr-FS1_R").append(": ").append(this.acmeFlowOutSrcAddrFS1R).append(",\n");
-        builder.append("Acme-Flow-Out-Dst-Addr-FS1_R").append(": ").append(this.acmeFlowOutDstAddrFS1R);
+        builder.append("Acme-Flow-In-Src-Addr-FS1_R").append(": ").append(addressText(this.acmeFlowInSrcAddrFS1R, this.acmeFlowInSrcAddrFS1RIpv4, this.acmeFlowInSrcAddrFS1RIpv6)).append(",\n");
+        builder.append("Acme-Flow-In-Dst-Addr-FS1_R").append(": ").append(addressText(this.acmeFlowInDstAddrFS1R, this.acmeFlowInDstAddrFS1RIpv4, this.acmeFlowInDstAddrFS1RIpv6)).append(",\n");
+        builder.append("Acme-Flow-Out-Src-Addr-FS1_R").append(": ").append(addressText(this.acmeFlowOutSrcAddrFS1R, this.acmeFlowOutSrcAddrFS1RIpv4, this.acmeFlowOutSrcAddrFS1RIpv6)).append(",\n");
+        builder.append("Acme-Flow-Out-Dst-Addr-FS1_R").append(": ").append(addressText(this.acmeFlowOutDstAddrFS1R, this.acmeFlowOutDstAddrFS1RIpv4, this.acmeFlowOutDstAddrFS1RIpv6));
 
         return builder.toString();
     }
+
+    /** The field text, or the packed address if only that was parsed. */
+    private static String addressText(String text, int ipv4, Ipv6Address ipv6) {
+        if (text != null) {
+            return text;
+        }
+
+        if (ipv4 != Ipv4Address.NONE) {
+            return Ipv4Address.format(ipv4);
+        }
+
+        return ipv6 != null ? ipv6.toString() : null;
+    }
 }
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the correlation IP chosen for a tuple of packed candidate addresses,
+ * so rows repeating the same endpoints don't go through the IP filters again.
+ *
+ * The cache is set associative: a key hashes to a set of {@link #WAYS} entries, and when the set is full
+ * an entry is evicted with the CLOCK algorithm, which skips (and clears) entries used since the hand last passed.
+ * Sets are guarded by striped locks, so lookups from parallel parser workers rarely contend.
+ *
+ * A cache is only valid for the filter set it was created for; {@link #forFilterSet} returns a new, empty cache
+ * when the filters change.
+ */
+public class EndpointResolutionCache {
+    /** Returned by {@link #lookup} if the key is not cached. */
+    public static final long NOT_CACHED = -1L;
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    /** Entries per set. */
+    public static final int WAYS = 8;
+
+    private static final int LOCK_STRIPES = 64;
+
+    /** Last cache created by {@link #forFilterSet}, reused while the filter set and capacity are the same. */
+    private static volatile EndpointResolutionCache lastCreated;
+
+    private final IpPatternFilterSet filterSet;
+
+    private final int keyWidth;
+
+    private final int setMask;
+
+    /** keyWidth ints per entry. */
+    private final int[] keys;
+
+    private final int[] values;
+
+    private final boolean[] occupied;
+
+    /** CLOCK reference bits. */
+    private final boolean[] referenced;
+
+    /** CLOCK hand of each set, the way to consider evicting next. */
+    private final int[] hands;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param filterSet the filters the cached values were resolved with
+     * @param keyWidth number of ints in each key
+     * @param capacity maximum number of entries, rounded up to a power of two of at least {@link #WAYS}
+     */
+    public EndpointResolutionCache(IpPatternFilterSet filterSet, int keyWidth, int capacity) {
+        if (keyWidth < 1) {
+            throw new IllegalArgumentException("Key width must be at least 1: " + keyWidth);
+        }
+
+        int sets = setsFor(capacity);
+
+        this.filterSet = filterSet;
+        this.keyWidth = keyWidth;
+        this.setMask = sets - 1;
+        this.keys = new int[sets * WAYS * keyWidth];
+        this.values = new int[sets * WAYS];
+        this.occupied = new boolean[sets * WAYS];
+        this.referenced = new boolean[sets * WAYS];
+        this.hands = new int[sets];
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Get a cache for the filter set, reusing the last one created while the filter set is the same,
+     * so the cache survives from one file to the next but is dropped when 'sourceIpFiltersAnyOf' changes.
+     */
+    public static EndpointResolutionCache forFilterSet(IpPatternFilterSet filterSet, int keyWidth, int capacity) {
+        EndpointResolutionCache cache = lastCreated;
+
+        if (cache == null || cache.filterSet != filterSet || cache.keyWidth != keyWidth
+                || cache.getCapacity() != setsFor(capacity) * WAYS) {
+            cache = new EndpointResolutionCache(filterSet, keyWidth, capacity);
+            lastCreated = cache;
+        }
+
+        return cache;
+    }
+
+    /**
+     * @param key keyWidth ints, not retained
+     * @return the cached value as an unsigned int, or {@link #NOT_CACHED}
+     */
+    public long lookup(int[] key) {
+        int set = setOf(key);
+
+        synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+            int entry = find(set, key);
+
+            if (entry >= 0) {
+                referenced[entry] = true;
+                hits.increment();
+                return values[entry] & 0xFFFFFFFFL;
+            }
+        }
+
+        misses.increment();
+        return NOT_CACHED;
+    }
+
+    /**
+     * Cache a value for the key, evicting another entry of its set if the set is full.
+     * @param key keyWidth ints, copied
+     */
+    public void put(int[] key, int value) {
+        int set = setOf(key);
+
+        synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+            int entry = find(set, key);
+
+            if (entry < 0) {
+                // new entries are only kept past the next sweep of the hand if they are looked up again
+                entry = claim(set);
+                System.arraycopy(key, 0, keys, entry * keyWidth, keyWidth);
+                occupied[entry] = true;
+                referenced[entry] = false;
+            }
+
+            values[entry] = value;
+        }
+    }
+
+    /** Remove all entries; the counters are kept. */
+    public void clear() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            synchronized (locks[i]) {
+                for (int set = i; set <= setMask; set += LOCK_STRIPES) {
+                    Arrays.fill(occupied, set * WAYS, (set + 1) * WAYS, false);
+                    Arrays.fill(referenced, set * WAYS, (set + 1) * WAYS, false);
+                }
+            }
+        }
+    }
+
+    public IpPatternFilterSet getFilterSet() {
+        return filterSet;
+    }
+
+    public int getCapacity() {
+        return values.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static int setsFor(int capacity) {
+        int sets = (Math.max(capacity, 1) + WAYS - 1) / WAYS;
+
+        return sets <= 1 ? 1 : Integer.highestOneBit(sets - 1) << 1;
+    }
+
+    private int find(int set, int[] key) {
+        for (int entry = set * WAYS; entry < (set + 1) * WAYS; entry++) {
+            if (occupied[entry] && keyEquals(entry, key)) {
+                return entry;
+            }
+        }
+
+        return -1;
+    }
+
+    /** Find a free entry in the set, or evict one. */
+    private int claim(int set) {
+        int first = set * WAYS;
+
+        for (int entry = first; entry < first + WAYS; entry++) {
+            if (!occupied[entry]) {
+                return entry;
+            }
+        }
+
+        int hand = hands[set];
+
+        while (referenced[first + hand]) {
+            referenced[first + hand] = false;
+            hand = (hand + 1) % WAYS;
+        }
+
+        hands[set] = (hand + 1) % WAYS;
+        evictions.increment();
+
+        return first + hand;
+    }
+
+    private boolean keyEquals(int entry, int[] key) {
+        int offset = entry * keyWidth;
+
+        for (int i = 0; i < keyWidth; i++) {
+            if (keys[offset + i] != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int setOf(int[] key) {
+        int h = keyWidth;
+
+        for (int i = 0; i < keyWidth; i++) {
+            h = h * 0x9E3779B1 + key[i];
+        }
+
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+
+        return h & setMask;
+    }
+}
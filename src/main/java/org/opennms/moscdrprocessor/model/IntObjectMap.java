@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to non-null values, with open addressing over primitive key arrays,
+ * so looking up a key does not box it.
+ *
+ * Not thread safe.
+ */
+public class IntObjectMap<V> {
+    private int[] keys;
+
+    /** Value of each slot, null if the slot is empty. */
+    private Object[] values;
+
+    private int size;
+
+    public IntObjectMap() {
+        this(64);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, 2 * expectedSize - 1)) << 1;
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+
+        for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+
+        return null;
+    }
+
+    public void put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        if (2 * size > keys.length) {
+            rehash(2 * keys.length);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        int mask = capacity - 1;
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+}
@@ -28,21 +28,39 @@
 
 package org.opennms.moscdrprocessor.model;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+/**
+ * Filter matching IP addresses. Patterns are either:
+ * - IPv4 octet patterns such as "10.0-253.*.*", each octet a number, an inclusive range or '*'
+ * - IPv4 CIDR such as "10.20.0.0/14", compiled to the equivalent octet pattern
+ * - IPv6 CIDR such as "2001:db8::/32", or a single IPv6 address
+ */
 public class IpPatternFilter {
     final private static Pattern PATTERN_NUMBER = Pattern.compile("^[0-9]+$");
     final private static Pattern PATTERN_RANGE = Pattern.compile("^([0-9]+)-([0-9]+)$");
 
     final private String pattern;
 
+    /** Octet filters of an IPv4 pattern, null for an IPv6 pattern. */
     final private IpPatternFilterOctet[] octets;
 
+    /** Prefix of an IPv6 pattern, null for an IPv4 pattern. */
+    private Ipv6Address ipv6Prefix;
+    private int prefixLength;
+
+    /** Bits of the octets having a single number, and those numbers. */
+    private int exactMask;
+    private int exactValue;
+
+    /** Octets having a range, as bit shifts, and their inclusive bounds. */
+    private int rangeCount;
+    final private int[] rangeShifts = new int[4];
+    final private int[] lowerBounds = new int[4];
+    final private int[] upperBounds = new int[4];
+
     public enum FilterType {
         Single,
         Range,
@@ -58,7 +76,32 @@ public class IpPatternFilter {
 
     public IpPatternFilter(String pattern) throws IllegalArgumentException {
         this.pattern = pattern;
-        this.octets = IpPatternFilter.compileOctets(this.pattern);
+
+        if (pattern.indexOf(':') >= 0) {
+            this.octets = compileIpv6(pattern);
+        } else if (pattern.indexOf('/') >= 0) {
+            this.octets = compileIpv4Cidr(pattern);
+        } else {
+            this.octets = IpPatternFilter.compileOctets(this.pattern);
+        }
+
+        if (this.octets != null) {
+            compileMatcher();
+        }
+    }
+
+    /** Whether this is an IPv6 pattern; IPv4 patterns also match IPv4-mapped IPv6 addresses. */
+    public boolean isIpv6() {
+        return this.ipv6Prefix != null;
+    }
+
+    public Ipv6Address getIpv6Prefix() {
+        return this.ipv6Prefix;
+    }
+
+    /** Prefix length of an IPv6 pattern. */
+    public int getPrefixLength() {
+        return this.prefixLength;
     }
 
     public String getPattern() {
@@ -69,6 +112,76 @@ public class IpPatternFilter {
         return this.octets;
     }
 
+    /**
+     * Compile an IPv6 CIDR or address. IPv4-mapped prefixes of at least 96 bits are IPv4 patterns.
+     * @return the octets of an IPv4 pattern, or null
+     */
+    private IpPatternFilterOctet[] compileIpv6(String pattern) throws IllegalArgumentException {
+        int slash = pattern.indexOf('/');
+        Ipv6Address address = Ipv6Address.parse(pattern, 0, slash < 0 ? pattern.length() : slash);
+        int length = slash < 0 ? 128 : parsePrefixLength(pattern, slash, 128);
+
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid IpPatternFilter: " + pattern);
+        }
+
+        if (address.isIpv4Mapped() && length >= 96) {
+            return octetsForCidr(address.toIpv4(), length - 96);
+        }
+
+        this.prefixLength = length;
+        this.ipv6Prefix = address.mask(length);
+
+        return null;
+    }
+
+    private static IpPatternFilterOctet[] compileIpv4Cidr(String pattern) throws IllegalArgumentException {
+        int slash = pattern.indexOf('/');
+        long address = Ipv4Address.parse(pattern, 0, slash);
+
+        if (address == Ipv4Address.INVALID) {
+            throw new IllegalArgumentException("Invalid IpPatternFilter: " + pattern);
+        }
+
+        return octetsForCidr((int) address, parsePrefixLength(pattern, slash, 32));
+    }
+
+    private static int parsePrefixLength(String pattern, int slash, int maxLength) throws IllegalArgumentException {
+        String length = pattern.substring(slash + 1);
+
+        if (!PATTERN_NUMBER.matcher(length).find() || length.length() > 3 || Integer.parseInt(length) > maxLength) {
+            throw new IllegalArgumentException("Invalid prefix length in IpPatternFilter: " + pattern);
+        }
+
+        return Integer.parseInt(length);
+    }
+
+    /** A CIDR prefix as octet filters: whole octets in the prefix are single numbers, a partial one a range. */
+    private static IpPatternFilterOctet[] octetsForCidr(int address, int length) {
+        IpPatternFilterOctet[] octets = new IpPatternFilterOctet[4];
+
+        for (int i = 0; i < 4; i++) {
+            int bits = Math.max(0, Math.min(8, length - 8 * i));
+            int octet = (address >>> (24 - 8 * i)) & 0xff;
+            int hostMask = 0xff >>> bits;
+
+            octets[i] = new IpPatternFilterOctet();
+
+            if (bits == 0) {
+                octets[i].filterType = FilterType.Any;
+            } else if (bits == 8) {
+                octets[i].filterType = FilterType.Single;
+                octets[i].singleNumber = octet;
+            } else {
+                octets[i].filterType = FilterType.Range;
+                octets[i].rangeStart = octet & ~hostMask;
+                octets[i].rangeEnd = (octet & ~hostMask) | hostMask;
+            }
+        }
+
+        return octets;
+    }
+
     private static IpPatternFilterOctet[] compileOctets(String pattern) throws IllegalArgumentException {
         String[] patterns = pattern.split("\\.");
 
@@ -105,22 +218,105 @@ public class IpPatternFilter {
         return octets;
     }
 
+    /**
+     * Compile the octet filters into integer form: octets with a single number are checked together
+     * against a mask and value, the others against their lower and upper bounds.
+     */
+    private void compileMatcher() {
+        int mask = 0;
+        int value = 0;
+        int rangeCount = 0;
+
+        for (int i = 0; i < 4; i++) {
+            IpPatternFilterOctet octet = this.octets[i];
+            int shift = 24 - 8 * i;
+
+            if (octet.filterType == FilterType.Any) {
+                continue;
+            }
+
+            if (octet.filterType == FilterType.Single && octet.singleNumber <= 255) {
+                mask |= 0xff << shift;
+                value |= octet.singleNumber << shift;
+                continue;
+            }
+
+            rangeShifts[rangeCount] = shift;
+
+            if (octet.filterType == FilterType.Single) {
+                // out of range, never matches
+                lowerBounds[rangeCount] = octet.singleNumber;
+                upperBounds[rangeCount] = octet.singleNumber;
+            } else {
+                lowerBounds[rangeCount] = octet.rangeStart;
+                upperBounds[rangeCount] = octet.rangeEnd;
+            }
+
+            rangeCount++;
+        }
+
+        this.exactMask = mask;
+        this.exactValue = value;
+        this.rangeCount = rangeCount;
+    }
+
+    /** Lowest value octet (0 to 3) of an IPv4 pattern may have to match; above 255 if it can never match. */
+    public int getLowerBound(int octet) {
+        IpPatternFilterOctet filter = this.octets[octet];
+
+        switch (filter.filterType) {
+            case Single:
+                return filter.singleNumber;
+            case Range:
+                return filter.rangeStart;
+            default:
+                return 0;
+        }
+    }
+
+    /** Highest value octet (0 to 3) of an IPv4 pattern may have to match. */
+    public int getUpperBound(int octet) {
+        IpPatternFilterOctet filter = this.octets[octet];
+
+        switch (filter.filterType) {
+            case Single:
+                return filter.singleNumber;
+            case Range:
+                return filter.rangeEnd;
+            default:
+                return 255;
+        }
+    }
+
+    /** Match an address in text form; false if it is not a valid IPv4 or IPv6 address, such as a malformed CDR field. */
     public boolean isMatch(String ipAddress) {
-        String[] ipValues = ipAddress.split("\\.");
+        if (ipAddress == null) {
+            return false;
+        }
 
-        if (ipValues.length != 4) {
-            throw new IllegalArgumentException("Invalid ipAddress: " + ipAddress);
+        if (ipAddress.indexOf(':') >= 0) {
+            Ipv6Address ipv6Address = Ipv6Address.parse(ipAddress);
+
+            return ipv6Address != null && isMatch(ipv6Address);
         }
 
-        List<Integer> ipOctets = Arrays.stream(ipValues)
-            .map(Integer::parseInt)
-            .collect(Collectors.toList());
+        long address = Ipv4Address.parse(ipAddress);
 
-        for (int i = 0; i < 4; i++) {
-            int ipOctet = ipOctets.get(i).intValue();
-            IpPatternFilterOctet filter = this.octets[i];
+        return address != Ipv4Address.INVALID && isMatch((int) address);
+    }
+
+    /**
+     * Match an address packed as by {@link Ipv4Address}.
+     */
+    public boolean isMatch(int ipAddress) {
+        if (this.octets == null || (ipAddress & exactMask) != exactValue) {
+            return false;
+        }
+
+        for (int i = 0; i < rangeCount; i++) {
+            int ipOctet = (ipAddress >>> rangeShifts[i]) & 0xff;
 
-            if (!applyOctetFilter(ipOctet, filter)) {
+            if (ipOctet < lowerBounds[i] || ipOctet > upperBounds[i]) {
                 return false;
             }
         }
@@ -128,16 +324,11 @@ public class IpPatternFilter {
         return true;
     }
 
-    private boolean applyOctetFilter(int ipOctet, IpPatternFilterOctet filter) {
-        if (filter.filterType.equals(FilterType.Any)) {
-            return true;
-        } else if (filter.filterType.equals(FilterType.Single)) {
-            return ipOctet == filter.singleNumber;
-        } else if (filter.filterType.equals(FilterType.Range)) {
-            return ipOctet >= filter.rangeStart &&
-                ipOctet <= filter.rangeEnd;
+    public boolean isMatch(Ipv6Address ipAddress) {
+        if (this.ipv6Prefix != null) {
+            return ipAddress.hasPrefix(this.ipv6Prefix, this.prefixLength);
         }
 
-        return false;
+        return ipAddress.isIpv4Mapped() && isMatch(ipAddress.toIpv4());
     }
 }
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * A set of {@link IpPatternFilter}s merged into a single lookup, so matching an address costs
+ * four table lookups (IPv4) or at most sixteen (IPv6) however many patterns there are.
+ *
+ * The IPv4 patterns are compiled into an octet-level DAG: a node holds the patterns that can still match
+ * after the octets seen so far, and has a 256 entry table giving the next node for each value of the
+ * next octet. Nodes for the same set of patterns are shared, so a node exists per distinct pattern subset
+ * rather than per address prefix. The last table gives the index of the first pattern that matches.
+ *
+ * The IPv6 prefixes go in a byte-stride prefix trie: a prefix ending inside a byte is expanded
+ * to all the table entries it covers, and marks them with its pattern index.
+ *
+ * Immutable and thread safe once built.
+ */
+public class IpPatternFilterSet {
+    /** Returned by {@link #indexOfMatch} if no pattern matches. */
+    public static final int NO_MATCH = -1;
+
+    private static final int FANOUT = 256;
+
+    /** Last set built by {@link #forPatterns}, reused while the patterns are the same. */
+    private static volatile IpPatternFilterSet lastBuilt;
+
+    private final List<String> patterns;
+
+    private final List<IpPatternFilter> filters;
+
+    /** Node tables, FANOUT entries per node; entries are node offsets, or pattern indexes on the last level. */
+    private final int[] table;
+
+    private final int root;
+
+    private final int nodeCount;
+
+    /** IPv6 trie nodes, FANOUT entries per node: the child node offset, or NO_MATCH. */
+    private final int[] ipv6Children;
+
+    /** For each IPv6 trie entry, the first pattern whose prefix covers it, or NO_MATCH. */
+    private final int[] ipv6Matches;
+
+    public IpPatternFilterSet(List<IpPatternFilter> filters) {
+        this.filters = List.copyOf(filters);
+        this.patterns = this.filters.stream().map(IpPatternFilter::getPattern).collect(Collectors.toList());
+
+        Builder builder = new Builder(this.filters);
+        this.root = builder.build();
+        this.table = Arrays.copyOf(builder.table, builder.nodeCount * FANOUT);
+        this.nodeCount = builder.nodeCount;
+
+        Ipv6TrieBuilder ipv6Builder = new Ipv6TrieBuilder();
+
+        for (int p = 0; p < this.filters.size(); p++) {
+            if (this.filters.get(p).isIpv6()) {
+                ipv6Builder.insert(this.filters.get(p).getIpv6Prefix(), this.filters.get(p).getPrefixLength(), p);
+            }
+        }
+
+        this.ipv6Children = Arrays.copyOf(ipv6Builder.children, ipv6Builder.nodeCount * FANOUT);
+        this.ipv6Matches = Arrays.copyOf(ipv6Builder.matches, ipv6Builder.nodeCount * FANOUT);
+    }
+
+    public static IpPatternFilterSet of(List<String> patterns) throws IllegalArgumentException {
+        return new IpPatternFilterSet(patterns.stream().map(IpPatternFilter::new).collect(Collectors.toList()));
+    }
+
+    /**
+     * Get the set for the patterns, reusing the last one built if the patterns are the same,
+     * since runners are created per file with the same configuration.
+     */
+    public static IpPatternFilterSet forPatterns(List<String> patterns) throws IllegalArgumentException {
+        IpPatternFilterSet filterSet = lastBuilt;
+
+        if (filterSet == null || !filterSet.patterns.equals(patterns)) {
+            filterSet = of(patterns);
+            lastBuilt = filterSet;
+        }
+
+        return filterSet;
+    }
+
+    /**
+     * Get the index of the first pattern matching an address packed as by {@link Ipv4Address}.
+     *
+     * @return the index in {@link #getFilters()}, or {@link #NO_MATCH}
+     */
+    public int indexOfMatch(int ipAddress) {
+        int node = root;
+
+        for (int shift = 24; shift >= 0 && node != NO_MATCH; shift -= 8) {
+            node = table[node + ((ipAddress >>> shift) & 0xff)];
+        }
+
+        return node;
+    }
+
+    /**
+     * Get the index of the first pattern matching an IPv6 address; IPv4-mapped addresses are matched
+     * against the IPv4 patterns.
+     *
+     * @return the index in {@link #getFilters()}, or {@link #NO_MATCH}
+     */
+    public int indexOfMatch(Ipv6Address ipAddress) {
+        if (ipAddress.isIpv4Mapped()) {
+            return indexOfMatch(ipAddress.toIpv4());
+        }
+
+        int best = NO_MATCH;
+        int node = 0;
+
+        for (int i = 0; i < 16 && node != NO_MATCH; i++) {
+            int entry = node + ipAddress.getByte(i);
+            int match = ipv6Matches[entry];
+
+            if (match != NO_MATCH && (best == NO_MATCH || match < best)) {
+                best = match;
+            }
+
+            node = ipv6Children[entry];
+        }
+
+        return best;
+    }
+
+    public boolean isMatch(int ipAddress) {
+        return indexOfMatch(ipAddress) != NO_MATCH;
+    }
+
+    public boolean isMatch(Ipv6Address ipAddress) {
+        return indexOfMatch(ipAddress) != NO_MATCH;
+    }
+
+    /** Match an address in text form; false if it is not a valid IPv4 or IPv6 address, such as a malformed CDR field. */
+    public boolean isMatch(String ipAddress) {
+        if (ipAddress == null) {
+            return false;
+        }
+
+        if (ipAddress.indexOf(':') >= 0) {
+            Ipv6Address ipv6Address = Ipv6Address.parse(ipAddress);
+
+            return ipv6Address != null && isMatch(ipv6Address);
+        }
+
+        long address = Ipv4Address.parse(ipAddress);
+
+        return address != Ipv4Address.INVALID && isMatch((int) address);
+    }
+
+    /** The first filter matching the address, for diagnostics, or null. */
+    public IpPatternFilter getMatch(int ipAddress) {
+        int index = indexOfMatch(ipAddress);
+
+        return index == NO_MATCH ? null : filters.get(index);
+    }
+
+    /** The first filter matching the address, for diagnostics, or null. */
+    public IpPatternFilter getMatch(Ipv6Address ipAddress) {
+        int index = indexOfMatch(ipAddress);
+
+        return index == NO_MATCH ? null : filters.get(index);
+    }
+
+    public List<IpPatternFilter> getFilters() {
+        return filters;
+    }
+
+    public int size() {
+        return filters.size();
+    }
+
+    /** Number of nodes in the lookup DAG. */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Builds the DAG top down, sharing the node for each distinct pattern subset on a level.
+     */
+    private static class Builder {
+        private final List<IpPatternFilter> filters;
+        private final int[][] lowerBounds;
+        private final int[][] upperBounds;
+
+        private int[] table = new int[16 * FANOUT];
+        private int nodeCount;
+
+        /** Node offset by pattern subset, for each of the levels below the root. */
+        private final List<Map<List<Integer>, Integer>> nodesByLevel = new ArrayList<>();
+
+        Builder(List<IpPatternFilter> filters) {
+            this.filters = filters;
+            lowerBounds = new int[4][filters.size()];
+            upperBounds = new int[4][filters.size()];
+
+            for (int p = 0; p < filters.size(); p++) {
+                if (filters.get(p).isIpv6()) {
+                    continue;
+                }
+
+                for (int octet = 0; octet < 4; octet++) {
+                    lowerBounds[octet][p] = filters.get(p).getLowerBound(octet);
+                    upperBounds[octet][p] = filters.get(p).getUpperBound(octet);
+                }
+            }
+
+            for (int level = 0; level < 4; level++) {
+                nodesByLevel.add(new HashMap<>());
+            }
+        }
+
+        int build() {
+            List<Integer> ipv4Patterns = new ArrayList<>();
+
+            for (int p = 0; p < filters.size(); p++) {
+                if (!filters.get(p).isIpv6()) {
+                    ipv4Patterns.add(p);
+                }
+            }
+
+            return nodeFor(0, ipv4Patterns);
+        }
+
+        /** Get or create the node for the patterns which can still match at octet 'level'. */
+        private int nodeFor(int level, List<Integer> subset) {
+            if (subset.isEmpty()) {
+                return NO_MATCH;
+            }
+
+            Integer existing = nodesByLevel.get(level).get(subset);
+
+            if (existing != null) {
+                return existing;
+            }
+
+            int node = allocateNode();
+            nodesByLevel.get(level).put(subset, node);
+
+            // the subset only changes where a pattern's range starts or ends
+            TreeSet<Integer> boundaries = new TreeSet<>();
+            boundaries.add(0);
+
+            for (int p : subset) {
+                boundaries.add(Math.min(lowerBounds[level][p], FANOUT));
+                boundaries.add(Math.min(upperBounds[level][p] + 1, FANOUT));
+            }
+
+            boundaries.add(FANOUT);
+
+            Integer from = boundaries.first();
+
+            for (Integer to = boundaries.higher(from); to != null; from = to, to = boundaries.higher(to)) {
+                final int value = from;
+                List<Integer> matching = subset.stream()
+                    .filter(p -> lowerBounds[level][p] <= value && value <= upperBounds[level][p])
+                    .collect(Collectors.toList());
+
+                int next;
+
+                if (level == 3) {
+                    // subsets keep the configured order, so the first is the first pattern configured
+                    next = matching.isEmpty() ? NO_MATCH : matching.get(0);
+                } else {
+                    next = nodeFor(level + 1, matching);
+                }
+
+                Arrays.fill(table, node + from, node + to, next);
+            }
+
+            return node;
+        }
+
+        private int allocateNode() {
+            int node = nodeCount * FANOUT;
+
+            if (node + FANOUT > table.length) {
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+
+            nodeCount++;
+
+            return node;
+        }
+    }
+
+    /**
+     * Builds the IPv6 trie, one node per distinct prefix byte path. The root always exists.
+     */
+    private static class Ipv6TrieBuilder {
+        private int[] children = new int[4 * FANOUT];
+        private int[] matches = new int[4 * FANOUT];
+        private int nodeCount;
+
+        Ipv6TrieBuilder() {
+            allocateNode();
+        }
+
+        void insert(Ipv6Address prefix, int prefixLength, int patternIndex) {
+            int node = 0;
+
+            for (int i = 0; ; i++) {
+                int remaining = prefixLength - 8 * i;
+                int value = prefix.getByte(Math.min(i, 15));
+
+                if (remaining <= 8) {
+                    // the prefix ends in this byte: mark every entry it covers
+                    int span = 1 << (8 - remaining);
+                    int first = node + (value & ~(span - 1) & 0xff);
+
+                    for (int entry = first; entry < first + span; entry++) {
+                        if (matches[entry] == NO_MATCH || patternIndex < matches[entry]) {
+                            matches[entry] = patternIndex;
+                        }
+                    }
+
+                    return;
+                }
+
+                if (children[node + value] == NO_MATCH) {
+                    int child = allocateNode();
+                    children[node + value] = child;
+                }
+
+                node = children[node + value];
+            }
+        }
+
+        private int allocateNode() {
+            int node = nodeCount * FANOUT;
+
+            if (node + FANOUT > children.length) {
+                children = Arrays.copyOf(children, children.length * 2);
+                matches = Arrays.copyOf(matches, matches.length * 2);
+            }
+
+            Arrays.fill(children, node, node + FANOUT, NO_MATCH);
+            Arrays.fill(matches, node, node + FANOUT, NO_MATCH);
+            nodeCount++;
+
+            return node;
+        }
+    }
+}
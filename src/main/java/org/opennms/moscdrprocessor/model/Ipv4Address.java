@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs dotted-quad IPv4 addresses into an int (first octet in the high byte) and back.
+ */
+public class Ipv4Address {
+    /** Returned by {@link #parse} for text which is not an IPv4 address. */
+    public static final long INVALID = -1L;
+
+    /**
+     * Packed value of an absent or invalid address field.
+     * This is 0.0.0.0, so a field holding the unspecified address 0.0.0.0 is treated as absent: it is never chosen
+     * as the correlation IP, even by a '*.*.*.*' filter, and the next candidate field is considered instead.
+     * No OpenNMS interface can have that address, so a record correlated with it could not be stored anyway.
+     */
+    public static final int NONE = 0;
+
+    private Ipv4Address() {
+    }
+
+    /**
+     * Parse a dotted-quad IPv4 address such as "10.0.1.5".
+     *
+     * @return the address as an unsigned 32 bit value, or {@link #INVALID}
+     */
+    public static long parse(CharSequence value) {
+        return value == null ? INVALID : parse(value, 0, value.length());
+    }
+
+    /**
+     * Parse a dotted-quad IPv4 address from value between start and end (exclusive).
+     *
+     * @return the address as an unsigned 32 bit value, or {@link #INVALID}
+     */
+    public static long parse(CharSequence value, int start, int end) {
+        long address = 0L;
+        int octets = 0;
+        int pos = start;
+
+        while (octets < 4) {
+            int octet = 0;
+            int digits = 0;
+
+            while (pos < end && digits < 4) {
+                char c = value.charAt(pos);
+
+                if (c < '0' || c > '9') {
+                    break;
+                }
+
+                octet = octet * 10 + (c - '0');
+                digits++;
+                pos++;
+            }
+
+            if (digits == 0 || digits > 3 || octet > 255) {
+                return INVALID;
+            }
+
+            address = (address << 8) | octet;
+            octets++;
+
+            if (octets < 4) {
+                if (pos >= end || value.charAt(pos) != '.') {
+                    return INVALID;
+                }
+
+                pos++;
+            }
+        }
+
+        return pos == end ? address : INVALID;
+    }
+
+    /**
+     * Parse a CDR "ipaddr" field value, which may have surrounding whitespace and quotes.
+     *
+     * @return the packed address, or {@link #NONE}
+     */
+    public static int parseField(String value) {
+        if (value == null) {
+            return NONE;
+        }
+
+        int start = 0;
+        int end = value.length();
+
+        while (start < end && (value.charAt(start) <= ' ' || value.charAt(start) == '"')) {
+            start++;
+        }
+
+        while (end > start && (value.charAt(end - 1) <= ' ' || value.charAt(end - 1) == '"')) {
+            end--;
+        }
+
+        long address = parse(value, start, end);
+
+        return address == INVALID ? NONE : (int) address;
+    }
+
+    /**
+     * Parse a CDR "ipaddr" field held as ASCII bytes in buf between start and end (exclusive),
+     * which may have surrounding whitespace and quotes.
+     *
+     * @return the packed address, or {@link #NONE}
+     */
+    public static int parseField(ByteBuffer buf, int start, int end) {
+        while (start < end && (buf.get(start) <= ' ' || buf.get(start) == '"')) {
+            start++;
+        }
+
+        while (end > start && (buf.get(end - 1) <= ' ' || buf.get(end - 1) == '"')) {
+            end--;
+        }
+
+        int address = 0;
+        int octets = 0;
+        int pos = start;
+
+        while (octets < 4) {
+            int octet = 0;
+            int digits = 0;
+
+            while (pos < end && digits < 4) {
+                byte b = buf.get(pos);
+
+                if (b < '0' || b > '9') {
+                    break;
+                }
+
+                octet = octet * 10 + (b - '0');
+                digits++;
+                pos++;
+            }
+
+            if (digits == 0 || digits > 3 || octet > 255) {
+                return NONE;
+            }
+
+            address = (address << 8) | octet;
+            octets++;
+
+            if (octets < 4) {
+                if (pos >= end || buf.get(pos) != '.') {
+                    return NONE;
+                }
+
+                pos++;
+            }
+        }
+
+        return pos == end ? address : NONE;
+    }
+
+    /** Format a packed address as a dotted quad. */
+    public static String format(int address) {
+        return new StringBuilder(15)
+            .append((address >>> 24) & 0xff).append('.')
+            .append((address >>> 16) & 0xff).append('.')
+            .append((address >>> 8) & 0xff).append('.')
+            .append(address & 0xff)
+            .toString();
+    }
+}
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An IPv6 address packed into two longs, the high and low 64 bits.
+ * IPv4 addresses are still packed into an int ({@link Ipv4Address}); an IPv4-mapped IPv6 address
+ * (::ffff:a.b.c.d) in a CDR field is treated as that IPv4 address.
+ *
+ * Immutable.
+ */
+public final class Ipv6Address {
+    private static final long IPV4_MAPPED_HI = 0L;
+    private static final long IPV4_MAPPED_LO_PREFIX = 0x0000ffff00000000L;
+
+    private final long hi;
+    private final long lo;
+
+    public Ipv6Address(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    /** The IPv4-mapped IPv6 address for a packed IPv4 address. */
+    public static Ipv6Address fromIpv4(int ipv4) {
+        return new Ipv6Address(IPV4_MAPPED_HI, IPV4_MAPPED_LO_PREFIX | (ipv4 & 0xffffffffL));
+    }
+
+    public long getHi() {
+        return hi;
+    }
+
+    public long getLo() {
+        return lo;
+    }
+
+    public boolean isIpv4Mapped() {
+        return hi == IPV4_MAPPED_HI && (lo & 0xffffffff00000000L) == IPV4_MAPPED_LO_PREFIX;
+    }
+
+    /** The packed IPv4 address of an IPv4-mapped address. */
+    public int toIpv4() {
+        return (int) lo;
+    }
+
+    /** Byte 0 (most significant) to 15 of the address. */
+    public int getByte(int index) {
+        return index < 8
+            ? (int) (hi >>> (56 - 8 * index)) & 0xff
+            : (int) (lo >>> (56 - 8 * (index - 8))) & 0xff;
+    }
+
+    /** Whether the first prefixLength bits of this address and other are the same. */
+    public boolean hasPrefix(Ipv6Address prefix, int prefixLength) {
+        if (prefixLength <= 0) {
+            return true;
+        }
+
+        if (prefixLength <= 64) {
+            long mask = -1L << (64 - prefixLength);
+            return (hi & mask) == (prefix.hi & mask);
+        }
+
+        long mask = prefixLength >= 128 ? -1L : -1L << (128 - prefixLength);
+
+        return hi == prefix.hi && (lo & mask) == (prefix.lo & mask);
+    }
+
+    /** This address with all but the first prefixLength bits cleared. */
+    public Ipv6Address mask(int prefixLength) {
+        if (prefixLength <= 0) {
+            return new Ipv6Address(0L, 0L);
+        }
+
+        if (prefixLength <= 64) {
+            return new Ipv6Address(hi & (-1L << (64 - prefixLength)), 0L);
+        }
+
+        return prefixLength >= 128 ? this : new Ipv6Address(hi, lo & (-1L << (128 - prefixLength)));
+    }
+
+    /**
+     * Parse an IPv6 address such as "2001:db8::1", optionally ending with an IPv4 address ("::ffff:10.0.0.1").
+     *
+     * @return the address, or null if the text is not an IPv6 address
+     */
+    public static Ipv6Address parse(CharSequence value) {
+        return value == null ? null : parse(value, 0, value.length());
+    }
+
+    /**
+     * Parse an IPv6 address from value between start and end (exclusive).
+     *
+     * @return the address, or null if the text is not an IPv6 address
+     */
+    public static Ipv6Address parse(CharSequence value, int start, int end) {
+        int[] groups = new int[8];
+        int groupCount = 0;
+        int compressAt = -1;
+        int pos = start;
+
+        if (end - start < 2) {
+            return null;
+        }
+
+        if (value.charAt(pos) == ':') {
+            if (value.charAt(pos + 1) != ':') {
+                return null;
+            }
+
+            compressAt = 0;
+            pos += 2;
+        }
+
+        while (pos < end) {
+            if (groupCount == 8) {
+                return null;
+            }
+
+            int groupStart = pos;
+            int group = 0;
+
+            while (pos < end && pos - groupStart < 4 && Character.digit(value.charAt(pos), 16) >= 0) {
+                group = (group << 4) | Character.digit(value.charAt(pos), 16);
+                pos++;
+            }
+
+            if (pos < end && value.charAt(pos) == '.') {
+                // embedded IPv4 address as the last 32 bits
+                long ipv4 = Ipv4Address.parse(value, groupStart, end);
+
+                if (ipv4 == Ipv4Address.INVALID || groupCount > 6) {
+                    return null;
+                }
+
+                groups[groupCount++] = (int) (ipv4 >>> 16);
+                groups[groupCount++] = (int) (ipv4 & 0xffff);
+                pos = end;
+                break;
+            }
+
+            if (pos == groupStart) {
+                return null;
+            }
+
+            groups[groupCount++] = group;
+
+            if (pos == end) {
+                break;
+            }
+
+            if (value.charAt(pos) != ':') {
+                return null;
+            }
+
+            pos++;
+
+            if (pos < end && value.charAt(pos) == ':') {
+                if (compressAt >= 0) {
+                    return null;
+                }
+
+                compressAt = groupCount;
+                pos++;
+            } else if (pos == end) {
+                // trailing single colon
+                return null;
+            }
+        }
+
+        if (compressAt >= 0) {
+            if (groupCount == 8) {
+                return null;
+            }
+
+            int moved = groupCount - compressAt;
+            System.arraycopy(groups, compressAt, groups, 8 - moved, moved);
+            Arrays.fill(groups, compressAt, 8 - moved, 0);
+        } else if (groupCount != 8) {
+            return null;
+        }
+
+        long hi = 0L;
+        long lo = 0L;
+
+        for (int i = 0; i < 4; i++) {
+            hi = (hi << 16) | groups[i];
+            lo = (lo << 16) | groups[i + 4];
+        }
+
+        return new Ipv6Address(hi, lo);
+    }
+
+    /**
+     * Parse a CDR "ipaddr" field value, which may have surrounding whitespace and quotes.
+     *
+     * @return the address, or null if the field is not an IPv6 address
+     */
+    public static Ipv6Address parseField(String value) {
+        if (value == null || value.indexOf(':') < 0) {
+            return null;
+        }
+
+        int start = 0;
+        int end = value.length();
+
+        while (start < end && (value.charAt(start) <= ' ' || value.charAt(start) == '"')) {
+            start++;
+        }
+
+        while (end > start && (value.charAt(end - 1) <= ' ' || value.charAt(end - 1) == '"')) {
+            end--;
+        }
+
+        return parse(value, start, end);
+    }
+
+    /**
+     * Parse a CDR "ipaddr" field held as ASCII bytes in buf between start and end (exclusive).
+     * Fields without a ':' are rejected without creating any objects.
+     *
+     * @return the address, or null if the field is not an IPv6 address
+     */
+    public static Ipv6Address parseField(ByteBuffer buf, int start, int end) {
+        boolean hasColon = false;
+
+        for (int p = start; p < end && !hasColon; p++) {
+            hasColon = buf.get(p) == ':';
+        }
+
+        if (!hasColon) {
+            return null;
+        }
+
+        byte[] bytes = new byte[end - start];
+
+        for (int p = start; p < end; p++) {
+            bytes[p - start] = buf.get(p);
+        }
+
+        return parseField(new String(bytes, StandardCharsets.ISO_8859_1));
+    }
+
+    /** Format as recommended by RFC 5952: lower case, the longest run of zero groups compressed to "::". */
+    @Override
+    public String toString() {
+        int[] groups = new int[8];
+
+        for (int i = 0; i < 4; i++) {
+            groups[i] = (int) (hi >>> (48 - 16 * i)) & 0xffff;
+            groups[i + 4] = (int) (lo >>> (48 - 16 * i)) & 0xffff;
+        }
+
+        int bestStart = -1;
+        int bestLength = 1;
+
+        for (int i = 0; i < 8; i++) {
+            int length = 0;
+
+            while (i + length < 8 && groups[i + length] == 0) {
+                length++;
+            }
+
+            if (length > bestLength) {
+                bestStart = i;
+                bestLength = length;
+            }
+        }
+
+        StringBuilder builder = new StringBuilder(39);
+
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                builder.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+
+            if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') {
+                builder.append(':');
+            }
+
+            builder.append(Integer.toHexString(groups[i]));
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof Ipv6Address)) {
+            return false;
+        }
+
+        Ipv6Address other = (Ipv6Address) o;
+
+        return hi == other.hi && lo == other.lo;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hi) * 31 + Long.hashCode(lo);
+    }
+}
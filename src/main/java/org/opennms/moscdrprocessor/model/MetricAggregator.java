@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aggregates metrics per (path, interval) before they are sent, so a Graphite path gets one set of
+ * count, min, max, mean and sum values per step instead of a value per CDR record, of which the
+ * receiving RRD would only keep the last.
+ *
+ * Intervals are aligned to multiples of the step since the epoch, and flushed with the interval start as timestamp.
+ * Accumulators live in primitive arrays, in the order they were created, indexed by an open addressing
+ * hash table on (path id, interval), so adding a metric allocates nothing.
+ *
+ * An aggregator is kept across the files of a command, so the files of an interval, such as the 'a' and 'b'
+ * files of a timestamp, are merged; {@link #flushBefore} sends the intervals before that of the file just processed.
+ * A value for an interval which was already flushed is dropped and counted, since sending it would overwrite
+ * the complete statistics with partial ones.
+ *
+ * Not thread safe.
+ */
+public class MetricAggregator {
+    /** Statistics flushed for each accumulator, appended to the metric name after '_'. */
+    public static final List<String> STATISTICS = List.of("count", "min", "max", "mean", "sum");
+
+    private static final int COUNT = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+    private static final int MEAN = 3;
+    private static final int SUM = 4;
+
+    private static final int EMPTY = -1;
+
+    private MetricPathTable paths;
+
+    private final long stepMillis;
+
+    /** Hash table of accumulator indexes, or EMPTY. */
+    private int[] table;
+
+    private int size;
+
+    // accumulators
+    private int[] pathIds;
+    private long[] intervals;
+    private long[] counts;
+    private double[] mins;
+    private double[] maxs;
+    private double[] sums;
+    /** Whether any value added to the accumulator was a double; otherwise min, max and sum are sent as longs. */
+    private boolean[] doubles;
+
+    /** Intervals starting before this have been flushed. */
+    private long flushedBefore = Long.MIN_VALUE;
+
+    private long lateCount;
+
+    /** Path ids of the STATISTICS of each path, indexed by path id; created when first flushed. */
+    private int[][] statisticPathIds = new int[256][];
+
+    public MetricAggregator(MetricPathTable paths, long stepMillis) {
+        if (stepMillis <= 0) {
+            throw new IllegalArgumentException("Aggregation step must be positive: " + stepMillis);
+        }
+
+        this.paths = paths;
+        this.stepMillis = stepMillis;
+        this.table = new int[1024];
+        Arrays.fill(table, EMPTY);
+        allocate(512);
+    }
+
+    public long getStepMillis() {
+        return stepMillis;
+    }
+
+    /** Number of (path, interval) accumulators. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Number of values dropped because their interval was already flushed. */
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    /** Start of the interval a timestamp falls in. */
+    public long getIntervalStart(long timestamp) {
+        return Math.floorDiv(timestamp, stepMillis) * stepMillis;
+    }
+
+    public void add(int pathId, long value, long timestamp) {
+        long interval = getIntervalStart(timestamp);
+
+        if (interval < flushedBefore) {
+            lateCount++;
+            return;
+        }
+
+        accumulate(accumulator(pathId, interval), value);
+    }
+
+    public void add(int pathId, double value, long timestamp) {
+        long interval = getIntervalStart(timestamp);
+
+        if (interval < flushedBefore) {
+            lateCount++;
+            return;
+        }
+
+        int i = accumulator(pathId, interval);
+
+        accumulate(i, value);
+        doubles[i] = true;
+    }
+
+    /** Add all metrics of a batch, which must use the same path table. */
+    public void addAll(MetricBatch batch) {
+        if (batch.getPaths() != paths) {
+            throw new IllegalArgumentException("Batch uses a different path table");
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.isDouble(i)) {
+                add(batch.getPathId(i), batch.getDouble(i), batch.getTimestamp(i));
+            } else {
+                add(batch.getPathId(i), batch.getLong(i), batch.getTimestamp(i));
+            }
+        }
+    }
+
+    /**
+     * Add the statistics of the intervals that are over by the interval of a timestamp to a batch,
+     * in the order the accumulators were created, then remove them.
+     * Values for those intervals are dropped from now on.
+     * @return the number of metrics added
+     */
+    public int flushBefore(long timestamp, MetricBatch out) {
+        long before = getIntervalStart(timestamp);
+
+        flushedBefore = Math.max(flushedBefore, before);
+
+        return flush(before, out);
+    }
+
+    /**
+     * Add the statistics of every accumulator to a batch, in the order the accumulators were created,
+     * then remove them.
+     * @return the number of metrics added
+     */
+    public int flush(MetricBatch out) {
+        return flush(Long.MAX_VALUE, out);
+    }
+
+    private int flush(long before, MetricBatch out) {
+        if (out.getPaths() != paths) {
+            throw new IllegalArgumentException("Batch uses a different path table");
+        }
+
+        int added = 0;
+        int kept = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (intervals[i] >= before) {
+                move(i, kept++);
+                continue;
+            }
+
+            int[] ids = getStatisticPathIds(pathIds[i]);
+            long interval = intervals[i];
+
+            out.add(ids[COUNT], counts[i], interval);
+
+            if (doubles[i]) {
+                out.add(ids[MIN], mins[i], interval);
+                out.add(ids[MAX], maxs[i], interval);
+            } else {
+                out.add(ids[MIN], (long) mins[i], interval);
+                out.add(ids[MAX], (long) maxs[i], interval);
+            }
+
+            out.add(ids[MEAN], sums[i] / counts[i], interval);
+
+            if (doubles[i]) {
+                out.add(ids[SUM], sums[i], interval);
+            } else {
+                out.add(ids[SUM], (long) sums[i], interval);
+            }
+
+            added += STATISTICS.size();
+        }
+
+        if (kept != size) {
+            size = kept;
+            rehash(table.length);
+        }
+
+        return added;
+    }
+
+    /**
+     * Move the accumulators to another path table, re-interning their paths, so the current table can be dropped.
+     */
+    public void rebase(MetricPathTable newPaths) {
+        for (int i = 0; i < size; i++) {
+            pathIds[i] = newPaths.intern(paths.getPath(pathIds[i]));
+        }
+
+        paths = newPaths;
+        statisticPathIds = new int[256][];
+        rehash(table.length);
+    }
+
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    private void accumulate(int i, double value) {
+        if (counts[i] == 0) {
+            mins[i] = value;
+            maxs[i] = value;
+        } else {
+            mins[i] = Math.min(mins[i], value);
+            maxs[i] = Math.max(maxs[i], value);
+        }
+
+        counts[i]++;
+        sums[i] += value;
+    }
+
+    /** Find or create the accumulator for a path and interval start. */
+    private int accumulator(int pathId, long interval) {
+        int mask = table.length - 1;
+        int slot = hash(pathId, interval) & mask;
+
+        while (table[slot] != EMPTY) {
+            int i = table[slot];
+
+            if (pathIds[i] == pathId && intervals[i] == interval) {
+                return i;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == pathIds.length) {
+            allocate(2 * size);
+        }
+
+        int i = size++;
+
+        pathIds[i] = pathId;
+        intervals[i] = interval;
+        counts[i] = 0;
+        sums[i] = 0.0;
+        doubles[i] = false;
+        table[slot] = i;
+
+        if (2 * size > table.length) {
+            rehash(2 * table.length);
+        }
+
+        return i;
+    }
+
+    /** Move an accumulator to a lower index, when compacting. */
+    private void move(int from, int to) {
+        if (from != to) {
+            pathIds[to] = pathIds[from];
+            intervals[to] = intervals[from];
+            counts[to] = counts[from];
+            mins[to] = mins[from];
+            maxs[to] = maxs[from];
+            sums[to] = sums[from];
+            doubles[to] = doubles[from];
+        }
+    }
+
+    private void allocate(int capacity) {
+        pathIds = pathIds == null ? new int[capacity] : Arrays.copyOf(pathIds, capacity);
+        intervals = intervals == null ? new long[capacity] : Arrays.copyOf(intervals, capacity);
+        counts = counts == null ? new long[capacity] : Arrays.copyOf(counts, capacity);
+        mins = mins == null ? new double[capacity] : Arrays.copyOf(mins, capacity);
+        maxs = maxs == null ? new double[capacity] : Arrays.copyOf(maxs, capacity);
+        sums = sums == null ? new double[capacity] : Arrays.copyOf(sums, capacity);
+        doubles = doubles == null ? new boolean[capacity] : Arrays.copyOf(doubles, capacity);
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        Arrays.fill(table, EMPTY);
+
+        int mask = tableSize - 1;
+
+        for (int i = 0; i < size; i++) {
+            int slot = hash(pathIds[i], intervals[i]) & mask;
+
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = i;
+        }
+    }
+
+    private int[] getStatisticPathIds(int pathId) {
+        if (pathId >= statisticPathIds.length) {
+            statisticPathIds = Arrays.copyOf(statisticPathIds, Math.max(pathId + 1, 2 * statisticPathIds.length));
+        }
+
+        int[] ids = statisticPathIds[pathId];
+
+        if (ids == null) {
+            String path = paths.getPath(pathId);
+            ids = new int[STATISTICS.size()];
+
+            for (int s = 0; s < ids.length; s++) {
+                ids[s] = paths.intern(path + "_" + STATISTICS.get(s));
+            }
+
+            statisticPathIds[pathId] = ids;
+        }
+
+        return ids;
+    }
+
+    private static int hash(int pathId, long interval) {
+        long h = interval * 0x9E3779B97F4A7C15L + pathId;
+
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+
+        return (int) (h ^ (h >>> 29));
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A batch of Graphite metrics held in parallel primitive arrays: the interned path id,
+ * the value, a long or a double, and the timestamp of each metric.
+ *
+ * Runners fill a batch and transports encode it in their own wire format, so no text is created
+ * between the stages. Batches can be cleared and refilled. Not thread safe.
+ *
+ * {@link #fromLines} and {@link #toLines} convert from and to the "path value timestamp" lines
+ * used by the original List&lt;String&gt; API and parse scripts.
+ */
+public class MetricBatch {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final MetricPathTable paths;
+
+    private int[] pathIds;
+
+    /** Long values, or the raw bits of double values. */
+    private long[] values;
+
+    private boolean[] doubles;
+
+    private long[] timestamps;
+
+    private int size;
+
+    /** A batch with its own {@link MetricPathTable}. */
+    public MetricBatch() {
+        this(new MetricPathTable(), DEFAULT_CAPACITY);
+    }
+
+    public MetricBatch(MetricPathTable paths, int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+
+        this.paths = paths;
+        this.pathIds = new int[capacity];
+        this.values = new long[capacity];
+        this.doubles = new boolean[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Parse Graphite plaintext lines, "path value timestamp", into a batch with its own path table,
+     * so the paths are dropped with the batch.
+     * @throws IllegalArgumentException if a line is not in that format
+     */
+    public static MetricBatch fromLines(List<String> lines) throws IllegalArgumentException {
+        MetricBatch batch = new MetricBatch(new MetricPathTable(), lines.size());
+
+        for (String line : lines) {
+            String[] parts = line.trim().split("\\s+");
+
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid Graphite message: '" + line + "'");
+            }
+
+            try {
+                long timestamp = Long.parseLong(parts[2]);
+
+                Long value = parseLong(parts[1]);
+
+                if (value != null) {
+                    batch.add(parts[0], value.longValue(), timestamp);
+                } else {
+                    batch.add(parts[0], Double.parseDouble(parts[1]), timestamp);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid Graphite message: '" + line + "'", e);
+            }
+        }
+
+        return batch;
+    }
+
+    public void add(int pathId, long value, long timestamp) {
+        int i = next();
+
+        pathIds[i] = pathId;
+        values[i] = value;
+        doubles[i] = false;
+        timestamps[i] = timestamp;
+    }
+
+    public void add(int pathId, double value, long timestamp) {
+        int i = next();
+
+        pathIds[i] = pathId;
+        values[i] = Double.doubleToRawLongBits(value);
+        doubles[i] = true;
+        timestamps[i] = timestamp;
+    }
+
+    public void add(String path, long value, long timestamp) {
+        add(paths.intern(path), value, timestamp);
+    }
+
+    public void add(String path, double value, long timestamp) {
+        add(paths.intern(path), value, timestamp);
+    }
+
+    /** Add a value of any type, as a long if it is integral. */
+    public void add(String path, Number value, long timestamp) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            add(path, value.longValue(), timestamp);
+        } else {
+            add(path, value.doubleValue(), timestamp);
+        }
+    }
+
+    /** Add all metrics of another batch, which must use the same path table. */
+    public void addAll(MetricBatch other) {
+        if (other.paths != paths) {
+            throw new IllegalArgumentException("Batches use different path tables");
+        }
+
+        ensureCapacity(size + other.size);
+
+        System.arraycopy(other.pathIds, 0, pathIds, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        System.arraycopy(other.doubles, 0, doubles, size, other.size);
+        System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+
+        size += other.size;
+    }
+
+    public MetricPathTable getPaths() {
+        return paths;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Remove all metrics, keeping the arrays. */
+    public void clear() {
+        size = 0;
+    }
+
+    public int getPathId(int i) {
+        return pathIds[i];
+    }
+
+    public String getPath(int i) {
+        return paths.getPath(pathIds[i]);
+    }
+
+    public boolean isDouble(int i) {
+        return doubles[i];
+    }
+
+    /** The value, truncated if it is a double. */
+    public long getLong(int i) {
+        return doubles[i] ? (long) Double.longBitsToDouble(values[i]) : values[i];
+    }
+
+    public double getDouble(int i) {
+        return doubles[i] ? Double.longBitsToDouble(values[i]) : values[i];
+    }
+
+    public long getTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    /** A metric as a Graphite plaintext line, without a newline. */
+    public String toLine(int i) {
+        return getPath(i) + ' ' + (doubles[i] ? Double.toString(getDouble(i)) : Long.toString(values[i])) + ' ' + timestamps[i];
+    }
+
+    /** The metrics as Graphite plaintext lines, for code still using List&lt;String&gt;. */
+    public List<String> toLines() {
+        List<String> lines = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            lines.add(toLine(i));
+        }
+
+        return lines;
+    }
+
+    private static Long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int next() {
+        ensureCapacity(size + 1);
+
+        return size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > pathIds.length) {
+            int newCapacity = Math.max(capacity, 2 * pathIds.length);
+
+            pathIds = Arrays.copyOf(pathIds, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            doubles = Arrays.copyOf(doubles, newCapacity);
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns Graphite metric paths as small int ids, so {@link MetricBatch}es carry ids rather than Strings,
+ * and transports can cache anything derived from a path, such as its encoded bytes, by id.
+ *
+ * Ids are never reused, so a table only grows; long lived users replace their table once it is large,
+ * re-interning the paths they still need. Thread safe; ids handed from one thread to another through
+ * a {@link MetricBatch} must be published safely, as with any other batch contents.
+ */
+public class MetricPathTable {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile String[] paths = new String[1024];
+
+    private volatile byte[][] pathBytes = new byte[1024][];
+
+    private int size;
+
+    /** Get the id of a path, adding it if it is new. */
+    public int intern(String path) {
+        Integer id = ids.get(path);
+
+        return id != null ? id : add(path);
+    }
+
+    public String getPath(int id) {
+        return paths[id];
+    }
+
+    /** The path encoded as UTF-8. */
+    public byte[] getPathBytes(int id) {
+        return pathBytes[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int add(String path) {
+        Integer id = ids.get(path);
+
+        if (id != null) {
+            return id;
+        }
+
+        if (size == paths.length) {
+            pathBytes = Arrays.copyOf(pathBytes, 2 * size);
+            paths = Arrays.copyOf(paths, 2 * size);
+        }
+
+        pathBytes[size] = path.getBytes(StandardCharsets.UTF_8);
+        paths[size] = path;
+        ids.put(path, size);
+
+        return size++;
+    }
+}
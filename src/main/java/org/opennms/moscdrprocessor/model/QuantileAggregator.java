@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps a {@link QuantileSketch} per (path, interval), and emits the configured quantiles of each sketch,
+ * as e.g. 'Acme_Calling_MOS_p99', once its interval is over.
+ *
+ * One aggregator is kept across the files of a command, so the sketches of all files for an interval,
+ * such as the 'a' and 'b' suffixes of a timestamp, are merged before the quantiles are sent.
+ * Sketches are indexed by an open addressing hash table on (path id, interval), as in {@link MetricAggregator}.
+ * Flushed sketches are cleared and reused, so memory stays bounded by the number of open intervals.
+ * A value for an interval which was already flushed is dropped and counted.
+ *
+ * Thread safe.
+ */
+public class QuantileAggregator {
+    private static final int EMPTY = -1;
+
+    private MetricPathTable paths;
+
+    private final long stepMillis;
+
+    private final List<Double> quantiles;
+
+    /** Suffix of each quantile, e.g. "_p99". */
+    private final List<String> suffixes;
+
+    /** Hash table of sketch indexes, or EMPTY. */
+    private int[] table;
+
+    private int size;
+
+    // sketches, in the order they were created
+    private int[] pathIds;
+    private long[] intervals;
+    private QuantileSketch[] sketches;
+
+    /** Cleared sketches to reuse. */
+    private final Deque<QuantileSketch> spare = new ArrayDeque<>();
+
+    /** Intervals starting before this have been flushed. */
+    private long flushedBefore = Long.MIN_VALUE;
+
+    private long lateCount;
+
+    /** Path ids of the quantiles of each path. */
+    private final IntObjectMap<int[]> quantilePathIds = new IntObjectMap<>();
+
+    /**
+     * @param quantiles between 0 and 1, e.g. 0.5, 0.9, 0.99
+     */
+    public QuantileAggregator(MetricPathTable paths, long stepMillis, List<Double> quantiles) {
+        if (stepMillis <= 0) {
+            throw new IllegalArgumentException("Quantile step must be positive: " + stepMillis);
+        }
+
+        this.paths = paths;
+        this.stepMillis = stepMillis;
+        this.quantiles = List.copyOf(quantiles);
+        this.suffixes = new ArrayList<>();
+
+        for (Double quantile : this.quantiles) {
+            if (quantile < 0.0 || quantile > 1.0) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+            }
+
+            suffixes.add(suffix(quantile));
+        }
+
+        table = new int[256];
+        Arrays.fill(table, EMPTY);
+        pathIds = new int[128];
+        intervals = new long[128];
+        sketches = new QuantileSketch[128];
+    }
+
+    public long getStepMillis() {
+        return stepMillis;
+    }
+
+    public List<Double> getQuantiles() {
+        return quantiles;
+    }
+
+    /** Start of the interval a timestamp falls in. */
+    public long getIntervalStart(long timestamp) {
+        return Math.floorDiv(timestamp, stepMillis) * stepMillis;
+    }
+
+    /** Number of sketches held. */
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Number of values dropped because their interval was already flushed. */
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    public synchronized void add(int pathId, double value, long timestamp) {
+        long interval = getIntervalStart(timestamp);
+
+        if (interval < flushedBefore) {
+            lateCount++;
+            return;
+        }
+
+        int i = sketch(pathId, interval);
+
+        sketches[i].add(value);
+    }
+
+    /** Add all metrics of a batch, which must use the same path table. */
+    public synchronized void addAll(MetricBatch batch) {
+        if (batch.getPaths() != paths) {
+            throw new IllegalArgumentException("Batch uses a different path table");
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            add(batch.getPathId(i), batch.getDouble(i), batch.getTimestamp(i));
+        }
+    }
+
+    /**
+     * Add the quantiles of the intervals that are over by the interval of a timestamp to a batch,
+     * and remove their sketches. Values for those intervals are dropped from now on.
+     * @return the number of metrics added
+     */
+    public synchronized int flushBefore(long timestamp, MetricBatch out) {
+        long before = getIntervalStart(timestamp);
+
+        flushedBefore = Math.max(flushedBefore, before);
+
+        return flush(before, out);
+    }
+
+    /** Add the quantiles of all intervals to a batch, and remove their sketches. */
+    public synchronized int flush(MetricBatch out) {
+        return flush(Long.MAX_VALUE, out);
+    }
+
+    /**
+     * Move the sketches to another path table, re-interning their paths, so the current table can be dropped.
+     */
+    public synchronized void rebase(MetricPathTable newPaths) {
+        for (int i = 0; i < size; i++) {
+            pathIds[i] = newPaths.intern(paths.getPath(pathIds[i]));
+        }
+
+        paths = newPaths;
+        quantilePathIds.clear();
+        rehash(table.length);
+    }
+
+    /** Flush in the order the sketches were created, which is timeseries order when files are processed in order. */
+    private int flush(long before, MetricBatch out) {
+        if (out.getPaths() != paths) {
+            throw new IllegalArgumentException("Batch uses a different path table");
+        }
+
+        int added = 0;
+        int kept = 0;
+
+        for (int i = 0; i < size; i++) {
+            QuantileSketch sketch = sketches[i];
+
+            if (intervals[i] >= before) {
+                pathIds[kept] = pathIds[i];
+                intervals[kept] = intervals[i];
+                sketches[kept++] = sketch;
+                continue;
+            }
+
+            int[] ids = getQuantilePathIds(pathIds[i]);
+
+            for (int q = 0; q < ids.length; q++) {
+                out.add(ids[q], sketch.getQuantile(quantiles.get(q)), intervals[i]);
+            }
+
+            added += ids.length;
+            sketch.clear();
+            spare.push(sketch);
+        }
+
+        if (kept != size) {
+            Arrays.fill(sketches, kept, size, null);
+            size = kept;
+            rehash(table.length);
+        }
+
+        return added;
+    }
+
+    /** Find or create the sketch for a path and interval start. */
+    private int sketch(int pathId, long interval) {
+        int mask = table.length - 1;
+        int slot = hash(pathId, interval) & mask;
+
+        while (table[slot] != EMPTY) {
+            int i = table[slot];
+
+            if (pathIds[i] == pathId && intervals[i] == interval) {
+                return i;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == pathIds.length) {
+            pathIds = Arrays.copyOf(pathIds, 2 * size);
+            intervals = Arrays.copyOf(intervals, 2 * size);
+            sketches = Arrays.copyOf(sketches, 2 * size);
+        }
+
+        int i = size++;
+
+        pathIds[i] = pathId;
+        intervals[i] = interval;
+        sketches[i] = spare.isEmpty() ? new QuantileSketch() : spare.pop();
+        table[slot] = i;
+
+        if (2 * size > table.length) {
+            rehash(2 * table.length);
+        }
+
+        return i;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        Arrays.fill(table, EMPTY);
+
+        int mask = tableSize - 1;
+
+        for (int i = 0; i < size; i++) {
+            int slot = hash(pathIds[i], intervals[i]) & mask;
+
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = i;
+        }
+    }
+
+    private int[] getQuantilePathIds(int pathId) {
+        int[] ids = quantilePathIds.get(pathId);
+
+        if (ids == null) {
+            String path = paths.getPath(pathId);
+            ids = new int[suffixes.size()];
+
+            for (int q = 0; q < ids.length; q++) {
+                ids[q] = paths.intern(path + suffixes.get(q));
+            }
+
+            quantilePathIds.put(pathId, ids);
+        }
+
+        return ids;
+    }
+
+    private static int hash(int pathId, long interval) {
+        long h = interval * 0x9E3779B97F4A7C15L + pathId;
+
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+
+        return (int) (h ^ (h >>> 29));
+    }
+
+    /** "_p50" for 0.5, "_p99_9" for 0.999. */
+    static String suffix(double quantile) {
+        String percent = BigDecimal.valueOf(quantile).movePointRight(2).stripTrailingZeros().toPlainString();
+
+        return "_p" + percent.replace('.', '_');
+    }
+}
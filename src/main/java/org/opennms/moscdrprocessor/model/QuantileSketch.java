@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with a relative accuracy guarantee, in the style of DDSketch:
+ * positive values are counted in logarithmic buckets, bucket i holding values in (gamma^(i-1), gamma^i],
+ * so a quantile is estimated within the relative accuracy of the true value.
+ *
+ * Memory is bounded: buckets are a dense array over the range of indexes seen, and if that range exceeds
+ * the maximum number of buckets the lowest ones are collapsed together, losing accuracy only for the lowest quantiles.
+ * Values at or below zero are counted in a separate zero bucket.
+ *
+ * Sketches with the same accuracy and bucket limit can be merged, e.g. the sketches of several files for the same interval.
+ * Not thread safe.
+ */
+public class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+    private static final int INITIAL_BUCKETS = 32;
+
+    private final double relativeAccuracy;
+
+    private final double gamma;
+
+    private final double logGamma;
+
+    private final int maxBuckets;
+
+    /** Counts of buckets offset .. offset + counts.length - 1. */
+    private long[] counts = new long[0];
+
+    private int offset;
+
+    /** Lowest and highest bucket index with a count, if count > zeroCount. */
+    private int minIndex = Integer.MAX_VALUE;
+    private int maxIndex = Integer.MIN_VALUE;
+
+    private long zeroCount;
+
+    private long count;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+        if (relativeAccuracy <= 0.0 || relativeAccuracy >= 1.0) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+
+        if (maxBuckets < 2) {
+            throw new IllegalArgumentException("At least 2 buckets are needed: " + maxBuckets);
+        }
+
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1.0 + relativeAccuracy) / (1.0 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.maxBuckets = maxBuckets;
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+
+        if (value <= 0.0) {
+            zeroCount++;
+            return;
+        }
+
+        int index = (int) Math.ceil(Math.log(value) / logGamma);
+
+        increment(index, 1L);
+    }
+
+    /**
+     * Add all values of another sketch.
+     * @throws IllegalArgumentException if the sketches have a different accuracy or bucket limit
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy || other.maxBuckets != maxBuckets) {
+            throw new IllegalArgumentException("Can't merge sketches with different parameters");
+        }
+
+        if (other.count == 0) {
+            return;
+        }
+
+        count += other.count;
+        zeroCount += other.zeroCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+
+        for (int index = other.minIndex; index <= other.maxIndex; index++) {
+            long c = other.counts[index - other.offset];
+
+            if (c != 0) {
+                increment(index, c);
+            }
+        }
+    }
+
+    /**
+     * Estimate a quantile.
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the estimate, or NaN if the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        }
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) (quantile * (count - 1));
+
+        // the extremes are known exactly
+        if (rank == 0) {
+            return min;
+        } else if (rank == count - 1) {
+            return max;
+        } else if (rank < zeroCount) {
+            // may be negative, the zero bucket doesn't keep them apart
+            return Math.min(0.0, max);
+        }
+
+        long seen = zeroCount;
+        double estimate = max;
+
+        for (int index = minIndex; index <= maxIndex; index++) {
+            seen += counts[index - offset];
+
+            if (seen > rank) {
+                // the middle of the bucket, within the relative accuracy of every value in it
+                estimate = 2.0 * Math.pow(gamma, index) / (gamma + 1.0);
+                break;
+            }
+        }
+
+        return Math.max(min, Math.min(max, estimate));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /** Remove all values, keeping the bucket array for reuse. */
+    public void clear() {
+        Arrays.fill(counts, 0L);
+        minIndex = Integer.MAX_VALUE;
+        maxIndex = Integer.MIN_VALUE;
+        zeroCount = 0;
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    private void increment(int index, long c) {
+        // collapse the lowest buckets if the range would get too wide
+        if (index > maxIndex && minIndex != Integer.MAX_VALUE && (long) index - minIndex >= maxBuckets) {
+            collapseBelow(index - maxBuckets + 1);
+        } else if (index < minIndex && maxIndex != Integer.MIN_VALUE && (long) maxIndex - index >= maxBuckets) {
+            index = maxIndex - maxBuckets + 1;
+        }
+
+        ensureRange(index);
+
+        counts[index - offset] += c;
+        minIndex = Math.min(minIndex, index);
+        maxIndex = Math.max(maxIndex, index);
+    }
+
+    /** Move the counts of buckets below newMin into bucket newMin. */
+    private void collapseBelow(int newMin) {
+        long collapsed = 0L;
+
+        for (int index = minIndex; index < newMin && index <= maxIndex; index++) {
+            collapsed += counts[index - offset];
+            counts[index - offset] = 0L;
+        }
+
+        if (newMin > maxIndex) {
+            minIndex = Integer.MAX_VALUE;
+            maxIndex = Integer.MIN_VALUE;
+        } else {
+            minIndex = newMin;
+        }
+
+        ensureRange(newMin);
+
+        counts[newMin - offset] += collapsed;
+        minIndex = Math.min(minIndex, newMin);
+        maxIndex = Math.max(maxIndex, newMin);
+    }
+
+    /** Make sure the bucket array covers the index, as well as the buckets in use. */
+    private void ensureRange(int index) {
+        if (index >= offset && index < offset + counts.length) {
+            return;
+        }
+
+        boolean empty = minIndex == Integer.MAX_VALUE;
+
+        if (empty && counts.length > 0) {
+            // nothing to keep, just move the array
+            offset = index - counts.length / 2;
+            return;
+        }
+
+        int low = empty ? index : Math.min(index, minIndex);
+        int high = empty ? index : Math.max(index, maxIndex);
+        int needed = high - low + 1;
+        int length = Math.min(maxBuckets, Math.max(needed, Math.max(INITIAL_BUCKETS, 2 * counts.length)));
+        // center the used range in the new array, leaving room to grow either way
+        int newOffset = low - (length - needed) / 2;
+        long[] newCounts = new long[length];
+
+        if (!empty) {
+            System.arraycopy(counts, minIndex - offset, newCounts, minIndex - newOffset, maxIndex - minIndex + 1);
+        }
+
+        counts = newCounts;
+        offset = newOffset;
+    }
+}
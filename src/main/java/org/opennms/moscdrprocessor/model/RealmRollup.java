@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rolls metrics up per session realm ('Acme-Session-Ingress-Realm' and 'Acme-Session-Egress-Realm') and interval,
+ * so MOS can be graphed per trunk as well as per device IP.
+ *
+ * Realm names are dictionary encoded into small ids, and the count, min, max and sum of each
+ * (realm, direction, metric) are kept in arrays indexed by realm id, one set of arrays per interval.
+ * The statistics are flushed as "base:realm:Ingress_metric_stat" metrics, e.g. 'mos-cdr-realm:core:Ingress_Acme_Calling_MOS_mean',
+ * timestamped with the interval start; the statistics are those of {@link MetricAggregator#STATISTICS}.
+ * Their path ids are interned once per (realm, direction, metric).
+ *
+ * As with {@link MetricAggregator}, a rollup is kept across the files of a command and flushed with
+ * {@link #flushBefore}; a value for an interval which was already flushed is dropped and counted.
+ *
+ * Not thread safe.
+ */
+public class RealmRollup {
+    public static final int INGRESS = 0;
+    public static final int EGRESS = 1;
+
+    /** Realm id of a record with no realm; such records are not rolled up. */
+    public static final int NO_REALM = -1;
+
+    private static final String[] DIRECTIONS = { "Ingress", "Egress" };
+
+    private MetricPathTable paths;
+
+    /** Graphite path the realms go under, e.g. 'mos-cdr-realm'. */
+    private final String basePath;
+
+    private final List<String> metricNames;
+
+    private final long stepMillis;
+
+    private final Map<String, Integer> realmIds = new HashMap<>();
+
+    private final List<String> realms = new ArrayList<>();
+
+    /** Accumulators of each open interval, by interval start. */
+    private final Map<Long, Accumulators> intervals = new TreeMap<>();
+
+    /** Last interval added to, as most records of a file share an interval. */
+    private long lastInterval = Long.MIN_VALUE;
+    private Accumulators lastAccumulators;
+
+    /** Intervals starting before this have been flushed. */
+    private long flushedBefore = Long.MIN_VALUE;
+
+    private long lateCount;
+
+    /** Path ids of the statistics of each (realm, direction, metric), indexed like the accumulators; created when first flushed. */
+    private int[][] statisticPathIds = new int[0][];
+
+    /** count/min/max/sum arrays for one interval, indexed by (realm * 2 + direction) * metrics + metric. */
+    private final class Accumulators {
+        long[] counts = new long[0];
+        double[] mins = new double[0];
+        double[] maxs = new double[0];
+        double[] sums = new double[0];
+
+        void ensureRealms(int realmCount) {
+            int length = realmCount * DIRECTIONS.length * metricNames.size();
+
+            if (length > counts.length) {
+                length = Math.max(length, 2 * counts.length);
+                counts = Arrays.copyOf(counts, length);
+                mins = Arrays.copyOf(mins, length);
+                maxs = Arrays.copyOf(maxs, length);
+                sums = Arrays.copyOf(sums, length);
+            }
+        }
+    }
+
+    /**
+     * @param basePath Graphite path the realms go under, e.g. 'mos-cdr-realm'
+     * @param metricNames names of the metrics rolled up, indexed like the 'metric' argument of {@link #add}
+     */
+    public RealmRollup(MetricPathTable paths, String basePath, List<String> metricNames, long stepMillis) {
+        if (stepMillis <= 0) {
+            throw new IllegalArgumentException("Rollup step must be positive: " + stepMillis);
+        }
+
+        this.paths = paths;
+        this.basePath = basePath;
+        this.metricNames = List.copyOf(metricNames);
+        this.stepMillis = stepMillis;
+    }
+
+    /**
+     * Get the id of a realm, adding it if it is new.
+     * @return the id, or {@link #NO_REALM} if the realm is null or empty
+     */
+    public int internRealm(String realm) {
+        if (realm == null || realm.isEmpty()) {
+            return NO_REALM;
+        }
+
+        Integer id = realmIds.get(realm);
+
+        if (id == null) {
+            id = realms.size();
+            realmIds.put(realm, id);
+            realms.add(realm);
+        }
+
+        return id;
+    }
+
+    public String getRealm(int realmId) {
+        return realms.get(realmId);
+    }
+
+    public int getRealmCount() {
+        return realms.size();
+    }
+
+    /** Number of values dropped because their interval was already flushed. */
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * Add a metric value of a record.
+     * @param realmId id from {@link #internRealm}; values for {@link #NO_REALM} are ignored
+     * @param direction {@link #INGRESS} or {@link #EGRESS}
+     */
+    public void add(int realmId, int direction, int metric, double value, long timestamp) {
+        if (realmId == NO_REALM) {
+            return;
+        }
+
+        long interval = Math.floorDiv(timestamp, stepMillis) * stepMillis;
+
+        if (interval < flushedBefore) {
+            lateCount++;
+            return;
+        }
+
+        Accumulators acc = accumulators(interval);
+        acc.ensureRealms(realms.size());
+
+        int i = (realmId * DIRECTIONS.length + direction) * metricNames.size() + metric;
+
+        if (acc.counts[i] == 0) {
+            acc.mins[i] = value;
+            acc.maxs[i] = value;
+        } else {
+            acc.mins[i] = Math.min(acc.mins[i], value);
+            acc.maxs[i] = Math.max(acc.maxs[i], value);
+        }
+
+        acc.counts[i]++;
+        acc.sums[i] += value;
+    }
+
+    /**
+     * Add the statistics of the intervals that are over by the interval of a timestamp to a batch, in interval order,
+     * and remove them. Values for those intervals are dropped from now on.
+     * @return the number of metrics added
+     */
+    public int flushBefore(long timestamp, MetricBatch out) {
+        long before = Math.floorDiv(timestamp, stepMillis) * stepMillis;
+
+        flushedBefore = Math.max(flushedBefore, before);
+
+        return flush(before, out);
+    }
+
+    /**
+     * Add the statistics of every (realm, direction, metric) with values to a batch, in interval order, and remove them.
+     * @return the number of metrics added
+     */
+    public int flush(MetricBatch out) {
+        return flush(Long.MAX_VALUE, out);
+    }
+
+    private int flush(long before, MetricBatch out) {
+        if (out.getPaths() != paths) {
+            throw new IllegalArgumentException("Batch uses a different path table");
+        }
+
+        int added = 0;
+
+        for (Iterator<Map.Entry<Long, Accumulators>> it = intervals.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long, Accumulators> entry = it.next();
+            long interval = entry.getKey();
+            Accumulators acc = entry.getValue();
+
+            if (interval >= before) {
+                break;
+            }
+
+            for (int i = 0; i < acc.counts.length; i++) {
+                if (acc.counts[i] == 0) {
+                    continue;
+                }
+
+                int[] ids = getStatisticPathIds(i);
+
+                out.add(ids[0], acc.counts[i], interval);
+                out.add(ids[1], acc.mins[i], interval);
+                out.add(ids[2], acc.maxs[i], interval);
+                out.add(ids[3], acc.sums[i] / acc.counts[i], interval);
+                out.add(ids[4], acc.sums[i], interval);
+
+                added += ids.length;
+            }
+
+            it.remove();
+
+            if (interval == lastInterval) {
+                lastInterval = Long.MIN_VALUE;
+                lastAccumulators = null;
+            }
+        }
+
+        return added;
+    }
+
+    /** Intern the paths of the statistics in another path table from now on, so the current table can be dropped. */
+    public void rebase(MetricPathTable newPaths) {
+        paths = newPaths;
+        statisticPathIds = new int[0][];
+    }
+
+    /** Intern the paths of the statistics of an accumulator index, (realm * 2 + direction) * metrics + metric. */
+    private int[] getStatisticPathIds(int i) {
+        if (i >= statisticPathIds.length) {
+            statisticPathIds = Arrays.copyOf(statisticPathIds, Math.max(i + 1, 2 * statisticPathIds.length));
+        }
+
+        int[] ids = statisticPathIds[i];
+
+        if (ids == null) {
+            int metric = i % metricNames.size();
+            int direction = i / metricNames.size() % DIRECTIONS.length;
+            int realm = i / metricNames.size() / DIRECTIONS.length;
+            String prefix = basePath + ":" + pathSafe(realms.get(realm)) + ":"
+                + DIRECTIONS[direction] + "_" + metricNames.get(metric) + "_";
+
+            ids = new int[MetricAggregator.STATISTICS.size()];
+
+            for (int stat = 0; stat < ids.length; stat++) {
+                ids[stat] = paths.intern(prefix + MetricAggregator.STATISTICS.get(stat));
+            }
+
+            statisticPathIds[i] = ids;
+        }
+
+        return ids;
+    }
+
+    private Accumulators accumulators(long interval) {
+        if (interval != lastInterval) {
+            lastAccumulators = intervals.computeIfAbsent(interval, k -> new Accumulators());
+            lastInterval = interval;
+        }
+
+        return lastAccumulators;
+    }
+
+    /** Realm names may contain characters that separate the parts of a Graphite path. */
+    private static String pathSafe(String realm) {
+        return realm.replaceAll("[:\\s]", "_");
+    }
+}
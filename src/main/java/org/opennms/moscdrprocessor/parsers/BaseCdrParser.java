@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.NoSuchFileException;
+import java.text.Format;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import org.opennms.moscdrprocessor.model.CdrHeader;
+import org.opennms.moscdrprocessor.model.CdrProjection;
+import org.opennms.moscdrprocessor.model.CdrRecord;
+
+/**
+ * Common parts of the CDR parser engines: header, file name metadata and Json output.
+ * Engines implement {@link #parseCdrRecordItems(String, CdrHeader, CdrProjection, CdrRowFilter, CdrRecordItemHandler)}.
+ */
+public abstract class BaseCdrParser implements CdrParser {
+    public CdrHeader parseCdrHeader(String filePath) throws CdrParserException {
+
+        CdrHeader cdrHeader = new CdrHeader();
+
+        try (Reader reader = CdrFiles.openReader(filePath);
+            CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withTrim())) {
+
+            // Just read a single line which is the header column names
+            for (CSVRecord record : csvParser) {
+                int size = record.size();
+
+                for (int colIndex = 0; colIndex < size; colIndex++) {
+                    String colName = record.get(colIndex);
+
+                    cdrHeader.getColumnNameToIndexMap().put(colName, colIndex);
+                    cdrHeader.getIndexToColumnNameMap().put(colIndex, colName);
+                }
+
+                // break - should only be 1 line
+                break;
+            }
+        } catch (NoSuchFileException nsfe) {
+            throw new CdrParserException("Could not find file '" + filePath + "'", nsfe);
+        } catch (IOException ioex) {
+            throw new CdrParserException("IO error for file '" + filePath + "'", ioex);
+        }
+
+        return cdrHeader;
+    }
+
+    public CdrRecord parseCdrRecord(String filePath, CdrHeader cdrHeader) throws CdrParserException {
+        CdrRecord cdrRecord = parseCdrRecordMetadata(filePath);
+
+        parseCdrRecordItems(filePath, cdrHeader, cdrRecord::add);
+
+        return cdrRecord;
+    }
+
+    public void parseCdrRecordItems(String filePath, CdrHeader cdrHeader, CdrRecordItemHandler handler) throws CdrParserException {
+        parseCdrRecordItems(filePath, cdrHeader, CdrProjection.ALL, handler);
+    }
+
+    public void parseCdrRecordItems(String filePath, CdrHeader cdrHeader, CdrProjection projection, CdrRecordItemHandler handler)
+            throws CdrParserException {
+        parseCdrRecordItems(filePath, cdrHeader, projection, CdrRowFilter.ACCEPT_ALL, handler);
+    }
+
+    /**
+     * Output CDR record as Json to a file.
+     */
+    public void outputCdrRecordJson(CdrRecord cdrRecord, String outputPath) throws CdrParserException {
+        Gson gson = new GsonBuilder()
+            .serializeNulls()
+            .setPrettyPrinting()
+            .create();
+
+        String json = gson.toJson(cdrRecord);
+
+        try (FileWriter writer = new FileWriter(outputPath)) {
+            writer.write(json);
+        } catch (IOException ioex) {
+            throw new CdrParserException("IO error for file '" + outputPath + "'", ioex);
+        }
+    }
+
+    /**
+     * Parse CDR record metadata from filename.
+     */
+    public CdrRecord parseCdrRecordMetadata(String cdrPath) throws CdrParserException {
+        CdrRecord cdrRecord = new CdrRecord();
+        File file = new File(cdrPath);
+        final String fileName = file.getName();
+
+        // CDC_cdrYYYYMMDDHHmm[a-j]
+        // HDC_cdrYYYYMMDDHHmm[a-j]
+        final String CDR_REGEX_PATTERN = "([C|H]DC)_cdr(\\d{4})(\\d{2})(\\d{2})(\\d{2})(\\d{2})([a-j]?)(\\..+)?";
+
+        Pattern pattern = Pattern.compile(CDR_REGEX_PATTERN);
+
+        Matcher m = pattern.matcher(fileName);
+
+        cdrRecord.fileName = fileName;
+
+        if (m.find()) {
+            String cdcOrHdc = m.group(1);
+            String year = m.group(2);
+            String month = m.group(3);
+            String day = m.group(4);
+            String hour = m.group(5);
+            String minute = m.group(6);
+            String suffix = m.group(7);
+
+            if (cdcOrHdc.equals("CDC")) {
+                cdrRecord.setFileType("CDC");
+            } else if (cdcOrHdc.equals("HDC")) {
+                cdrRecord.setFileType("HDC");
+            }
+
+            cdrRecord.fileTimeStamp = String.format("%s%s%s%s%s", year, month, day, hour, minute);
+
+            try {
+                Format dateFormatter = new SimpleDateFormat("yyyyMMddHHmm");
+                Date dt = (Date) dateFormatter.parseObject(cdrRecord.fileTimeStamp);
+
+                cdrRecord.fileTime = dt;
+            } catch (ParseException pe) {
+                throw new CdrParserException("Could not parse CDR record file time: " + pe.getMessage(), pe);
+            }
+
+            if (!Strings.isNullOrEmpty(suffix)) {
+                cdrRecord.suffix = suffix;
+            }
+        }
+
+        return cdrRecord;
+    }
+}
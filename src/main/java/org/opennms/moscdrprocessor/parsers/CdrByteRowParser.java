@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.opennms.moscdrprocessor.model.CdrRecordBinder;
+import org.opennms.moscdrprocessor.model.CdrRecordItem;
+import org.opennms.moscdrprocessor.model.Ipv4Address;
+import org.opennms.moscdrprocessor.model.Ipv6Address;
+
+/**
+ * Tokenizes CDR rows held as ASCII bytes in a {@link ByteBuffer}, in place.
+ * Only field offsets are recorded while scanning a row; integer columns are converted straight
+ * from the bytes and Strings are only created for mapped string columns.
+ * Rows are rejected on the first column before being tokenized, and on the {@link CdrRowFilter}
+ * before the columns not needed by the filter are converted.
+ *
+ * A field starting with a quote runs until a closing quote that is followed by a delimiter,
+ * so commas inside quotes and stray quotes inside a field do not break the row apart.
+ * As with the Commons CSV engine, string values keep their quotes and are trimmed of whitespace.
+ *
+ * Not thread safe, use one instance per thread.
+ */
+public class CdrByteRowParser {
+    private static final byte COMMA = ',';
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    /** Binds the fields the row filter needs. */
+    private final CdrRecordBinder filterBinder;
+
+    /** Binds the remaining projected fields of accepted rows. */
+    private final CdrRecordBinder binder;
+
+    private final CdrRowFilter rowFilter;
+
+    /** Start and end (exclusive) offsets of each field of the current row, up to the last projected column. */
+    private final int[] fieldStarts;
+    private final int[] fieldEnds;
+
+    /** Number of fields tokenized in the current row, at most the scan column count. */
+    private int fieldCount;
+
+    /** Index of the current row, counted from the first row passed to this parser. */
+    private long rowIndex;
+
+    public CdrByteRowParser(CdrRecordBinder filterBinder, CdrRecordBinder binder, CdrRowFilter rowFilter) {
+        this.filterBinder = filterBinder;
+        this.binder = binder;
+        this.rowFilter = rowFilter;
+
+        int scanColumnCount = Math.max(filterBinder.getScanColumnCount(), binder.getScanColumnCount());
+        this.fieldStarts = new int[scanColumnCount];
+        this.fieldEnds = new int[scanColumnCount];
+    }
+
+    /**
+     * Parse all complete rows in buf between start and end.
+     * If endOfInput is false, a trailing row without a newline is left unparsed.
+     *
+     * @return offset just past the last row parsed
+     */
+    public int parseRows(ByteBuffer buf, int start, int end, boolean endOfInput, CdrRecordItemHandler handler)
+            throws CdrParserException {
+        int pos = start;
+
+        while (pos < end) {
+            // Rows are rejected on "Acct-Status-Type" before anything else in them is looked at
+            boolean statusAccepted = hasAcceptedStatus(buf, pos, end);
+            int rowEnd = statusAccepted ? tokenizeRow(buf, pos, end) : skipToNewline(buf, pos, end);
+
+            if (rowEnd < 0) {
+                // incomplete row
+                if (!endOfInput) {
+                    break;
+                }
+
+                rowEnd = end;
+            }
+
+            if (statusAccepted) {
+                CdrRecordItem item = new CdrRecordItem();
+
+                // decode just the filter fields first, the rest only if the row is accepted
+                bindColumns(filterBinder, buf, item);
+
+                if (rowFilter.accept(item)) {
+                    bindColumns(binder, buf, item);
+                    handler.handle(item);
+                }
+            }
+
+            rowIndex++;
+            pos = skipNewline(buf, rowEnd, end);
+        }
+
+        return pos;
+    }
+
+    /**
+     * Record the field offsets of the row starting at pos.
+     *
+     * @return offset of the newline ending the row, or -1 if end was reached first
+     */
+    private int tokenizeRow(ByteBuffer buf, int pos, int end) {
+        final int maxFields = fieldStarts.length;
+        int p = pos;
+
+        fieldCount = 0;
+
+        if (maxFields == 0) {
+            return skipToNewline(buf, p, end);
+        }
+
+        while (true) {
+            int fieldStart = p;
+            boolean quoted = p < end && buf.get(p) == QUOTE;
+
+            if (quoted) {
+                p = skipQuoted(buf, p, end);
+            }
+
+            while (p < end) {
+                byte b = buf.get(p);
+
+                if (b == COMMA || b == LF) {
+                    break;
+                }
+
+                p++;
+            }
+
+            fieldStarts[fieldCount] = fieldStart;
+            fieldEnds[fieldCount] = p;
+            fieldCount++;
+
+            if (p >= end) {
+                return -1;
+            }
+
+            if (buf.get(p) == LF) {
+                return p;
+            }
+
+            if (fieldCount == maxFields) {
+                // nothing else in this row is needed
+                return skipToNewline(buf, p, end);
+            }
+
+            // skip comma
+            p++;
+        }
+    }
+
+    /**
+     * Skip a field starting with a quote. The closing quote only counts if followed by a delimiter.
+     * Rows never span lines, so if there is no closing quote before the newline the quote is
+     * treated as an ordinary character and the field is scanned as unquoted.
+     */
+    private static int skipQuoted(ByteBuffer buf, int fieldStart, int end) {
+        int p = fieldStart + 1;
+
+        while (p < end) {
+            byte b = buf.get(p);
+
+            if (b == LF) {
+                break;
+            }
+
+            if (b == QUOTE && isDelimiterAt(buf, p + 1, end)) {
+                return p + 1;
+            }
+
+            p++;
+        }
+
+        return fieldStart + 1;
+    }
+
+    private static boolean isDelimiterAt(ByteBuffer buf, int p, int end) {
+        while (p < end && (buf.get(p) == ' ' || buf.get(p) == '\t')) {
+            p++;
+        }
+
+        if (p >= end) {
+            return true;
+        }
+
+        byte b = buf.get(p);
+
+        return b == COMMA || b == LF || b == CR;
+    }
+
+    private static int skipToNewline(ByteBuffer buf, int p, int end) {
+        while (p < end) {
+            if (buf.get(p) == LF) {
+                return p;
+            }
+
+            p++;
+        }
+
+        return -1;
+    }
+
+    private static int skipNewline(ByteBuffer buf, int p, int end) {
+        return p < end && buf.get(p) == LF ? p + 1 : p;
+    }
+
+    /** We only want items having "Acct-Status-Type" of 2, which should be the first column. */
+    private static boolean hasAcceptedStatus(ByteBuffer buf, int pos, int end) {
+        int p = pos;
+
+        while (p < end && (buf.get(p) == ' ' || buf.get(p) == '\t')) {
+            p++;
+        }
+
+        if (p >= end || buf.get(p) != '2') {
+            return false;
+        }
+
+        p++;
+
+        while (p < end && isSpace(buf.get(p)) && buf.get(p) != LF) {
+            p++;
+        }
+
+        return p >= end || buf.get(p) == COMMA || buf.get(p) == LF;
+    }
+
+    private void bindColumns(CdrRecordBinder binder, ByteBuffer buf, CdrRecordItem item) throws CdrParserException {
+        int columnCount = Math.min(fieldCount, binder.getScanColumnCount());
+
+        for (int colIndex = 0; colIndex < columnCount; colIndex++) {
+            if (!binder.isMapped(colIndex)) {
+                continue;
+            }
+
+            int start = trimStart(buf, fieldStarts[colIndex], fieldEnds[colIndex]);
+            int end = trimEnd(buf, start, fieldEnds[colIndex]);
+
+            if (binder.isLongColumn(colIndex)) {
+                binder.bindLong(item, colIndex, parseLong(buf, binder, start, end, colIndex));
+            } else if (binder.isAddressColumn(colIndex)) {
+                // addresses are packed straight from the bytes; only IPv6 addresses need a String
+                int ipv4 = Ipv4Address.parseField(buf, start, end);
+                Ipv6Address ipv6 = ipv4 == Ipv4Address.NONE ? Ipv6Address.parseField(buf, start, end) : null;
+
+                binder.bindAddress(item, colIndex, ipv4, ipv6);
+
+                if (binder.isBindingAddressText()) {
+                    binder.bindString(item, colIndex, decodeString(buf, start, end));
+                }
+            } else {
+                binder.bindString(item, colIndex, decodeString(buf, start, end));
+            }
+        }
+    }
+
+    private long parseLong(ByteBuffer buf, CdrRecordBinder binder, int start, int end, int colIndex) throws CdrParserException {
+        // allow a quoted number
+        if (end - start >= 2 && buf.get(start) == QUOTE && buf.get(end - 1) == QUOTE) {
+            start++;
+            end--;
+        }
+
+        int p = start;
+        boolean negative = false;
+
+        if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+            negative = buf.get(p) == '-';
+            p++;
+        }
+
+        if (p >= end) {
+            throw integerError(buf, binder, start, end, colIndex);
+        }
+
+        // accumulated negatively, as Long.parseLong does, so Long.MIN_VALUE can be parsed too
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multiplyMin = limit / 10;
+        long value = 0L;
+
+        for (; p < end; p++) {
+            int digit = buf.get(p) - '0';
+
+            if (digit < 0 || digit > 9 || value < multiplyMin) {
+                throw integerError(buf, binder, start, end, colIndex);
+            }
+
+            value *= 10;
+
+            if (value < limit + digit) {
+                throw integerError(buf, binder, start, end, colIndex);
+            }
+
+            value -= digit;
+        }
+
+        return negative ? value : -value;
+    }
+
+    private CdrParserException integerError(ByteBuffer buf, CdrRecordBinder binder, int start, int end, int colIndex) {
+        return new CdrParserException(
+            String.format("Error converting value to integer. Field: %s, rowIndex: %d, value: %s",
+                binder.getColumnName(colIndex), rowIndex, decodeString(buf, start, end)));
+    }
+
+    private static String decodeString(ByteBuffer buf, int start, int end) {
+        int length = end - start;
+
+        if (length <= 0) {
+            return "";
+        }
+
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buf.get(start + i);
+        }
+
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int trimStart(ByteBuffer buf, int start, int end) {
+        while (start < end && isSpace(buf.get(start))) {
+            start++;
+        }
+
+        return start;
+    }
+
+    private static int trimEnd(ByteBuffer buf, int start, int end) {
+        while (end > start && isSpace(buf.get(end - 1))) {
+            end--;
+        }
+
+        return end;
+    }
+
+    private static boolean isSpace(byte b) {
+        // same as String.trim(), also drops the '\r' of a CRLF line ending
+        return b >= 0 && b <= ' ';
+    }
+}
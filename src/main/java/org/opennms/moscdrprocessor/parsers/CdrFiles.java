@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens CDR files, transparently decompressing them.
+ * Compression is detected from the first bytes of the file rather than its extension,
+ * and data is decompressed as it is read, without a temp file.
+ * Also used by the Groovy scripts, e.g. 'CdrFiles.openReader(runConfig.filePath)'.
+ */
+public class CdrFiles {
+    /** Compression codecs detected by {@link #detectCompression}. */
+    public enum Compression {
+        NONE,
+        /** gzip, as written by 'gzip' (also multi-member files). */
+        GZIP,
+        /** zip archive, the first entry is read. */
+        ZIP
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CdrFiles() {
+    }
+
+    public static Compression detectCompression(String filePath) throws IOException {
+        byte[] magic = new byte[4];
+        int read = 0;
+
+        try (InputStream in = Files.newInputStream(Path.of(filePath))) {
+            while (read < magic.length) {
+                int n = in.read(magic, read, magic.length - read);
+
+                if (n < 0) {
+                    break;
+                }
+
+                read += n;
+            }
+        }
+
+        if (read >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return Compression.GZIP;
+        }
+
+        // local file header "PK\3\4"
+        if (read >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return Compression.ZIP;
+        }
+
+        return Compression.NONE;
+    }
+
+    public static boolean isCompressed(String filePath) throws IOException {
+        return detectCompression(filePath) != Compression.NONE;
+    }
+
+    /**
+     * Open the file for reading, decompressing it if needed.
+     */
+    public static InputStream openInputStream(String filePath) throws IOException {
+        Compression compression = detectCompression(filePath);
+        InputStream in = Files.newInputStream(Path.of(filePath));
+
+        try {
+            switch (compression) {
+                case GZIP:
+                    return new GZIPInputStream(in, BUFFER_SIZE);
+                case ZIP:
+                    ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+                    // an empty archive reads as an empty file
+                    zipIn.getNextEntry();
+                    return zipIn;
+                default:
+                    return new BufferedInputStream(in, BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open the file as text, decompressing it if needed. Uses the default charset, as FileReader does.
+     */
+    public static Reader openReader(String filePath) throws IOException {
+        return new InputStreamReader(openInputStream(filePath));
+    }
+}
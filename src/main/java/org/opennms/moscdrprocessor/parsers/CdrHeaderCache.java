@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.opennms.moscdrprocessor.model.CdrHeader;
+
+/**
+ * Caches parsed CDR headers by header file path, shared by all runners.
+ * A cached header, along with the binders compiled for it, is reused until the header file's
+ * modification time or size changes and its contents hash differently.
+ */
+public class CdrHeaderCache {
+    private static final CdrHeaderCache INSTANCE = new CdrHeaderCache();
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        final CdrHeader cdrHeader;
+        final long contentHash;
+        volatile long lastModifiedMillis;
+        volatile long size;
+
+        Entry(CdrHeader cdrHeader, long contentHash, long lastModifiedMillis, long size) {
+            this.cdrHeader = cdrHeader;
+            this.contentHash = contentHash;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.size = size;
+        }
+    }
+
+    public static CdrHeaderCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the header for the file, parsing it with parser only if it is not cached or has changed.
+     */
+    public CdrHeader getCdrHeader(String filePath, CdrParser parser) throws CdrParserException {
+        Path path = Path.of(filePath).toAbsolutePath();
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+            long size = attributes.size();
+
+            Entry entry = entries.get(path);
+
+            if (entry != null && entry.lastModifiedMillis == lastModifiedMillis && entry.size == size) {
+                return entry.cdrHeader;
+            }
+
+            // modified, or first time: only reparse if the contents are actually different
+            long contentHash = hashContents(path);
+
+            if (entry != null && entry.contentHash == contentHash) {
+                entry.lastModifiedMillis = lastModifiedMillis;
+                entry.size = size;
+
+                return entry.cdrHeader;
+            }
+
+            CdrHeader cdrHeader = parser.parseCdrHeader(filePath);
+
+            entries.put(path, new Entry(cdrHeader, contentHash, lastModifiedMillis, size));
+
+            return cdrHeader;
+        } catch (NoSuchFileException nsfe) {
+            throw new CdrParserException("Could not find file '" + filePath + "'", nsfe);
+        } catch (IOException ioex) {
+            throw new CdrParserException("IO error for file '" + filePath + "'", ioex);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static long hashContents(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(path));
+
+        return crc.getValue();
+    }
+}
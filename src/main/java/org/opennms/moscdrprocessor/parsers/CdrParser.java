@@ -29,6 +29,7 @@
 package org.opennms.moscdrprocessor.parsers;
 
 import org.opennms.moscdrprocessor.model.CdrHeader;
+import org.opennms.moscdrprocessor.model.CdrProjection;
 import org.opennms.moscdrprocessor.model.CdrRecord;
 
 public interface CdrParser {
@@ -36,5 +37,32 @@ public interface CdrParser {
 
     CdrRecord parseCdrRecord(String filePath, CdrHeader cdrHeader) throws CdrParserException;
 
+    /**
+     * Parse only the CDR record metadata (file type, timestamp, suffix) from the file name.
+     * The returned record has no items.
+     */
+    CdrRecord parseCdrRecordMetadata(String filePath) throws CdrParserException;
+
+    /**
+     * Parse a CDR file one row at a time, passing each accepted row to the handler as soon as it is decoded.
+     * Rows are not retained by the parser, so memory use does not depend on the size of the file.
+     */
+    void parseCdrRecordItems(String filePath, CdrHeader cdrHeader, CdrRecordItemHandler handler) throws CdrParserException;
+
+    /**
+     * Same as {@link #parseCdrRecordItems(String, CdrHeader, CdrRecordItemHandler)}, but only the fields in the projection
+     * are decoded; all other fields of the items are left unset.
+     */
+    void parseCdrRecordItems(String filePath, CdrHeader cdrHeader, CdrProjection projection, CdrRecordItemHandler handler)
+        throws CdrParserException;
+
+    /**
+     * Same as {@link #parseCdrRecordItems(String, CdrHeader, CdrProjection, CdrRecordItemHandler)}, but rows are also
+     * filtered by rowFilter before the rest of the projected fields are decoded.
+     * Only accepted rows are passed to the handler.
+     */
+    void parseCdrRecordItems(String filePath, CdrHeader cdrHeader, CdrProjection projection, CdrRowFilter rowFilter,
+        CdrRecordItemHandler handler) throws CdrParserException;
+
     void outputCdrRecordJson(CdrRecord cdrRecord, String outputPath) throws CdrParserException;
 }
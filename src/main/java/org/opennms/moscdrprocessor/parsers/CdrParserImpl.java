@@ -28,83 +28,38 @@
 
 package org.opennms.moscdrprocessor.parsers;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
-import java.text.Format;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Strings;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import java.nio.file.NoSuchFileException;
+
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.json.JSONObject;
 
-import org.opennms.moscdrprocessor.model.CdrFieldMap;
 import org.opennms.moscdrprocessor.model.CdrHeader;
-import org.opennms.moscdrprocessor.model.CdrRecord;
+import org.opennms.moscdrprocessor.model.CdrProjection;
+import org.opennms.moscdrprocessor.model.CdrRecordBinder;
 import org.opennms.moscdrprocessor.model.CdrRecordItem;
-
-public class CdrParserImpl implements CdrParser {
-    public CdrHeader parseCdrHeader(String filePath) throws CdrParserException {
-
-        CdrHeader cdrHeader = new CdrHeader();
-
-        try (Reader reader = new FileReader(filePath);
-            CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withTrim())) {
-
-            // Just read a single line which is the header column names
-            for (CSVRecord record : csvParser) {
-                int size = record.size();
-
-                for (int colIndex = 0; colIndex < size; colIndex++) {
-                    String colName = record.get(colIndex);
-
-                    cdrHeader.getColumnNameToIndexMap().put(colName, colIndex);
-                    cdrHeader.getIndexToColumnNameMap().put(colIndex, colName);
-                }
-
-                // break - should only be 1 line
-                break;
-            }
-        } catch (FileNotFoundException fnfe) {
-            throw new CdrParserException("Could not find file '" + filePath + "'", fnfe);
-        } catch (IOException ioex) {
-            throw new CdrParserException("IO error for file '" + filePath + "'", ioex);
-        }
-
-        return cdrHeader;
-    }
-
-    public CdrRecord parseCdrRecord(String filePath, CdrHeader cdrHeader) throws CdrParserException {
-        CdrRecord cdrRecord = new CdrRecord();
-
-        parseCdrRecordMetadata(cdrRecord, filePath);
-
-        // This takes some time, probably best to initialize early
-        ObjectMapper mapper = new ObjectMapper();
-
-        CdrFieldMap.initialize();
+import org.opennms.moscdrprocessor.model.Ipv4Address;
+import org.opennms.moscdrprocessor.model.Ipv6Address;
+
+/**
+ * CDR parser engine using Commons CSV.
+ */
+public class CdrParserImpl extends BaseCdrParser {
+    public void parseCdrRecordItems(String filePath, CdrHeader cdrHeader, CdrProjection projection, CdrRowFilter rowFilter,
+            CdrRecordItemHandler handler) throws CdrParserException {
+        CdrRecordBinder filterBinder = cdrHeader.getBinder(rowFilter.getFields());
+        CdrRecordBinder binder = cdrHeader.getBinder(projection.without(rowFilter.getFields()));
 
         // withQuote(null) may solve issue with embedded quote characters
-        try (Reader reader = new FileReader(filePath);
+        // Iterate the parser directly rather than calling getRecords(), so only the current row is in memory
+        try (Reader reader = CdrFiles.openReader(filePath);
             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withTrim().withQuote(null))) {
 
-            List<CSVRecord> csvRecords = csvParser.getRecords();
             int rowIndex = 0;
 
-            for (CSVRecord record : csvRecords) {
+            for (CSVRecord record : csvParser) {
                 // go through each column of this CSV row
                 int recordSize = record.size();
 
@@ -122,120 +77,66 @@ public class CdrParserImpl implements CdrParser {
                     continue;
                 }
 
-                JSONObject jsonObj = new JSONObject();
-
-                for (int colIndex = 0; colIndex < recordSize; colIndex++) {
-                    String fieldData = record.get(colIndex);
-
-                    // only map items we know/care about
-                    if (cdrHeader.getIndexToColumnNameMap().containsKey(colIndex)) {
-                        String columnName = cdrHeader.getIndexToColumnNameMap().get(colIndex);
-
-                        if (CdrFieldMap.containsField(columnName)) {
-                            // this is a field we map
-                            String fieldType = CdrFieldMap.getFieldType(columnName);
-
-                            // map to String or long
-                            if (fieldType.equals("string") ||
-                                fieldType.equals("ipaddr")) {
-                                    jsonObj.put(columnName, fieldData);
-                            } else if (fieldType.equals("integer")) {
-                                long longValue = 0L;
-
-                                try {
-                                    longValue = Long.parseLong(fieldData, 10);
-                                } catch (NumberFormatException nfe) {
-                                    throw new CdrParserException(
-                                        String.format("Error converting value to integer. Field: %s, rowIndex: %d, value: %s",
-                                            columnName, rowIndex, fieldData), nfe);
-                                }
-
-                                jsonObj.put(columnName, longValue);
-                            }
-                        }
-                    }
+                CdrRecordItem recordItem = new CdrRecordItem();
+
+                // decode just the filter fields first, the rest only if the row is accepted
+                bindColumns(filterBinder, record, recordItem, rowIndex);
+
+                if (!rowFilter.accept(recordItem)) {
+                    rowIndex++;
+                    continue;
                 }
 
-                // map jsonObj to CdrRecordItem and add to cdrRecord
-                String jsonString = jsonObj.toString();
-                CdrRecordItem recordItem = mapper.readValue(jsonString, CdrRecordItem.class);
+                bindColumns(binder, record, recordItem, rowIndex);
 
-                cdrRecord.add(recordItem);
+                handler.handle(recordItem);
 
                 rowIndex++;
             }
-        } catch (FileNotFoundException fnfe) {
-            throw new CdrParserException("Could not find file '" + filePath + "'", fnfe);
+        } catch (NoSuchFileException nsfe) {
+            throw new CdrParserException("Could not find file '" + filePath + "'", nsfe);
         } catch (IOException ioex) {
             throw new CdrParserException("IO error for file '" + filePath + "'", ioex);
         }
-
-        return cdrRecord;
-    }
-
-    /**
-     * Output CDR record as Json to a file.
-     */
-    public void outputCdrRecordJson(CdrRecord cdrRecord, String outputPath) throws CdrParserException {
-        Gson gson = new GsonBuilder()
-            .serializeNulls()
-            .setPrettyPrinting()
-            .create();
-
-        String json = gson.toJson(cdrRecord);
-
-        try (FileWriter writer = new FileWriter(outputPath)) {
-            writer.write(json);
-        } catch (IOException ioex) {
-            throw new CdrParserException("IO error for file '" + outputPath + "'", ioex);
-        }
     }
 
-    /**
-     * Parse CDR record metadata from filename.
-     */
-    private void parseCdrRecordMetadata(CdrRecord cdrRecord, String cdrPath) throws CdrParserException {
-        File file = new File(cdrPath);
-        final String fileName = file.getName();
-
-        // CDC_cdrYYYYMMDDHHmm[a-j]
-        // HDC_cdrYYYYMMDDHHmm[a-j]
-        final String CDR_REGEX_PATTERN = "([C|H]DC)_cdr(\\d{4})(\\d{2})(\\d{2})(\\d{2})(\\d{2})([a-j]?)(\\..+)?";
-
-        Pattern pattern = Pattern.compile(CDR_REGEX_PATTERN);
-
-        Matcher m = pattern.matcher(fileName);
+    private void bindColumns(CdrRecordBinder binder, CSVRecord record, CdrRecordItem recordItem, int rowIndex)
+            throws CdrParserException {
+        // Commons CSV has already split the whole row, but only convert up to the last projected column
+        int columnCount = Math.min(record.size(), binder.getScanColumnCount());
 
-        cdrRecord.fileName = fileName;
+        for (int colIndex = 0; colIndex < columnCount; colIndex++) {
+            // only map items we know/care about
+            if (!binder.isMapped(colIndex)) {
+                continue;
+            }
 
-        if (m.find()) {
-            String cdcOrHdc = m.group(1);
-            String year = m.group(2);
-            String month = m.group(3);
-            String day = m.group(4);
-            String hour = m.group(5);
-            String minute = m.group(6);
-            String suffix = m.group(7);
+            String fieldData = record.get(colIndex);
 
-            if (cdcOrHdc.equals("CDC")) {
-                cdrRecord.setFileType("CDC");
-            } else if (cdcOrHdc.equals("HDC")) {
-                cdrRecord.setFileType("HDC");
-            }
+            // map to String or long
+            if (binder.isLongColumn(colIndex)) {
+                long longValue = 0L;
 
-            cdrRecord.fileTimeStamp = String.format("%s%s%s%s%s", year, month, day, hour, minute);
+                try {
+                    longValue = Long.parseLong(fieldData, 10);
+                } catch (NumberFormatException nfe) {
+                    throw new CdrParserException(
+                        String.format("Error converting value to integer. Field: %s, rowIndex: %d, value: %s",
+                            binder.getColumnName(colIndex), rowIndex, fieldData), nfe);
+                }
 
-            try {
-                Format dateFormatter = new SimpleDateFormat("yyyyMMddHHmm");
-                Date dt = (Date) dateFormatter.parseObject(cdrRecord.fileTimeStamp);
+                binder.bindLong(recordItem, colIndex, longValue);
+            } else if (binder.isAddressColumn(colIndex)) {
+                int ipv4 = Ipv4Address.parseField(fieldData);
+                Ipv6Address ipv6 = ipv4 == Ipv4Address.NONE ? Ipv6Address.parseField(fieldData) : null;
 
-                cdrRecord.fileTime = dt;
-            } catch (ParseException pe) {
-                throw new CdrParserException("Could not parse CDR record file time: " + pe.getMessage(), pe);
-            }
+                binder.bindAddress(recordItem, colIndex, ipv4, ipv6);
 
-            if (!Strings.isNullOrEmpty(suffix)) {
-                cdrRecord.suffix = suffix;
+                if (binder.isBindingAddressText()) {
+                    binder.bindString(recordItem, colIndex, fieldData);
+                }
+            } else {
+                binder.bindString(recordItem, colIndex, fieldData);
             }
         }
     }
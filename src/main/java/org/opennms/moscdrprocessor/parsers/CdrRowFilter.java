@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.util.function.Predicate;
+
+import org.opennms.moscdrprocessor.model.CdrProjection;
+import org.opennms.moscdrprocessor.model.CdrRecordItem;
+
+/**
+ * A row predicate pushed down into a {@link CdrParser}.
+ * For each row with an "Acct-Status-Type" of 2 the parser first decodes only the filter's fields,
+ * calls {@link #accept}, and decodes the rest of the projected fields only if the row was accepted.
+ */
+public interface CdrRowFilter {
+    /** Accepts every row. */
+    CdrRowFilter ACCEPT_ALL = of(CdrProjection.of(), item -> true);
+
+    /** Fields the filter needs; these are decoded before {@link #accept} is called. */
+    CdrProjection getFields();
+
+    /** Called with an item holding only the filter's fields. May be called from several threads at once. */
+    boolean accept(CdrRecordItem item);
+
+    static CdrRowFilter of(CdrProjection fields, Predicate<CdrRecordItem> predicate) {
+        return new CdrRowFilter() {
+            @Override
+            public CdrProjection getFields() {
+                return fields;
+            }
+
+            @Override
+            public boolean accept(CdrRecordItem item) {
+                return predicate.test(item);
+            }
+        };
+    }
+}
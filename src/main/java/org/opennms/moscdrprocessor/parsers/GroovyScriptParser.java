@@ -30,6 +30,7 @@ package org.opennms.moscdrprocessor.parsers;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
@@ -37,6 +38,7 @@ import javax.script.ScriptException;
 
 import org.opennms.moscdrprocessor.commands.RunConfig;
 import org.opennms.moscdrprocessor.log.LogAdapter;
+import org.opennms.moscdrprocessor.model.MetricBatch;
 
 public class GroovyScriptParser implements ScriptParser {
     private RunConfig runConfig;
@@ -51,30 +53,75 @@ public class GroovyScriptParser implements ScriptParser {
      * Run a Groovy script to parse a CDR file and create Graphite-style messages.
      */
     public List<String> parseCdrToMessages() {
+        Object result = evalScript();
+
+        return result instanceof MetricBatch ? ((MetricBatch) result).toLines() : toMessages(result);
+    }
+
+    /**
+     * Run a Groovy script to parse a CDR file and create Graphite metrics.
+     * The script may return a {@link MetricBatch}, or a List of Graphite-style messages which are parsed into one.
+     */
+    public MetricBatch parseCdrToMetrics() {
+        Object result = evalScript();
+
+        if (result == null || result instanceof MetricBatch) {
+            return (MetricBatch) result;
+        }
+
+        return MetricBatch.fromLines(toMessages(result));
+    }
+
+    /**
+     * The messages of a script which returned a List.
+     * @throws IllegalArgumentException if the result is not a List of Strings
+     */
+    private static List<String> toMessages(Object result) throws IllegalArgumentException {
+        if (result == null) {
+            return null;
+        }
+
+        if (!(result instanceof List)) {
+            throw new IllegalArgumentException("Expected a List of messages, got " + result.getClass().getName());
+        }
+
+        List<?> list = (List<?>) result;
+        List<String> messages = new ArrayList<>(list.size());
+
+        for (Object message : list) {
+            if (!(message instanceof String)) {
+                throw new IllegalArgumentException("Invalid Graphite message: '" + message + "'");
+            }
+
+            messages.add((String) message);
+        }
+
+        return messages;
+    }
+
+    private Object evalScript() {
         ScriptEngineManager manager = new ScriptEngineManager();
         ScriptEngine engine = manager.getEngineByName("groovy");
-        List<String> messages = null;
+        Object evalResult = null;
 
         if (engine == null) {
             logger.error("Groovy script engine not found!");
             return null;
         }
 
-        // Get back list of Strings, each is a Graphite message
+        // Get back a MetricBatch, or a list of Strings, each is a Graphite message
         try (FileReader reader = new FileReader(runConfig.cdrParseScript)) {
             // pass in global values to the script
             engine.put("log", logger);
             engine.put("runConfig", runConfig);
 
-            Object evalResult = engine.eval(reader);
-
-            messages = (List<String>) evalResult;
+            evalResult = engine.eval(reader);
         } catch (IOException ioe) {
             logger.debug("An IOException occurred: {}", ioe.getMessage());
         } catch (ScriptException e) {
             logger.debug("A ScriptException occurred: {}", e.getMessage());
         }
 
-        return messages;
+        return evalResult;
     }
 }
@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.opennms.moscdrprocessor.model.CdrHeader;
+import org.opennms.moscdrprocessor.model.CdrProjection;
+import org.opennms.moscdrprocessor.model.CdrRecordBinder;
+import org.opennms.moscdrprocessor.model.CdrRecordItem;
+
+/**
+ * CDR parser engine which memory-maps the file and tokenizes the bytes in place with {@link CdrByteRowParser},
+ * instead of creating a String for every column of every row.
+ * The file is mapped in windows of at most {@link #MAP_WINDOW_BYTES} by default; a row may not be longer than that.
+ *
+ * With more than one worker, a large file is split into chunks aligned to row boundaries which are parsed
+ * in parallel on a fork/join pool. Items are still passed to the handler in file order, on the calling thread.
+ *
+ * Compressed files (see {@link CdrFiles}) are decompressed as a stream instead of being mapped.
+ */
+public class MappedCdrParser extends BaseCdrParser {
+    /** Name of this engine for 'RunConfig.parserEngine'. */
+    public static final String ENGINE_NAME = "mmap";
+
+    public static final int MAP_WINDOW_BYTES = 64 * 1024 * 1024;
+
+    public static final long DEFAULT_MIN_CHUNK_BYTES = 8 * 1024 * 1024;
+
+    /** Initial size of the buffer compressed files are decompressed into. */
+    private static final int STREAM_BUFFER_BYTES = 1024 * 1024;
+
+    private final int mapWindowBytes;
+
+    private final int workers;
+
+    private final long minChunkBytes;
+
+    public MappedCdrParser() {
+        this(MAP_WINDOW_BYTES);
+    }
+
+    public MappedCdrParser(int mapWindowBytes) {
+        this(mapWindowBytes, 1, DEFAULT_MIN_CHUNK_BYTES);
+    }
+
+    public MappedCdrParser(int workers, long minChunkBytes) {
+        this(MAP_WINDOW_BYTES, workers, minChunkBytes);
+    }
+
+    public MappedCdrParser(int mapWindowBytes, int workers, long minChunkBytes) {
+        this.mapWindowBytes = mapWindowBytes;
+        this.workers = Math.max(1, workers);
+        this.minChunkBytes = Math.max(1L, minChunkBytes);
+    }
+
+    public void parseCdrRecordItems(String filePath, CdrHeader cdrHeader, CdrProjection projection, CdrRowFilter rowFilter,
+            CdrRecordItemHandler handler) throws CdrParserException {
+        CdrRecordBinder filterBinder = cdrHeader.getBinder(rowFilter.getFields());
+        CdrRecordBinder binder = cdrHeader.getBinder(projection.without(rowFilter.getFields()));
+
+        try {
+            if (CdrFiles.isCompressed(filePath)) {
+                parseCompressed(filePath, new CdrByteRowParser(filterBinder, binder, rowFilter), handler);
+                return;
+            }
+        } catch (NoSuchFileException nsfe) {
+            throw new CdrParserException("Could not find file '" + filePath + "'", nsfe);
+        } catch (IOException ioex) {
+            throw new CdrParserException("IO error for file '" + filePath + "'", ioex);
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            if (workers > 1 && size >= 2 * minChunkBytes) {
+                parseParallel(channel, size, filePath, filterBinder, binder, rowFilter, handler);
+            } else {
+                parseSequential(channel, size, filePath, new CdrByteRowParser(filterBinder, binder, rowFilter), handler);
+            }
+        } catch (NoSuchFileException nsfe) {
+            throw new CdrParserException("Could not find file '" + filePath + "'", nsfe);
+        } catch (IOException ioex) {
+            throw new CdrParserException("IO error for file '" + filePath + "'", ioex);
+        }
+    }
+
+    private void parseSequential(FileChannel channel, long size, String filePath, CdrByteRowParser rowParser,
+            CdrRecordItemHandler handler) throws IOException, CdrParserException {
+        long position = 0L;
+
+        while (position < size) {
+            int length = (int) Math.min(mapWindowBytes, size - position);
+            boolean endOfInput = position + length == size;
+
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            int consumed = rowParser.parseRows(buf, 0, length, endOfInput, handler);
+
+            if (consumed == 0) {
+                throw new CdrParserException(
+                    String.format("CDR row at offset %d of file '%s' is longer than %d bytes", position, filePath, mapWindowBytes));
+            }
+
+            position += consumed;
+        }
+    }
+
+    /**
+     * A compressed file can't be mapped, so it is decompressed as a stream into a heap buffer
+     * which is tokenized the same way, carrying a partial row over to the next read.
+     * The buffer starts small and grows up to the map window size for long rows.
+     * Compressed files are always parsed on the calling thread.
+     */
+    private void parseCompressed(String filePath, CdrByteRowParser rowParser, CdrRecordItemHandler handler)
+            throws IOException, CdrParserException {
+        byte[] bytes = new byte[Math.min(mapWindowBytes, STREAM_BUFFER_BYTES)];
+        int filled = 0;
+        boolean endOfInput = false;
+
+        try (InputStream in = CdrFiles.openInputStream(filePath)) {
+            while (!endOfInput) {
+                if (filled == bytes.length) {
+                    if (bytes.length >= mapWindowBytes) {
+                        throw new CdrParserException(
+                            String.format("CDR row in file '%s' is longer than %d bytes", filePath, mapWindowBytes));
+                    }
+
+                    bytes = Arrays.copyOf(bytes, (int) Math.min(mapWindowBytes, 2L * bytes.length));
+                }
+
+                int read = in.read(bytes, filled, bytes.length - filled);
+
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    filled += read;
+                }
+
+                int consumed = rowParser.parseRows(ByteBuffer.wrap(bytes), 0, filled, endOfInput, handler);
+
+                System.arraycopy(bytes, consumed, bytes, 0, filled - consumed);
+                filled -= consumed;
+            }
+        }
+    }
+
+    /**
+     * Parse chunks on a fork/join pool, handing the items of each chunk to the handler in file order.
+     * At most two chunks per worker are parsed ahead of the handler, so memory stays bounded.
+     */
+    private void parseParallel(FileChannel channel, long size, String filePath, CdrRecordBinder filterBinder,
+            CdrRecordBinder binder, CdrRowFilter rowFilter, CdrRecordItemHandler handler) throws IOException, CdrParserException {
+        // enough chunks to keep all workers busy, but none larger than a map window
+        long chunkBytes = Math.min(mapWindowBytes, Math.max(minChunkBytes, size / workers));
+        List<Long> boundaries = findChunkBoundaries(channel, size, chunkBytes);
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        Deque<Future<List<CdrRecordItem>>> pending = new ArrayDeque<>();
+
+        try {
+            int nextChunk = 0;
+            int chunkCount = boundaries.size() - 1;
+
+            while (nextChunk < chunkCount || !pending.isEmpty()) {
+                while (nextChunk < chunkCount && pending.size() < 2 * workers) {
+                    final long start = boundaries.get(nextChunk);
+                    final long end = boundaries.get(nextChunk + 1);
+
+                    pending.add(pool.submit(() -> parseChunk(channel, start, end, filePath, filterBinder, binder, rowFilter)));
+                    nextChunk++;
+                }
+
+                for (CdrRecordItem item : pending.remove().get()) {
+                    handler.handle(item);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CdrParserException("Interrupted parsing file '" + filePath + "'", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CdrParserException) {
+                throw (CdrParserException) e.getCause();
+            }
+
+            throw new CdrParserException("Error parsing file '" + filePath + "': " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static List<CdrRecordItem> parseChunk(FileChannel channel, long start, long end, String filePath,
+            CdrRecordBinder filterBinder, CdrRecordBinder binder, CdrRowFilter rowFilter) throws IOException, CdrParserException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new CdrParserException(
+                String.format("CDR chunk at offset %d of file '%s' is too large to map", start, filePath));
+        }
+
+        int length = (int) (end - start);
+        List<CdrRecordItem> items = new ArrayList<>();
+        CdrByteRowParser rowParser = new CdrByteRowParser(filterBinder, binder, rowFilter);
+
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+        try {
+            // chunks end on a row boundary
+            rowParser.parseRows(buf, 0, length, true, items::add);
+        } catch (CdrParserException e) {
+            throw new CdrParserException(
+                String.format("%s (in chunk at offset %d of file '%s')", e.getMessage(), start, filePath), e);
+        }
+
+        return items;
+    }
+
+    /**
+     * Split the file into chunks of about chunkBytes, each starting just after a newline.
+     *
+     * @return chunk start offsets followed by the file size
+     */
+    private static List<Long> findChunkBoundaries(FileChannel channel, long size, long chunkBytes) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        ByteBuffer scanBuffer = ByteBuffer.allocate(8192);
+
+        boundaries.add(0L);
+
+        long next = chunkBytes;
+
+        while (next < size) {
+            long newline = findNewline(channel, next - 1, size, scanBuffer);
+
+            if (newline < 0 || newline + 1 >= size) {
+                break;
+            }
+
+            boundaries.add(newline + 1);
+            next = newline + 1 + chunkBytes;
+        }
+
+        boundaries.add(size);
+
+        return boundaries;
+    }
+
+    private static long findNewline(FileChannel channel, long position, long size, ByteBuffer scanBuffer) throws IOException {
+        while (position < size) {
+            scanBuffer.clear();
+
+            int read = channel.read(scanBuffer, position);
+
+            if (read <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < read; i++) {
+                if (scanBuffer.get(i) == '\n') {
+                    return position + i;
+                }
+            }
+
+            position += read;
+        }
+
+        return -1L;
+    }
+}
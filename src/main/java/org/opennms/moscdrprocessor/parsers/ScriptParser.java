@@ -30,6 +30,10 @@ package org.opennms.moscdrprocessor.parsers;
 
 import java.util.List;
 
+import org.opennms.moscdrprocessor.model.MetricBatch;
+
 public interface ScriptParser {
     List<String> parseCdrToMessages();
+
+    MetricBatch parseCdrToMetrics();
 }
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.runners;
+
+import com.google.common.base.Strings;
+
+import org.opennms.moscdrprocessor.commands.RunConfig;
+import org.opennms.moscdrprocessor.model.MetricAggregator;
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+import org.opennms.moscdrprocessor.model.QuantileAggregator;
+import org.opennms.moscdrprocessor.model.RealmRollup;
+
+/**
+ * Metrics aggregated per interval over the files of a command, so the files of an interval,
+ * such as the 'a' and 'b' files of a timestamp, are sent as one set of statistics.
+ *
+ * One is created per command and passed to the runner of each file. Files are processed one at a time,
+ * in timestamp order: after each file the intervals before that of the file are complete and sent,
+ * the others are sent by {@link #flush} once the command has processed its last file.
+ *
+ * The paths of the command are interned in a table of its own. Once that holds more than a maximum of paths,
+ * it is replaced at the end of a file by a table with only the paths of the open intervals,
+ * so a long running watch command does not keep the path of every IP it has ever seen.
+ */
+public class AggregationState {
+    /** Interval of the 'quantiles' and realm rollups if 'aggregateStepSeconds' is not set. */
+    static final long DEFAULT_INTERVAL_STEP_SECONDS = 300L;
+
+    /** Number of paths above which the path table is replaced. */
+    static final int DEFAULT_MAX_PATHS = 1 << 18;
+
+    private final int maxPaths;
+
+    private MetricPathTable pathTable = new MetricPathTable();
+
+    /** Aggregates the metrics per interval, or null if 'aggregateStepSeconds' is not set. */
+    private final MetricAggregator aggregator;
+
+    /** Quantile sketches per interval, or null if 'quantiles' is not set. */
+    private final QuantileAggregator quantileAggregator;
+
+    /** Rolls the metrics up per session realm, or null if 'realmRollupPath' is not set. */
+    private final RealmRollup realmRollup;
+
+    public AggregationState(RunConfig runConfig) {
+        this(runConfig, DEFAULT_MAX_PATHS);
+    }
+
+    AggregationState(RunConfig runConfig, int maxPaths) {
+        this.maxPaths = maxPaths;
+
+        aggregator = runConfig.aggregateStepSeconds != null && runConfig.aggregateStepSeconds > 0
+            ? new MetricAggregator(pathTable, runConfig.aggregateStepSeconds * 1000L) : null;
+
+        quantileAggregator = runConfig.quantiles != null && !runConfig.quantiles.isEmpty()
+            ? new QuantileAggregator(pathTable, getIntervalStepSeconds(runConfig) * 1000L, runConfig.quantiles) : null;
+
+        realmRollup = !Strings.isNullOrEmpty(runConfig.realmRollupPath)
+            ? new RealmRollup(pathTable, runConfig.realmRollupPath, MetricPlan.compile(runConfig.metrics).getNames(),
+                getIntervalStepSeconds(runConfig) * 1000L)
+            : null;
+    }
+
+    /** Interval of the quantiles and realm rollups: 'aggregateStepSeconds', or 300 seconds if that is not set. */
+    static long getIntervalStepSeconds(RunConfig runConfig) {
+        return runConfig.aggregateStepSeconds != null && runConfig.aggregateStepSeconds > 0
+            ? runConfig.aggregateStepSeconds : DEFAULT_INTERVAL_STEP_SECONDS;
+    }
+
+    /** The table runners intern their paths in; it is replaced at the end of a file once it is too large. */
+    public MetricPathTable getPathTable() {
+        return pathTable;
+    }
+
+    public MetricAggregator getAggregator() {
+        return aggregator;
+    }
+
+    public QuantileAggregator getQuantileAggregator() {
+        return quantileAggregator;
+    }
+
+    public RealmRollup getRealmRollup() {
+        return realmRollup;
+    }
+
+    /** Number of values dropped because they were for an interval which was already sent. */
+    public long getLateCount() {
+        return (aggregator != null ? aggregator.getLateCount() : 0L)
+            + (quantileAggregator != null ? quantileAggregator.getLateCount() : 0L)
+            + (realmRollup != null ? realmRollup.getLateCount() : 0L);
+    }
+
+    /**
+     * Add the metrics of the intervals before the interval of a timestamp to a batch, once a file has been processed.
+     * The batch keeps the path table it was created with, even if that is replaced.
+     * @return the number of metrics added
+     */
+    public int flushBefore(long timestamp, MetricBatch out) {
+        int added = 0;
+
+        if (aggregator != null) {
+            added += aggregator.flushBefore(timestamp, out);
+        }
+
+        if (quantileAggregator != null) {
+            added += quantileAggregator.flushBefore(timestamp, out);
+        }
+
+        if (realmRollup != null) {
+            added += realmRollup.flushBefore(timestamp, out);
+        }
+
+        if (pathTable.size() > maxPaths) {
+            replacePathTable();
+        }
+
+        return added;
+    }
+
+    /**
+     * Add the metrics of all intervals to a batch.
+     * @return the number of metrics added
+     */
+    public int flush(MetricBatch out) {
+        int added = 0;
+
+        if (aggregator != null) {
+            added += aggregator.flush(out);
+        }
+
+        if (quantileAggregator != null) {
+            added += quantileAggregator.flush(out);
+        }
+
+        if (realmRollup != null) {
+            added += realmRollup.flush(out);
+        }
+
+        return added;
+    }
+
+    /** Replace the path table by one with only the paths of the open intervals. */
+    private void replacePathTable() {
+        MetricPathTable newPaths = new MetricPathTable();
+
+        if (aggregator != null) {
+            aggregator.rebase(newPaths);
+        }
+
+        if (quantileAggregator != null) {
+            quantileAggregator.rebase(newPaths);
+        }
+
+        if (realmRollup != null) {
+            realmRollup.rebase(newPaths);
+        }
+
+        pathTable = newPaths;
+    }
+}
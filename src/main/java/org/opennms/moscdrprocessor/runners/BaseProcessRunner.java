@@ -28,16 +28,16 @@
 
 package org.opennms.moscdrprocessor.runners;
 
-import java.util.List;
-
 import com.google.common.base.Strings;
 
+import org.opennms.moscdrprocessor.client.AsyncGraphiteClient;
 import org.opennms.moscdrprocessor.client.GraphiteClient;
-import org.opennms.moscdrprocessor.client.GraphiteClientImpl;
+import org.opennms.moscdrprocessor.client.GraphiteClientRegistry;
 import org.opennms.moscdrprocessor.commands.CmdRunException;
 import org.opennms.moscdrprocessor.commands.RunConfig;
 import org.opennms.moscdrprocessor.commands.RunConfig.RecipientInfo;
 import org.opennms.moscdrprocessor.log.LogAdapter;
+import org.opennms.moscdrprocessor.model.MetricBatch;
 
 public abstract class BaseProcessRunner implements ProcessRunner, Runnable {
     protected RunConfig runConfig;
@@ -61,29 +61,37 @@ public abstract class BaseProcessRunner implements ProcessRunner, Runnable {
     public void execute() throws CmdRunException {
         LOG.info("BaseProcessRunner.execute started.");
 
-        List<String> messages = parseFileToMessages();
+        MetricBatch metrics = parseFileToMetrics();
 
         // send the messages
         if (!runConfig.suppressSendGraphite) {
             LOG.info("Sending Graphite messages for CDR record.");
 
-            sendGraphiteMessages(messages);
+            sendGraphiteMetrics(metrics);
+            logSendStatistics();
         }
 
         LOG.info("BaseProcessRunner.execute exiting.");
     }
 
-    // Override this to create the Graphite messages from runConfig.filePath
-    protected abstract List<String> parseFileToMessages() throws CmdRunException;
+    // Override this to create the Graphite metrics from runConfig.filePath
+    protected abstract MetricBatch parseFileToMetrics() throws CmdRunException;
 
-    protected void sendGraphiteMessages(List<String> messages) throws CmdRunException {
+    protected void sendGraphiteMetrics(MetricBatch metrics) throws CmdRunException {
         ensureGraphiteClients();
 
+        if (getSendQueueSize() > 0) {
+            // the runner reuses its batch, so queue a copy, shared by all recipients
+            MetricBatch queued = new MetricBatch(metrics.getPaths(), metrics.size());
+            queued.addAll(metrics);
+            metrics = queued;
+        }
+
         for (var client : graphiteClients) {
-            LOG.debug("Sending Graphite message to host: {}, port: {}, Graphite base path: {}",
-                client.getHostName(), client.getPort(), runConfig.graphiteBasePath);
+            LOG.debug("Sending {} Graphite metrics to host: {}, port: {}, Graphite base path: {}",
+                metrics.size(), client.getHostName(), client.getPort(), runConfig.graphiteBasePath);
 
-            client.sendMessages(messages);
+            client.sendBatch(metrics);
         }
     }
 
@@ -97,8 +105,25 @@ public abstract class BaseProcessRunner implements ProcessRunner, Runnable {
 
             for (int i = 0; i < runConfig.recipients.size(); i++) {
                 RecipientInfo info = runConfig.recipients.get(i);
-                graphiteClients[i] = new GraphiteClientImpl(info.hostName, info.port, LOG.isDebugEnabled());
+                graphiteClients[i] = GraphiteClientRegistry.getInstance().getClient(info, getSendQueueSize(), LOG.isDebugEnabled());
             }
         }
     }
+
+    /** Log the statistics of the recipients with a send queue, once a file has been processed. */
+    protected void logSendStatistics() {
+        if (graphiteClients == null) {
+            return;
+        }
+
+        for (var client : graphiteClients) {
+            if (client instanceof AsyncGraphiteClient) {
+                ((AsyncGraphiteClient) client).logStatistics();
+            }
+        }
+    }
+
+    private int getSendQueueSize() {
+        return runConfig.sendQueueSize != null ? runConfig.sendQueueSize : 0;
+    }
 }
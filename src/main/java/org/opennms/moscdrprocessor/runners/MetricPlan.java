@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.runners;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Strings;
+
+import org.opennms.moscdrprocessor.commands.RunConfig.MetricInfo;
+import org.opennms.moscdrprocessor.model.CdrFieldMap;
+import org.opennms.moscdrprocessor.model.CdrProjection;
+import org.opennms.moscdrprocessor.model.CdrRecordColumns;
+import org.opennms.moscdrprocessor.model.CdrRecordItem;
+import org.opennms.moscdrprocessor.model.MetricBatch;
+
+/**
+ * The Graphite metrics to emit for each CDR record, from 'RunConfig.metrics', compiled into field getters
+ * so the metrics of a record are all added in one pass, with no lookups by name.
+ */
+public class MetricPlan {
+    /** Metrics emitted if 'RunConfig.metrics' is not set. */
+    public static final List<String> DEFAULT_FIELDS = List.of(
+        "Acme-Calling-MOS",
+        "Acme-Called-MOS"
+    );
+
+    /** Largest magnitude a scaled value is rounded at, as doubles above it have no fraction digits. */
+    private static final double MAX_ROUNDED = 0x1p53;
+
+    private final List<String> fields;
+
+    private final List<String> names;
+
+    private final CdrFieldMap.LongFieldGetter[] getters;
+
+    /** Factor to multiply each metric by, NaN if it is sent unscaled. */
+    private final double[] scales;
+
+    /**
+     * Integer to divide each metric by instead, e.g. 100 for a scale of 0.01, as the quotient is the double
+     * closest to the exact result, where multiplying by the inexact 0.01 may not be; 0 to multiply.
+     */
+    private final long[] divisors;
+
+    /** 10 to the number of decimal places of each scale, which products are rounded to. */
+    private final double[] roundings;
+
+    private final CdrProjection projection;
+
+    private MetricPlan(List<String> fields, List<String> names, double[] scales) {
+        this.fields = List.copyOf(fields);
+        this.names = List.copyOf(names);
+        this.scales = scales;
+        this.divisors = new long[scales.length];
+        this.roundings = new double[scales.length];
+
+        for (int i = 0; i < scales.length; i++) {
+            if (!Double.isNaN(scales[i])) {
+                double reciprocal = 1.0 / scales[i];
+                long divisor = Math.round(reciprocal);
+
+                divisors[i] = divisor > 1 && reciprocal == (double) divisor ? divisor : 0L;
+                roundings[i] = Math.pow(10, Math.max(0, BigDecimal.valueOf(scales[i]).stripTrailingZeros().scale()));
+            }
+        }
+        this.getters = fields.stream().map(CdrFieldMap::getLongFieldGetter).toArray(CdrFieldMap.LongFieldGetter[]::new);
+        this.projection = CdrProjection.of(fields);
+    }
+
+    /**
+     * @param metrics the configured metrics, or null for {@link #DEFAULT_FIELDS}
+     * @throws IllegalArgumentException if a field is not an integer CDR field
+     */
+    public static MetricPlan compile(List<MetricInfo> metrics) throws IllegalArgumentException {
+        CdrFieldMap.initialize();
+
+        if (metrics == null || metrics.isEmpty()) {
+            double[] scales = new double[DEFAULT_FIELDS.size()];
+            Arrays.fill(scales, Double.NaN);
+
+            return new MetricPlan(DEFAULT_FIELDS, DEFAULT_FIELDS.stream().map(MetricPlan::defaultName).collect(Collectors.toList()), scales);
+        }
+
+        List<String> fields = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        double[] scales = new double[metrics.size()];
+
+        for (MetricInfo metric : metrics) {
+            if (metric == null || !"integer".equals(CdrFieldMap.getFieldType(metric.field))) {
+                throw new IllegalArgumentException("Metric field is not an integer CDR field: '"
+                    + (metric != null ? metric.field : null) + "'");
+            }
+
+            scales[fields.size()] = metric.scale != null ? metric.scale : Double.NaN;
+            fields.add(metric.field);
+            names.add(!Strings.isNullOrEmpty(metric.name) ? metric.name : defaultName(metric.field));
+        }
+
+        return new MetricPlan(fields, names, scales);
+    }
+
+    /** Number of metrics emitted per record. */
+    public int size() {
+        return names.size();
+    }
+
+    /** Metric names, as written in the Graphite path. */
+    public List<String> getNames() {
+        return names;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /** The CDR fields the metrics are read from, for the parser to decode. */
+    public CdrProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * Add the metrics of an item.
+     * @param pathIds path id of each metric for the item's correlation IP, in the order of {@link #getNames()}
+     */
+    public void addMetrics(CdrRecordItem item, int[] pathIds, long timestamp, MetricBatch batch) {
+        for (int i = 0; i < getters.length; i++) {
+            add(batch, pathIds[i], i, getters[i].get(item), timestamp);
+        }
+    }
+
+    /**
+     * Get the columns of a block that {@link #addMetrics(long[][], int, int[], long, MetricBatch)} reads,
+     * once per block.
+     */
+    public long[][] getColumns(CdrRecordColumns block) {
+        long[][] columns = new long[fields.size()][];
+
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = block.getLongColumn(fields.get(i));
+        }
+
+        return columns;
+    }
+
+    /** Add the metrics of a row of a block, given its {@link #getColumns}. */
+    public void addMetrics(long[][] columns, int row, int[] pathIds, long timestamp, MetricBatch batch) {
+        for (int i = 0; i < columns.length; i++) {
+            add(batch, pathIds[i], i, columns[i][row], timestamp);
+        }
+    }
+
+    /** The value of a metric for an item, scaled. */
+    public double getValue(CdrRecordItem item, int metric) {
+        return scale(metric, getters[metric].get(item));
+    }
+
+    /** The value of a metric for a row of a block, given its {@link #getColumns}, scaled. */
+    public double getValue(long[][] columns, int row, int metric) {
+        return scale(metric, columns[metric][row]);
+    }
+
+    /**
+     * Scale a value, so that it reads as the decimal it is, e.g. 430 with a scale of 0.01 as 4.3
+     * rather than 4.3000000000000001.
+     */
+    private double scale(int metric, long value) {
+        if (Double.isNaN(scales[metric])) {
+            return value;
+        }
+
+        if (divisors[metric] != 0L) {
+            return value / (double) divisors[metric];
+        }
+
+        double scaled = value * scales[metric];
+        double rounded = scaled * roundings[metric];
+
+        return Math.abs(rounded) < MAX_ROUNDED ? Math.round(rounded) / roundings[metric] : scaled;
+    }
+
+    private void add(MetricBatch batch, int pathId, int metric, long value, long timestamp) {
+        if (Double.isNaN(scales[metric])) {
+            batch.add(pathId, value, timestamp);
+        } else {
+            batch.add(pathId, scale(metric, value), timestamp);
+        }
+    }
+
+    private static String defaultName(String field) {
+        return field.replace('-', '_');
+    }
+}
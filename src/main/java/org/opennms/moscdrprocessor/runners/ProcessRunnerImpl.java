@@ -28,38 +28,161 @@
 
 package org.opennms.moscdrprocessor.runners;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import com.google.common.base.Strings;
 
 import org.opennms.moscdrprocessor.commands.CmdRunException;
 import org.opennms.moscdrprocessor.commands.RunConfig;
 import org.opennms.moscdrprocessor.log.LogAdapter;
+import org.opennms.moscdrprocessor.model.CdrFieldMap;
 import org.opennms.moscdrprocessor.model.CdrHeader;
+import org.opennms.moscdrprocessor.model.CdrProjection;
 import org.opennms.moscdrprocessor.model.CdrRecord;
+import org.opennms.moscdrprocessor.model.CdrRecordColumns;
 import org.opennms.moscdrprocessor.model.CdrRecordItem;
+import org.opennms.moscdrprocessor.model.EndpointResolutionCache;
+import org.opennms.moscdrprocessor.model.IntObjectMap;
 import org.opennms.moscdrprocessor.model.IpPatternFilter;
+import org.opennms.moscdrprocessor.model.IpPatternFilterSet;
+import org.opennms.moscdrprocessor.model.Ipv4Address;
+import org.opennms.moscdrprocessor.model.Ipv6Address;
+import org.opennms.moscdrprocessor.model.MetricAggregator;
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+import org.opennms.moscdrprocessor.model.QuantileAggregator;
+import org.opennms.moscdrprocessor.model.RealmRollup;
 import org.opennms.moscdrprocessor.parsers.CdrParser;
 import org.opennms.moscdrprocessor.parsers.CdrParserImpl;
 import org.opennms.moscdrprocessor.parsers.CdrParserException;
+import org.opennms.moscdrprocessor.parsers.CdrHeaderCache;
+import org.opennms.moscdrprocessor.parsers.CdrRowFilter;
+import org.opennms.moscdrprocessor.parsers.MappedCdrParser;
 
 public class ProcessRunnerImpl extends BaseProcessRunner {
-    private static Pattern PATTERN_IP_ADDRESS = Pattern.compile("^([0-9]{1,3}\\.){3}[0-9]{1,3}$");
-    
-    private final List<IpPatternFilter> filters;
+    private static final int DEFAULT_SEND_BATCH_SIZE = 1000;
+
+    private static final String INGRESS_REALM_FIELD = "Acme-Session-Ingress-Realm";
+    private static final String EGRESS_REALM_FIELD = "Acme-Session-Egress-Realm";
+
+    /**
+     * Address fields considered when choosing the IP to correlate a record with.
+     * These are decoded first, so rows with no matching IP are dropped before anything else is decoded,
+     * and only as packed addresses.
+     */
+    private static final List<String> IP_CANDIDATE_FIELDS = List.of(
+        // These are in order of preference
+        "Acme-Flow-Out-Src-Addr_FS1_F",
+        "Acme-Flow-In-Dst-Addr_FS1_F",
+        "Acme-Flow-In-Src-Addr_FS1_F",
+        "Acme-Flow-Out-Dst-Addr_FS1_F",
+        "Acme-Flow-In-Src-Addr_FS1_R",
+        "Acme-Flow-In-Dst-Addr_FS1_R",
+        "Acme-Flow-Out-Src-Addr_FS1_R",
+        "Acme-Flow-Out-Dst-Addr_FS1_R"
+    );
+
+    private static final CdrProjection IP_CANDIDATE_PROJECTION = CdrProjection.of(IP_CANDIDATE_FIELDS).packedAddresses();
+
+    /** Per thread buffer for the packed candidate addresses of a row, the endpoint cache key. */
+    private static final ThreadLocal<int[]> CANDIDATE_KEY = ThreadLocal.withInitial(() -> new int[IP_CANDIDATE_FIELDS.size()]);
+
+    /**
+     * IPv6 addresses are written in Graphite paths with '-' in place of ':', since ':' separates the parts of the path.
+     * The OpenNMS telemetry adapter script turns them back.
+     */
+    private static final char IPV6_PATH_SEPARATOR = '-';
+
+    /** Graphite metrics emitted for each CDR record item, from 'metrics'. */
+    private final MetricPlan metricPlan;
+
+    /** CDR fields collected in a block to create the Graphite messages from. */
+    private final CdrProjection blockProjection;
+
+    /** CDR fields used to create the Graphite messages; the parser does not decode any others. */
+    private final CdrProjection messageProjection;
+
+    /** All 'sourceIpFiltersAnyOf' patterns merged into one lookup. */
+    private final IpPatternFilterSet filterSet;
+
+    /** Correlation IP chosen for each tuple of IPv4 candidates, or null if disabled with 'endpointCacheSize' 0. */
+    private final EndpointResolutionCache endpointCache;
+
+    /** Aggregates shared with the runners of the other files of the command. */
+    private final AggregationState aggregationState;
+
+    private final MetricPathTable pathTable;
+
+    /** Aggregates the metrics per interval, or null if 'aggregateStepSeconds' is not set. */
+    private final MetricAggregator aggregator;
+
+    /** Quantile sketches per interval, or null if 'quantiles' is not set. */
+    private final QuantileAggregator quantileAggregator;
+
+    /** Rolls the metrics up per session realm, or null if 'realmRollupPath' is not set. */
+    private final RealmRollup realmRollup;
+
+    /** Graphite path ids of the metricPlan metrics for each correlated address, so addresses are only formatted once. */
+    private final IntObjectMap<int[]> pathIds = new IntObjectMap<>();
+    private final Map<Ipv6Address, int[]> ipv6PathIds = new HashMap<>();
+
+    /** Packed address getters of IP_CANDIDATE_FIELDS, in the same order. */
+    private final CdrFieldMap.Ipv4FieldGetter[] ipv4Candidates;
+    private final CdrFieldMap.Ipv6FieldGetter[] ipv6Candidates;
 
     public ProcessRunnerImpl(RunConfig runConfig, LogAdapter logger) {
+        this(runConfig, logger, new AggregationState(runConfig));
+    }
+
+    /**
+     * Create a runner for one of the files of a command, aggregating into the state shared by the runners
+     * of the command's files.
+     */
+    public ProcessRunnerImpl(RunConfig runConfig, LogAdapter logger, AggregationState aggregationState) {
         super(runConfig, logger);
 
-        filters = runConfig.sourceIpFiltersAnyOf.stream()
-            .map(IpPatternFilter::new)
-            .collect(Collectors.toList());
+        this.aggregationState = aggregationState;
+        pathTable = aggregationState.getPathTable();
+        aggregator = aggregationState.getAggregator();
+        quantileAggregator = aggregationState.getQuantileAggregator();
+        realmRollup = aggregationState.getRealmRollup();
+
+        filterSet = IpPatternFilterSet.forPatterns(runConfig.sourceIpFiltersAnyOf);
+        metricPlan = MetricPlan.compile(runConfig.metrics);
+
+        blockProjection = realmRollup != null
+            ? metricPlan.getProjection().with(CdrProjection.of(INGRESS_REALM_FIELD, EGRESS_REALM_FIELD))
+            : metricPlan.getProjection();
+        messageProjection = blockProjection.with(IP_CANDIDATE_PROJECTION);
+
+        int cacheSize = runConfig.endpointCacheSize != null ? runConfig.endpointCacheSize : EndpointResolutionCache.DEFAULT_CAPACITY;
+        endpointCache = cacheSize > 0
+            ? EndpointResolutionCache.forFilterSet(filterSet, IP_CANDIDATE_FIELDS.size(), cacheSize) : null;
+
+        CdrFieldMap.initialize();
+        ipv4Candidates = IP_CANDIDATE_FIELDS.stream().map(CdrFieldMap::getIpv4FieldGetter).toArray(CdrFieldMap.Ipv4FieldGetter[]::new);
+        ipv6Candidates = IP_CANDIDATE_FIELDS.stream().map(CdrFieldMap::getIpv6FieldGetter).toArray(CdrFieldMap.Ipv6FieldGetter[]::new);
     }
 
-    protected List<String> parseFileToMessages() throws CmdRunException {
+    @Override
+    public void execute() throws CmdRunException {
+        if (runConfig.enableOutput && !Strings.isNullOrEmpty(runConfig.outputFilePath)) {
+            // Json output needs the whole CDR record in memory, so don't stream
+            super.execute();
+            return;
+        }
+
+        LOG.info("ProcessRunnerImpl.execute started.");
+
+        streamFileToGraphite();
+        logSendStatistics();
+
+        LOG.info("ProcessRunnerImpl.execute exiting.");
+    }
+
+    protected MetricBatch parseFileToMetrics() throws CmdRunException {
         LOG.info("ProcessRunnerImpl.processFileToMessages started.");
 
         CdrRecord cdrRecord = parseFileToCdrRecord();
@@ -75,19 +198,33 @@ public class ProcessRunnerImpl extends BaseProcessRunner {
             }
         }
 
-        List<String> messages = createGraphiteMessages(cdrRecord);
-        LOG.info("ProcessRunnerImpl.processFileToMessages exiting with {} messages.", messages.size());
+        MetricBatch metrics = createGraphiteMetrics(cdrRecord);
+        long lateCount = aggregationState.getLateCount();
+
+        if (quantileAggregator != null) {
+            quantileAggregator.addAll(metrics);
+        }
+
+        if (aggregator != null) {
+            aggregator.addAll(metrics);
+            metrics.clear();
+        }
+
+        aggregationState.flushBefore(cdrRecord.getFileTime().getTime(), metrics);
+        logLateValues(lateCount);
+
+        LOG.info("ProcessRunnerImpl.processFileToMessages exiting with {} messages.", metrics.size());
 
-        return messages;
+        return metrics;
     }
 
     private CdrRecord parseFileToCdrRecord() throws CmdRunException {
-        CdrParser parser = new CdrParserImpl();
+        CdrParser parser = createParser();
         CdrHeader cdrHeader;
         CdrRecord cdrRecord;
 
         try {
-            cdrHeader = parser.parseCdrHeader(runConfig.headerFilePath);
+            cdrHeader = CdrHeaderCache.getInstance().getCdrHeader(runConfig.headerFilePath, parser);
             cdrRecord = parser.parseCdrRecord(runConfig.filePath, cdrHeader);
         } catch (CdrParserException cpe) {
             throw new CmdRunException("Error parsing CDR header or data file: " + cpe.getMessage(), cpe);
@@ -98,83 +235,365 @@ public class ProcessRunnerImpl extends BaseProcessRunner {
         return cdrRecord;
     }
 
+    /**
+     * Parse the CDR file one row at a time, sending Graphite messages in batches of 'sendBatchSize'
+     * as they are created, so memory use is bounded regardless of the size of the file.
+     */
+    private void streamFileToGraphite() throws CmdRunException {
+        final boolean shouldSend = !runConfig.suppressSendGraphite;
+        final int batchSize = runConfig.sendBatchSize != null && runConfig.sendBatchSize > 0
+            ? runConfig.sendBatchSize : DEFAULT_SEND_BATCH_SIZE;
+
+        if (shouldSend) {
+            ensureGraphiteClients();
+        }
+
+        CdrParser parser = createParser();
+        // accepted items are collected by column, and turned into messages a block at a time
+        final int blockSize = Math.max(1, batchSize / metricPlan.size());
+        CdrRecordColumns block = new CdrRecordColumns(blockProjection, blockSize);
+        MetricBatch metrics = new MetricBatch(pathTable, blockSize * metricPlan.size());
+        int[] messageCount = new int[1];
+        AtomicLong rejectedCount = new AtomicLong();
+
+        // Push the IP filters down into the parser, only rows with a matching IP are fully decoded
+        CdrRowFilter ipFilter = CdrRowFilter.of(IP_CANDIDATE_PROJECTION, item -> {
+            if (resolveIpAddress(item)) {
+                return true;
+            }
+
+            rejectedCount.incrementAndGet();
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Could not find valid IP for record: {}", item.ipCandidateDiagnosticString());
+            }
+
+            return false;
+        });
+
+        final long timestamp;
+        final long lateCount = aggregationState.getLateCount();
+
+        try {
+            CdrHeader cdrHeader = CdrHeaderCache.getInstance().getCdrHeader(runConfig.headerFilePath, parser);
+            CdrRecord cdrRecord = parser.parseCdrRecordMetadata(runConfig.filePath);
+            timestamp = cdrRecord.getFileTime().getTime();
+
+            parser.parseCdrRecordItems(runConfig.filePath, cdrHeader, messageProjection, ipFilter, item -> {
+                block.add(item);
+
+                if (block.size() >= blockSize) {
+                    try {
+                        messageCount[0] += sendBlock(block, timestamp, metrics, shouldSend);
+                    } catch (CmdRunException e) {
+                        // rethrown as CmdRunException below
+                        throw new CdrParserException(e.getMessage(), e);
+                    }
+                }
+            });
+        } catch (CdrParserException cpe) {
+            if (cpe.getCause() instanceof CmdRunException) {
+                throw (CmdRunException) cpe.getCause();
+            }
+
+            throw new CmdRunException("Error parsing CDR header or data file: " + cpe.getMessage(), cpe);
+        }
+
+        messageCount[0] += sendBlock(block, timestamp, metrics, shouldSend);
+
+        metrics.clear();
+        aggregationState.flushBefore(timestamp, metrics);
+        messageCount[0] += sendMetrics(metrics, shouldSend);
+
+        LOG.info("Done streaming CDR record, created {} messages, skipped {} records with no IP matching the filters.",
+            messageCount[0], rejectedCount.get());
+
+        logLateValues(lateCount);
+
+        if (endpointCache != null) {
+            LOG.info("Endpoint cache totals: {} hits, {} misses, {} evictions.",
+                endpointCache.getHits(), endpointCache.getMisses(), endpointCache.getEvictions());
+        }
+    }
+
+    /**
+     * Create and send the messages for a block of items, or add them to the aggregator, then clear the block.
+     * @return the number of messages sent
+     */
+    private int sendBlock(CdrRecordColumns block, long timestamp, MetricBatch metrics, boolean shouldSend)
+            throws CmdRunException {
+        metrics.clear();
+        addGraphiteMetrics(block, timestamp, metrics);
+
+        if (realmRollup != null) {
+            rollUpRealms(block, timestamp);
+        }
+
+        block.clear();
+
+        if (quantileAggregator != null) {
+            quantileAggregator.addAll(metrics);
+        }
+
+        if (aggregator != null) {
+            aggregator.addAll(metrics);
+            return 0;
+        }
+
+        return sendMetrics(metrics, shouldSend);
+    }
+
+    /**
+     * Send the aggregates and quantiles of the intervals still open, once the last file of the command
+     * has been processed. The path table may have been replaced since this runner was created.
+     */
+    public void flushIntervals() throws CmdRunException {
+        MetricBatch metrics = new MetricBatch(aggregationState.getPathTable(), DEFAULT_SEND_BATCH_SIZE);
+        aggregationState.flush(metrics);
+
+        LOG.info("Flushing {} messages of open intervals.", metrics.size());
+
+        sendMetrics(metrics, !runConfig.suppressSendGraphite);
+    }
+
+    private void logLateValues(long lateCountBefore) {
+        long late = aggregationState.getLateCount() - lateCountBefore;
+
+        if (late > 0) {
+            LOG.warn("Dropped {} values for intervals which were already sent; files must be processed in timestamp order.", late);
+        }
+    }
+
+    private int sendMetrics(MetricBatch metrics, boolean shouldSend) throws CmdRunException {
+        int count = metrics.size();
+
+        if (shouldSend && count > 0) {
+            LOG.debug("Sending batch of {} Graphite messages.", count);
+
+            sendGraphiteMetrics(metrics);
+        }
+
+        return count;
+    }
+
+    private CdrParser createParser() {
+        if (MappedCdrParser.ENGINE_NAME.equalsIgnoreCase(runConfig.parserEngine)) {
+            int workers = runConfig.parserWorkers != null ? runConfig.parserWorkers : 1;
+            long minChunkBytes = runConfig.parserMinChunkBytes != null
+                ? runConfig.parserMinChunkBytes : MappedCdrParser.DEFAULT_MIN_CHUNK_BYTES;
+
+            return new MappedCdrParser(workers, minChunkBytes);
+        }
+
+        return new CdrParserImpl();
+    }
+
     private void outputCdrRecord(CdrRecord cdrRecord) throws CdrParserException {
-        CdrParser parser = new CdrParserImpl();
+        CdrParser parser = createParser();
 
         parser.outputCdrRecordJson(cdrRecord, runConfig.outputFilePath);
     }
 
-    private List<String> createGraphiteMessages(CdrRecord cdrRecord) {
-        List<String> graphiteMessages = new ArrayList<>();
+    private MetricBatch createGraphiteMetrics(CdrRecord cdrRecord) {
+        MetricBatch metrics = new MetricBatch(pathTable, cdrRecord.items.size() * metricPlan.size());
 
         final long timestamp = cdrRecord.getFileTime().getTime();
 
-        // For now just emit MOS messages
         for (CdrRecordItem item : cdrRecord) {
-            Optional<String> ipAddress = extractIpAddress(item);
-            
-            if (!ipAddress.isPresent()) {
-                LOG.error("Could not find valid IP for record: {}", item.ipCandidateDiagnosticString());
+            addGraphiteMetrics(item, timestamp, metrics);
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Add the messages for a block of items whose correlation IP address has already been resolved,
+     * reading the metric columns directly.
+     */
+    private void addGraphiteMetrics(CdrRecordColumns block, long timestamp, MetricBatch metrics) {
+        final int size = block.size();
+        final long[][] columns = metricPlan.getColumns(block);
+        final int[] ipAddresses = block.getCorrelationIpv4Column();
+        final Ipv6Address[] ipv6Addresses = block.getCorrelationIpv6Column();
+
+        for (int row = 0; row < size; row++) {
+            int[] ids = ipv6Addresses[row] != null ? getPathIds(ipv6Addresses[row]) : getPathIds(ipAddresses[row]);
+
+            metricPlan.addMetrics(columns, row, ids, timestamp, metrics);
+        }
+    }
+
+    /** Add the metrics of a block to the realm rollup. */
+    private void rollUpRealms(CdrRecordColumns block, long timestamp) {
+        final int size = block.size();
+        final long[][] columns = metricPlan.getColumns(block);
+        final int[] ingressCodes = block.getCodeColumn(INGRESS_REALM_FIELD);
+        final int[] egressCodes = block.getCodeColumn(EGRESS_REALM_FIELD);
+        // realm ids of the codes of this block
+        final int[] ingressRealms = realmIds(block, INGRESS_REALM_FIELD);
+        final int[] egressRealms = realmIds(block, EGRESS_REALM_FIELD);
+
+        for (int row = 0; row < size; row++) {
+            int ingress = ingressCodes[row] != CdrRecordColumns.NULL_CODE ? ingressRealms[ingressCodes[row]] : RealmRollup.NO_REALM;
+            int egress = egressCodes[row] != CdrRecordColumns.NULL_CODE ? egressRealms[egressCodes[row]] : RealmRollup.NO_REALM;
+
+            for (int metric = 0; metric < columns.length; metric++) {
+                double value = metricPlan.getValue(columns, row, metric);
+
+                realmRollup.add(ingress, RealmRollup.INGRESS, metric, value, timestamp);
+                realmRollup.add(egress, RealmRollup.EGRESS, metric, value, timestamp);
+            }
+        }
+    }
+
+    private int[] realmIds(CdrRecordColumns block, String field) {
+        int[] ids = new int[block.getDictionarySize(field)];
+
+        for (int code = 0; code < ids.length; code++) {
+            ids[code] = realmRollup.internRealm(block.getDictionaryValue(field, code));
+        }
+
+        return ids;
+    }
+
+    private void addGraphiteMetrics(CdrRecordItem item, long timestamp, MetricBatch metrics) {
+        boolean resolved = item.correlationIpv4 != Ipv4Address.NONE || item.correlationIpv6 != null;
+
+        if (!resolved && !resolveIpAddress(item)) {
+            LOG.error("Could not find valid IP for record: {}", item.ipCandidateDiagnosticString());
+            return;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            IpPatternFilter filter = item.correlationIpv6 != null
+                ? filterSet.getMatch(item.correlationIpv6) : filterSet.getMatch(item.correlationIpv4);
+
+            LOG.debug("Found IP {} matching filter '{}' for record, considered: {}",
+                item.correlationIpv6 != null ? item.correlationIpv6 : Ipv4Address.format(item.correlationIpv4),
+                filter.getPattern(), item.ipCandidateDiagnosticString());
+        }
+
+        int[] ids = item.correlationIpv6 != null ? getPathIds(item.correlationIpv6) : getPathIds(item.correlationIpv4);
+
+        metricPlan.addMetrics(item, ids, timestamp, metrics);
+
+        if (realmRollup != null) {
+            int ingress = realmRollup.internRealm(item.acmeSessionIngressRealm);
+            int egress = realmRollup.internRealm(item.acmeSessionEgressRealm);
+
+            for (int metric = 0; metric < metricPlan.size(); metric++) {
+                double value = metricPlan.getValue(item, metric);
+
+                realmRollup.add(ingress, RealmRollup.INGRESS, metric, value, timestamp);
+                realmRollup.add(egress, RealmRollup.EGRESS, metric, value, timestamp);
             }
-            
-            LOG.info("DEBUG found IP {} for record, considered: {}", ipAddress.get(), item.ipCandidateDiagnosticString());
-            
-            graphiteMessages.add(addMetric(runConfig.graphiteBasePath, ipAddress.get(), "Acme_Calling_MOS", item.acmeCallingMOS, timestamp));
-            graphiteMessages.add(addMetric(runConfig.graphiteBasePath, ipAddress.get(), "Acme_Called_MOS", item.acmeCalledMOS, timestamp));
         }
-        
-        return graphiteMessages;
     }
 
     /**
-     * Get the possible IP addresses from the CDR record item.
-     * Clean them and determine which one should be used as the one associated with the
-     * OpenNMS node to correlate this record with.
+     * Choose the IP address to correlate the item with and set it on the item, as correlationIpv4 or correlationIpv6.
+     * Candidate addresses were validated and packed when the record was parsed, and are considered in order of preference.
+     * The choice is cached per tuple of candidates for rows with only IPv4 candidates.
+     * @return false if none of the candidate addresses matched the filters
      */
-    private Optional<String> extractIpAddress(CdrRecordItem item) {
-        // Possible fields which could contain IP address to use
-        // These are in order of preference
-        List<String> rawAddresses = List.of(
-            item.acmeFlowOutSrcAddrFS1F,
-            item.acmeFlowInDstAddrFS1F,
-            item.acmeFlowInSrcAddrFS1F,
-            item.acmeFlowOutDstAddrFS1F,
-            item.acmeFlowInSrcAddrFS1R,
-            item.acmeFlowInDstAddrFS1R,
-            item.acmeFlowOutSrcAddrFS1R,
-            item.acmeFlowOutDstAddrFS1R
-        );
-
-        // Clean up and filter the fields to ensure they are valid, cleaned IP addresses
-        List<String> cleanedIpAddresses =
-            rawAddresses.stream()
-                .map(String::trim)
-                .map(x -> x.replace("\"", ""))
-                .filter(x -> !x.isEmpty())
-                .filter(x -> PATTERN_IP_ADDRESS.matcher(x).find())
-                .collect(Collectors.toList());
+    private boolean resolveIpAddress(CdrRecordItem item) {
+        if (endpointCache == null) {
+            return chooseIpAddress(item);
+        }
+
+        int[] key = CANDIDATE_KEY.get();
+
+        for (int i = 0; i < ipv4Candidates.length; i++) {
+            key[i] = ipv4Candidates[i].get(item);
+
+            if (key[i] == Ipv4Address.NONE && ipv6Candidates[i].get(item) != null) {
+                return chooseIpAddress(item);
+            }
+        }
+
+        long cached = endpointCache.lookup(key);
+
+        if (cached != EndpointResolutionCache.NOT_CACHED) {
+            item.correlationIpv4 = (int) cached;
+            item.correlationIpv6 = null;
+            return item.correlationIpv4 != Ipv4Address.NONE;
+        }
+
+        boolean resolved = chooseIpAddress(item);
+        endpointCache.put(key, item.correlationIpv4);
+
+        return resolved;
+    }
+
+    private boolean chooseIpAddress(CdrRecordItem item) {
+        item.correlationIpv4 = Ipv4Address.NONE;
+        item.correlationIpv6 = null;
 
         // Filter based on configuration
         // A filter such as "10.0-253.*.*" means:
         // - literal 10 for first octet
         // - 2nd octet can be between 0-253 inclusive
         // - 3rd and 4th octets can be any number
+        // CIDR filters such as "10.20.0.0/14" or "2001:db8::/32" are also supported
+        for (int i = 0; i < ipv4Candidates.length; i++) {
+            int ipAddress = ipv4Candidates[i].get(item);
+
+            if (ipAddress != Ipv4Address.NONE) {
+                if (filterSet.isMatch(ipAddress)) {
+                    item.correlationIpv4 = ipAddress;
+                    return true;
+                }
+
+                continue;
+            }
 
-        List<String> filteredAddresses =
-            cleanedIpAddresses.stream()
-            .filter(ipAddr -> this.filters.stream().anyMatch(f -> f.isMatch(ipAddr)))
-            .collect(Collectors.toList());
+            Ipv6Address ipv6Address = ipv6Candidates[i].get(item);
 
-        if (!filteredAddresses.isEmpty()) {
-            return Optional.of(filteredAddresses.get(0));
+            if (ipv6Address != null && filterSet.isMatch(ipv6Address)) {
+                if (ipv6Address.isIpv4Mapped()) {
+                    item.correlationIpv4 = ipv6Address.toIpv4();
+                } else {
+                    item.correlationIpv6 = ipv6Address;
+                }
+
+                return true;
+            }
         }
 
-        return Optional.empty();
+        return false;
     }
 
-    private String addMetric(String base, String ipAddress, String path, long value, long timestamp) {
-        // these will be in format as follows. timestamp is in ms since epoch
-        // "mos-cdr:127.0.0.1:Acme_Called_MOS 123 1660003200000"
-        return String.format("%s:%s:%s %d %d", base, ipAddress, path, value, timestamp);
+    private int[] getPathIds(int ipAddress) {
+        int[] ids = pathIds.get(ipAddress);
+
+        if (ids == null) {
+            ids = internPaths(Ipv4Address.format(ipAddress));
+            pathIds.put(ipAddress, ids);
+        }
+
+        return ids;
+    }
+
+    private int[] getPathIds(Ipv6Address ipAddress) {
+        int[] ids = ipv6PathIds.get(ipAddress);
+
+        if (ids == null) {
+            ids = internPaths(ipAddress.toString().replace(':', IPV6_PATH_SEPARATOR));
+            ipv6PathIds.put(ipAddress, ids);
+        }
+
+        return ids;
+    }
+
+    /** Intern the "base:ip:metric" path of each metric of the metricPlan. */
+    private int[] internPaths(String ipAddress) {
+        List<String> names = metricPlan.getNames();
+        int[] ids = new int[names.size()];
+
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pathTable.intern(runConfig.graphiteBasePath + ":" + ipAddress + ":" + names.get(i));
+        }
+
+        return ids;
     }
 }
@@ -28,11 +28,10 @@
 
 package org.opennms.moscdrprocessor.runners;
 
-import java.util.List;
-
 import org.opennms.moscdrprocessor.commands.CmdRunException;
 import org.opennms.moscdrprocessor.commands.RunConfig;
 import org.opennms.moscdrprocessor.log.LogAdapter;
+import org.opennms.moscdrprocessor.model.MetricBatch;
 import org.opennms.moscdrprocessor.parsers.GroovyScriptParser;
 
 public class ProcessScriptRunner extends BaseProcessRunner {
@@ -41,13 +40,22 @@ public class ProcessScriptRunner extends BaseProcessRunner {
         super(config, logger);
     }
     
-    protected List<String> parseFileToMessages() throws CmdRunException {
+    protected MetricBatch parseFileToMetrics() throws CmdRunException {
         var parser = new GroovyScriptParser(this.runConfig, this.LOG);
+        MetricBatch metrics;
+
+        try {
+            metrics = parser.parseCdrToMetrics();
+        } catch (IllegalArgumentException e) {
+            throw new CmdRunException("Groovy script returned an invalid message: " + e.getMessage(), e);
+        }
 
-        List<String> messages = parser.parseCdrToMessages();
+        if (metrics == null) {
+            throw new CmdRunException("Groovy script '" + runConfig.cdrParseScript + "' did not return any messages");
+        }
 
-        LOG.debug("Executed Groovy, got messages");
+        LOG.debug("Executed Groovy, got {} metrics", metrics.size());
 
-        return messages;
+        return metrics;
     }
 }
@@ -36,14 +36,22 @@ import java.nio.file.StandardCopyOption;
 
 import com.google.common.base.Strings;
 
+import org.opennms.moscdrprocessor.commands.CmdRunException;
 import org.opennms.moscdrprocessor.commands.RunConfig;
 import org.opennms.moscdrprocessor.log.LogAdapter;
 
 /**
- * Utility class to process a single CDR File.
+ * Utility class to process the CDR files of a command one at a time.
+ * The metrics of the files are aggregated per interval across files, so {@link #flush} must be called
+ * once the last file has been processed.
  */
 public class SingleCdrFileProcessor {
-    
+    private final AggregationState aggregationState;
+
+    public SingleCdrFileProcessor(RunConfig runConfig) {
+        aggregationState = new AggregationState(runConfig);
+    }
+
     /**
      * Make sure to clone the RunConfig before passing in.
      */
@@ -55,7 +63,7 @@ public class SingleCdrFileProcessor {
             runner = new ProcessScriptRunner(runConfig, LOG);
         } else {
             LOG.info("Launching background processor for file: {}", filePathToProcess);
-            runner = new ProcessRunnerImpl(runConfig, LOG);
+            runner = new ProcessRunnerImpl(runConfig, LOG, aggregationState);
         }
 
         // For now, blocking until processing current file is done, but could launch multiple threads here
@@ -86,4 +94,15 @@ public class SingleCdrFileProcessor {
             }
         }
     }
+
+    /**
+     * Send the metrics of the intervals still open, once the last file has been processed.
+     */
+    public void flush(RunConfig runConfig, LogAdapter LOG) throws CmdRunException {
+        if (runConfig.useScript && !Strings.isNullOrEmpty(runConfig.cdrParseScript)) {
+            return;
+        }
+
+        new ProcessRunnerImpl(runConfig, LOG, aggregationState).flushIntervals();
+    }
 }
@@ -27,7 +27,6 @@
  *******************************************************************************/
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.Reader;
 import java.text.Format;
 import java.text.ParseException;
@@ -44,6 +43,7 @@ import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
 import org.opennms.moscdrprocessor.commands.RunConfig;
+import org.opennms.moscdrprocessor.parsers.CdrFiles;
 
 /**
 * Script to parse a CDR file (in CSV format, no header) into Graphite messages.
@@ -131,6 +131,7 @@ class CdrGenerator {
 
         // Parse CDR file
         // This is a CSV file with no header.
+        // The file may be compressed (e.g. gzip), CdrFiles decompresses it as it is read
         // '.withQuote(null)' fixes some issues with embedded quotes in CSV data
         // We only want records with first field "Acct-Status-Type" of 2
         List<String> messages = new ArrayList<>();
@@ -140,7 +141,7 @@ class CdrGenerator {
         final int ACME_CALLING_MOS_INDEX = 46;
         final int ACME_CALLED_MOS_INDEX = 70;
 
-        try (Reader reader = new FileReader(config.filePath);
+        try (Reader reader = CdrFiles.openReader(config.filePath);
             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withQuote(null))) {
 
             int rowIndex = 0;
@@ -216,6 +217,6 @@ class CdrGenerator {
 
 var generator = new CdrGenerator(runConfig);
 
-// result is returned to caller, should be a list<string>
+// result is returned to caller, should be a list<string> or a MetricBatch
 var result = generator.generate();
 
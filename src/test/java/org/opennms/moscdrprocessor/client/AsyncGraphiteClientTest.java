@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.nio.BufferOverflowException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+public class AsyncGraphiteClientTest {
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<MetricBatch> sent = new ArrayList<>();
+
+        GraphiteClient blocking = new BaseGraphiteClient("127.0.0.1", 2003, false) {
+            @Override
+            public void sendBatch(MetricBatch batch) {
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new GraphiteClientException("Interrupted", e);
+                }
+
+                sent.add(batch);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        AsyncGraphiteClient client = new AsyncGraphiteClient(blocking, 1, false);
+        MetricBatch batch = batch();
+
+        client.sendBatch(batch);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // one queued while the first is sent, the next doesn't fit
+        client.sendBatch(batch);
+        client.sendBatch(batch);
+        Assert.assertEquals(1, client.getQueuedBatches());
+        Assert.assertEquals(1L, client.getDroppedBatches());
+        Assert.assertEquals(2L, client.getDroppedMetrics());
+
+        release.countDown();
+        client.close();
+
+        Assert.assertEquals(2, sent.size());
+        Assert.assertEquals(2L, client.getSentBatches());
+        Assert.assertEquals(0L, client.getFailedBatches());
+    }
+
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<MetricBatch> sent = new ArrayList<>();
+
+        GraphiteClient blocking = new BaseGraphiteClient("127.0.0.1", 2003, false) {
+            @Override
+            public void sendBatch(MetricBatch batch) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new GraphiteClientException("Interrupted", e);
+                }
+
+                sent.add(batch);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        AsyncGraphiteClient client = new AsyncGraphiteClient(blocking, 1, 10_000L, 10_000L, false);
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200L);
+            } catch (InterruptedException e) {
+            }
+
+            release.countDown();
+        });
+        releaser.start();
+
+        // the third waits for room instead of being dropped
+        client.sendBatch(batch());
+        client.sendBatch(batch());
+        client.sendBatch(batch());
+        client.close();
+
+        Assert.assertEquals(3, sent.size());
+        Assert.assertEquals(0L, client.getDroppedBatches());
+    }
+
+    @Test
+    public void testFailureIsCountedAndThrown() throws Exception {
+        GraphiteClient failing = new BaseGraphiteClient("unreachable.invalid", 2003, false) {
+            @Override
+            public void sendBatch(MetricBatch batch) {
+                throw new GraphiteClientException("Error: Unknown host: " + host);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        AsyncGraphiteClient client = new AsyncGraphiteClient(failing, 4, false);
+
+        // doesn't throw on the caller's thread while sending
+        client.sendBatch(batch());
+
+        for (int i = 0; i < 1000 && client.getFailedBatches() == 0; i++) {
+            Thread.sleep(10L);
+        }
+
+        // but the next batch reports the failure, and is still queued
+        try {
+            client.sendBatch(batch());
+            Assert.fail("Expected the failure of the first batch");
+        } catch (GraphiteClientException e) {
+            Assert.assertTrue(e.getMessage().contains("Unknown host: unreachable.invalid"));
+        }
+
+        client.close();
+
+        Assert.assertEquals(0L, client.getSentBatches());
+        Assert.assertEquals(2L, client.getFailedBatches());
+        Assert.assertEquals(0L, client.getDroppedBatches());
+    }
+
+    @Test
+    public void testSenderSurvivesUnexpectedError() throws Exception {
+        List<MetricBatch> sent = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        GraphiteClient failingOnce = new BaseGraphiteClient("127.0.0.1", 2003, false) {
+            @Override
+            public void sendBatch(MetricBatch batch) {
+                if (failed.compareAndSet(false, true)) {
+                    throw new BufferOverflowException();
+                }
+
+                sent.add(batch);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        AsyncGraphiteClient client = new AsyncGraphiteClient(failingOnce, 4, false);
+        client.sendBatch(batch());
+
+        for (int i = 0; i < 1000 && client.getFailedBatches() == 0; i++) {
+            Thread.sleep(10L);
+        }
+
+        try {
+            client.sendBatch(batch());
+            Assert.fail("Expected the failure of the first batch");
+        } catch (GraphiteClientException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof BufferOverflowException);
+        }
+
+        // the sender is still draining the queue
+        client.close();
+
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals(1L, client.getSentBatches());
+        Assert.assertEquals(1L, client.getFailedBatches());
+    }
+
+    private static MetricBatch batch() {
+        MetricBatch batch = new MetricBatch(new MetricPathTable(), 2);
+        batch.add("a.b", 1L, 12L);
+        batch.add("a.c", 2L, 12L);
+
+        return batch;
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opennms.moscdrprocessor.commands.RunConfig.RecipientInfo;
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+public class GraphiteClientImplTest {
+
+    @Test
+    public void testSendBatch() throws Exception {
+        try (DatagramChannel receiver = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress("127.0.0.1", 0));
+            int port = ((InetSocketAddress) receiver.getLocalAddress()).getPort();
+
+            MetricBatch batch = new MetricBatch(new MetricPathTable(), 2);
+            batch.add("mos-cdr:127.0.0.1:Acme_Calling_MOS", 430L, 1660003200L);
+            batch.add("mos-cdr:127.0.0.1:Acme_Called_MOS", 4.5, 1660003200L);
+
+            // one line per datagram
+            try (GraphiteClient client = new GraphiteClientImpl("127.0.0.1", port, false, 0, GraphiteClientImpl.DEFAULT_ADDRESS_TTL_MILLIS)) {
+                client.sendBatch(batch);
+                // the second batch goes over the same channel
+                client.sendBatch(batch);
+            }
+
+            Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Calling_MOS 430 1660003200\n", receive(receiver));
+            Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Called_MOS 4.5 1660003200\n", receive(receiver));
+            Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Calling_MOS 430 1660003200\n", receive(receiver));
+            Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Called_MOS 4.5 1660003200\n", receive(receiver));
+        }
+    }
+
+    @Test
+    public void testPackLines() throws Exception {
+        try (DatagramChannel receiver = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress("127.0.0.1", 0));
+            int port = ((InetSocketAddress) receiver.getLocalAddress()).getPort();
+
+            // 20 bytes per line
+            MetricBatch batch = new MetricBatch(new MetricPathTable(), 5);
+            for (int i = 0; i < 5; i++) {
+                batch.add("a.b" + i, 100L + i, 1660003200L);
+            }
+
+            GraphiteClientImpl client = new GraphiteClientImpl("127.0.0.1", port, false, 45, GraphiteClientImpl.DEFAULT_ADDRESS_TTL_MILLIS);
+            client.sendBatch(batch);
+
+            Assert.assertEquals("a.b0 100 1660003200\na.b1 101 1660003200\n", receive(receiver));
+            Assert.assertEquals("a.b2 102 1660003200\na.b3 103 1660003200\n", receive(receiver));
+            Assert.assertEquals("a.b4 104 1660003200\n", receive(receiver));
+            Assert.assertEquals(3L, client.getPacketsSent());
+            Assert.assertEquals(5L, client.getLinesSent());
+            Assert.assertEquals(100L, client.getBytesSent());
+            Assert.assertEquals(33L, client.getBytesPerPacket());
+
+            client.close();
+        }
+    }
+
+    @Test
+    public void testSkipLineLongerThanDatagram() throws Exception {
+        try (DatagramChannel receiver = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress("127.0.0.1", 0));
+            int port = ((InetSocketAddress) receiver.getLocalAddress()).getPort();
+
+            MetricBatch batch = new MetricBatch(new MetricPathTable(), 2);
+            batch.add("a".repeat(GraphiteClientImpl.MAX_DATAGRAM_BYTES), 1L, 12L);
+            batch.add("a.b", 2L, 12L);
+
+            // the first line doesn't fit in a datagram
+            try (GraphiteClientImpl client = new GraphiteClientImpl("127.0.0.1", port, false)) {
+                client.sendBatch(batch);
+
+                Assert.assertEquals(1L, client.getLinesSkipped());
+                Assert.assertEquals(1L, client.getLinesSent());
+            }
+
+            Assert.assertEquals("a.b 2 12\n", receive(receiver));
+        }
+    }
+
+    @Test
+    public void testRegistrySharesClients() {
+        GraphiteClientRegistry registry = GraphiteClientRegistry.getInstance();
+        GraphiteClient client = registry.getClient(recipient(2003), false);
+
+        Assert.assertSame(client, registry.getClient(recipient(2003), false));
+        Assert.assertNotSame(client, registry.getClient(recipient(2004), false));
+
+        // a recipient with other settings gets a client of its own; an unset setting is its default
+        RecipientInfo smallPackets = recipient(2003);
+        smallPackets.maxPacketBytes = 512;
+        Assert.assertNotSame(client, registry.getClient(smallPackets, false));
+
+        RecipientInfo defaultPackets = recipient(2003);
+        defaultPackets.maxPacketBytes = GraphiteClientImpl.DEFAULT_MAX_PACKET_BYTES;
+        Assert.assertSame(client, registry.getClient(defaultPackets, false));
+
+        registry.closeAll();
+        Assert.assertNotSame(client, registry.getClient(recipient(2003), false));
+        registry.closeAll();
+    }
+
+    private static RecipientInfo recipient(int port) {
+        RecipientInfo info = new RecipientInfo();
+        info.hostName = "127.0.0.1";
+        info.port = port;
+
+        return info;
+    }
+
+    private static String receive(DatagramChannel receiver) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(65536);
+        receiver.receive(buf);
+        buf.flip();
+
+        return StandardCharsets.UTF_8.decode(buf).toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.client;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+public class GraphiteLineEncoderTest {
+
+    @Test
+    public void testEncode() {
+        MetricBatch batch = new MetricBatch(new MetricPathTable(), 2);
+        batch.add("mos-cdr:127.0.0.1:Acme_Calling_MOS", 430L, 1660003200000L);
+        batch.add("mos-cdr:127.0.0.1:Acme_Called_MOS", 0L, 1660003200000L);
+        batch.add("mos-cdr:127.0.0.1:Acme_Called_MOS", Long.MIN_VALUE, -1L);
+        batch.add("a.b", 4.5, 12L);
+
+        GraphiteLineEncoder encoder = new GraphiteLineEncoder(16);
+        encoder.encode(batch);
+
+        Assert.assertEquals(4, encoder.getLineCount());
+        Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Calling_MOS 430 1660003200000", encoder.getLine(0));
+        Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Called_MOS 0 1660003200000", encoder.getLine(1));
+        Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Called_MOS -9223372036854775808 -1", encoder.getLine(2));
+        Assert.assertEquals("a.b 4.5 12", encoder.getLine(3));
+        Assert.assertEquals("a.b 4.5 12\n", new String(encoder.array(), encoder.getLineStart(3), encoder.getLineLength(3),
+            StandardCharsets.UTF_8));
+        Assert.assertEquals(encoder.getLineStart(3) + encoder.getLineLength(3), encoder.size());
+
+        encoder.clear();
+        Assert.assertEquals(0, encoder.getLineCount());
+        Assert.assertEquals(0, encoder.size());
+    }
+}
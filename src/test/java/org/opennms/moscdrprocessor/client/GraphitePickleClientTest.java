@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+public class GraphitePickleClientTest {
+
+    @Test
+    public void testSendBatch() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            MetricBatch batch = new MetricBatch(new MetricPathTable(), 3);
+            batch.add("a.b", 1L, 12L);
+            batch.add("c", 4.5, 1660003200000L);
+            batch.add("a.b", 2L, 13L);
+
+            GraphitePickleClient client = new GraphitePickleClient("127.0.0.1", server.getLocalPort(), false, 2, 1024, 60_000L, 3);
+            client.sendBatch(batch);
+            client.close();
+
+            try (Socket socket = server.accept(); DataInputStream in = new DataInputStream(socket.getInputStream())) {
+                // [('a.b', (12, 1)), ('c', (1660003200000, 4.5))]
+                ByteBuffer expected = ByteBuffer.allocate(53);
+                expected.put(new byte[] { (byte) 0x80, 2, ']', '(', 'X', 3, 0, 0, 0, 'a', '.', 'b', 'J', 12, 0, 0, 0, 'J', 1, 0, 0, 0,
+                    (byte) 0x86, (byte) 0x86, 'X', 1, 0, 0, 0, 'c', (byte) 0x8a, 8 });
+                expected.order(ByteOrder.LITTLE_ENDIAN).putLong(1660003200000L).order(ByteOrder.BIG_ENDIAN);
+                expected.put((byte) 'G').putDouble(4.5);
+                expected.put(new byte[] { (byte) 0x86, (byte) 0x86, 'e', '.' });
+
+                Assert.assertEquals(53, in.readInt());
+                byte[] message = new byte[53];
+                in.readFully(message);
+                Assert.assertArrayEquals(expected.array(), message);
+
+                // [('a.b', (13, 2))]
+                Assert.assertEquals(26, in.readInt());
+                message = new byte[26];
+                in.readFully(message);
+                Assert.assertEquals(13, message[13]);
+                Assert.assertEquals(2, message[18]);
+
+                Assert.assertEquals(-1, in.read());
+            }
+        }
+    }
+}
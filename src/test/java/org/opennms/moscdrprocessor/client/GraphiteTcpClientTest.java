@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.client;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+public class GraphiteTcpClientTest {
+
+    @Test
+    public void testSendBatch() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            MetricBatch batch = new MetricBatch(new MetricPathTable(), 2);
+            batch.add("mos-cdr:127.0.0.1:Acme_Calling_MOS", 430L, 1660003200L);
+            batch.add("mos-cdr:127.0.0.1:Acme_Called_MOS", 4.5, 1660003200L);
+
+            // a small buffer, so the lines are written in several flushes
+            GraphiteTcpClient client = new GraphiteTcpClient("127.0.0.1", server.getLocalPort(), false, 1024, 60_000L, 3);
+
+            for (int i = 0; i < 40; i++) {
+                client.sendBatch(batch);
+            }
+
+            try (Socket socket = server.accept();
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                // the rest of the lines are buffered until the client is closed
+                client.close();
+
+                for (int i = 0; i < 40; i++) {
+                    Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Calling_MOS 430 1660003200", reader.readLine());
+                    Assert.assertEquals("mos-cdr:127.0.0.1:Acme_Called_MOS 4.5 1660003200", reader.readLine());
+                }
+
+                Assert.assertNull(reader.readLine());
+            }
+
+            Assert.assertEquals(40L * 99, client.getBytesSent());
+            Assert.assertEquals(0L, client.getReconnects());
+        }
+    }
+
+    @Test
+    public void testGiveUpKeepsLines() throws Exception {
+        int port;
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = server.getLocalPort();
+        }
+
+        MetricBatch batch = new MetricBatch(new MetricPathTable(), 1);
+        batch.add("a.b", 1L, 12L);
+
+        GraphiteTcpClient client = new GraphiteTcpClient("127.0.0.1", port, false, 1024, 60_000L, 2);
+        client.sendBatch(batch);
+
+        try {
+            client.flush();
+            Assert.fail("nothing is listening");
+        } catch (GraphiteClientException e) {
+            Assert.assertEquals(1L, client.getReconnects());
+        }
+
+        // the line is still buffered, and sent once the receiver is up
+        try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            client.flush();
+
+            try (Socket socket = server.accept();
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                Assert.assertEquals("a.b 1 12", reader.readLine());
+            }
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CdrRecordColumnsTest {
+
+    @Test
+    public void testColumns() {
+        CdrRecordColumns columns = new CdrRecordColumns(
+            CdrProjection.of("Acme-Calling-MOS", "Acme-Session-Egress-Realm", "Acme-Flow-In-Src-Addr_FS1_F"), 1);
+
+        columns.add(createItem(410L, "\"core\"", "\"10.0.1.5\""));
+        columns.add(createItem(390L, "\"peer\"", ""));
+        columns.add(createItem(435L, "\"core\"", "10.9.9.9"));
+
+        Assert.assertEquals(3, columns.size());
+        Assert.assertFalse(columns.hasColumn("Acme-Called-MOS"));
+
+        long[] callingMos = columns.getLongColumn("Acme-Calling-MOS");
+        Assert.assertEquals(410L, callingMos[0]);
+        Assert.assertEquals(435L, callingMos[2]);
+
+        // repeated strings share a dictionary code
+        int[] realmCodes = columns.getCodeColumn("Acme-Session-Egress-Realm");
+        Assert.assertEquals(2, columns.getDictionarySize("Acme-Session-Egress-Realm"));
+        Assert.assertEquals(realmCodes[0], realmCodes[2]);
+        Assert.assertEquals("\"peer\"", columns.getDictionaryValue("Acme-Session-Egress-Realm", realmCodes[1]));
+
+        int[] addresses = columns.getIpv4Column("Acme-Flow-In-Src-Addr_FS1_F");
+        Assert.assertEquals((10 << 24) | (1 << 8) | 5, addresses[0]);
+        Assert.assertEquals(CdrRecordColumns.NO_IPV4, addresses[1]);
+        Assert.assertEquals("10.9.9.9", Ipv4Address.format(addresses[2]));
+
+        Assert.assertEquals("\"10.0.1.5\"", columns.getString("Acme-Flow-In-Src-Addr_FS1_F", 0));
+        Assert.assertEquals(addresses[0], columns.getCorrelationIpv4Column()[0]);
+    }
+
+    @Test
+    public void testItemView() {
+        CdrRecordColumns columns = new CdrRecordColumns(CdrProjection.ALL);
+
+        columns.add(createItem(410L, "\"core\"", "\"10.0.1.5\""));
+        columns.add(createItem(390L, null, "\"fe80::1\""));
+
+        List<CdrRecordItem> items = new ArrayList<>();
+        columns.forEach(items::add);
+
+        Assert.assertEquals(2, items.size());
+        Assert.assertEquals(410L, items.get(0).acmeCallingMOS);
+        Assert.assertEquals("\"core\"", items.get(0).acmeSessionEgressRealm);
+        Assert.assertEquals("\"10.0.1.5\"", items.get(0).acmeFlowInSrcAddrFS1F);
+        Assert.assertEquals("10.0.1.5", Ipv4Address.format(items.get(0).acmeFlowInSrcAddrFS1FIpv4));
+        Assert.assertNull(items.get(1).acmeSessionEgressRealm);
+        Assert.assertEquals("\"fe80::1\"", items.get(1).acmeFlowInSrcAddrFS1F);
+        Assert.assertEquals(Ipv4Address.NONE, items.get(1).acmeFlowInSrcAddrFS1FIpv4);
+        Assert.assertEquals("10.0.1.5", Ipv4Address.format(items.get(1).correlationIpv4));
+
+        columns.clear();
+        Assert.assertEquals(0, columns.size());
+        Assert.assertFalse(columns.iterator().hasNext());
+    }
+
+    private CdrRecordItem createItem(long callingMos, String egressRealm, String inSrcAddr) {
+        CdrRecordItem item = new CdrRecordItem();
+        item.acmeCallingMOS = callingMos;
+        item.acmeSessionEgressRealm = egressRealm;
+        item.setAcmeFlowInSrcAddrFS1F(inSrcAddr);
+        item.correlationIpv4 = Ipv4Address.parseField("10.0.1.5");
+
+        return item;
+    }
+}
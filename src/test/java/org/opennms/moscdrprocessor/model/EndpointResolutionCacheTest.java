@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EndpointResolutionCacheTest {
+
+    @Test
+    public void testLookupAndEviction() {
+        EndpointResolutionCache cache = new EndpointResolutionCache(IpPatternFilterSet.of(List.of("10.*.*.*")), 2, 16);
+
+        Assert.assertEquals(16, cache.getCapacity());
+        Assert.assertEquals(EndpointResolutionCache.NOT_CACHED, cache.lookup(new int[] { 1, 2 }));
+
+        cache.put(new int[] { 1, 2 }, -5);
+        Assert.assertEquals(0xFFFFFFFBL, cache.lookup(new int[] { 1, 2 }));
+        Assert.assertEquals(EndpointResolutionCache.NOT_CACHED, cache.lookup(new int[] { 2, 1 }));
+
+        // keep using { 1, 2 } so CLOCK never evicts it
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new int[] { i, -i }, i);
+            Assert.assertEquals(0xFFFFFFFBL, cache.lookup(new int[] { 1, 2 }));
+        }
+
+        Assert.assertEquals(1001, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertTrue(cache.getEvictions() > 0);
+        Assert.assertEquals(999L, cache.lookup(new int[] { 999, -999 }));
+
+        cache.clear();
+        Assert.assertEquals(EndpointResolutionCache.NOT_CACHED, cache.lookup(new int[] { 1, 2 }));
+    }
+
+    @Test
+    public void testForFilterSet() {
+        IpPatternFilterSet filterSet = IpPatternFilterSet.forPatterns(List.of("10.*.*.*"));
+        EndpointResolutionCache cache = EndpointResolutionCache.forFilterSet(filterSet, 8, 1024);
+        cache.put(new int[8], 7);
+
+        Assert.assertSame(cache, EndpointResolutionCache.forFilterSet(IpPatternFilterSet.forPatterns(List.of("10.*.*.*")), 8, 1024));
+
+        EndpointResolutionCache changed = EndpointResolutionCache.forFilterSet(IpPatternFilterSet.forPatterns(List.of("11.*.*.*")), 8, 1024);
+        Assert.assertNotSame(cache, changed);
+        Assert.assertEquals(EndpointResolutionCache.NOT_CACHED, changed.lookup(new int[8]));
+    }
+}
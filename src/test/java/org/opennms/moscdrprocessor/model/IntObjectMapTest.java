@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntObjectMapTest {
+
+    @Test
+    public void testPutAndGet() {
+        IntObjectMap<String> map = new IntObjectMap<>(2);
+
+        for (int key = -1000; key <= 1000; key++) {
+            map.put(key, Integer.toString(key));
+        }
+
+        map.put(0, "zero");
+
+        Assert.assertEquals(2001, map.size());
+        Assert.assertEquals("zero", map.get(0));
+        Assert.assertEquals("-1000", map.get(-1000));
+        Assert.assertEquals("1000", map.get(1000));
+        Assert.assertNull(map.get(1001));
+
+        map.clear();
+        Assert.assertEquals(0, map.size());
+        Assert.assertNull(map.get(0));
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IpPatternFilterSetTest {
+
+    @Test
+    public void testFirstMatchingPattern() {
+        IpPatternFilterSet filterSet = IpPatternFilterSet.of(List.of("10.0-253.2-9.*", "10.*.*.*", "192.168.1.5"));
+
+        Assert.assertEquals(0, filterSet.indexOfMatch(Ipv4Address.parseField("10.0.2.22")));
+        Assert.assertEquals(1, filterSet.indexOfMatch(Ipv4Address.parseField("10.254.9.88")));
+        Assert.assertEquals("10.*.*.*", filterSet.getMatch(Ipv4Address.parseField("10.253.1.88")).getPattern());
+        Assert.assertTrue(filterSet.isMatch("192.168.1.5"));
+        Assert.assertFalse(filterSet.isMatch("192.168.1.6"));
+        Assert.assertEquals(IpPatternFilterSet.NO_MATCH, filterSet.indexOfMatch(Ipv4Address.parseField("11.0.2.22")));
+        Assert.assertNull(filterSet.getMatch(Ipv4Address.parseField("11.0.2.22")));
+
+        Assert.assertFalse(IpPatternFilterSet.of(List.of()).isMatch("10.0.2.22"));
+    }
+
+    @Test
+    public void testIpv6() {
+        IpPatternFilterSet filterSet = IpPatternFilterSet.of(
+            List.of("10.0.0.0/8", "2001:db8:ab00::/40", "2001:db8::/32", "fe80::1", "2001:db8:abcd::/48"));
+
+        Assert.assertEquals(1, filterSet.indexOfMatch(Ipv6Address.parse("2001:db8:abcd::1")));
+        Assert.assertEquals(2, filterSet.indexOfMatch(Ipv6Address.parse("2001:db8:1::1")));
+        Assert.assertEquals(3, filterSet.indexOfMatch(Ipv6Address.parse("fe80::1")));
+        Assert.assertEquals(IpPatternFilterSet.NO_MATCH, filterSet.indexOfMatch(Ipv6Address.parse("fe80::2")));
+        Assert.assertEquals(IpPatternFilterSet.NO_MATCH, filterSet.indexOfMatch(Ipv6Address.parse("2001:db9::1")));
+
+        // IPv4-mapped addresses match the IPv4 patterns
+        Assert.assertEquals(0, filterSet.indexOfMatch(Ipv6Address.parse("::ffff:10.1.2.3")));
+        Assert.assertEquals("2001:db8::/32", filterSet.getMatch(Ipv6Address.parse("2001:db8:ff::")).getPattern());
+    }
+
+    @Test
+    public void testSameAsFilters() {
+        Random random = new Random(42);
+        List<String> patterns = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            patterns.add(String.format("%s.%s.%s.%s",
+                octetPattern(random, 0.1), octetPattern(random, 0.3), octetPattern(random, 0.5), octetPattern(random, 0.8)));
+        }
+
+        IpPatternFilterSet filterSet = IpPatternFilterSet.of(patterns);
+
+        for (int i = 0; i < 20000; i++) {
+            // mostly addresses sharing a few first octets, so some match
+            int ipAddress = ((10 + random.nextInt(4)) << 24) | random.nextInt(1 << 24);
+
+            int expected = IpPatternFilterSet.NO_MATCH;
+
+            for (int p = 0; p < patterns.size(); p++) {
+                if (filterSet.getFilters().get(p).isMatch(ipAddress)) {
+                    expected = p;
+                    break;
+                }
+            }
+
+            Assert.assertEquals(Ipv4Address.format(ipAddress), expected, filterSet.indexOfMatch(ipAddress));
+        }
+    }
+
+    private String octetPattern(Random random, double anyChance) {
+        if (random.nextDouble() < anyChance) {
+            return "*";
+        }
+
+        int start = random.nextInt(256);
+
+        if (random.nextBoolean()) {
+            return Integer.toString(start);
+        }
+
+        return start + "-" + (start + random.nextInt(256 - start));
+    }
+}
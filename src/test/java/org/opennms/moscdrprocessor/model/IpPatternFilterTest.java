@@ -28,6 +28,8 @@
 
 package org.opennms.moscdrprocessor.model;
 
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -109,4 +111,89 @@ public class IpPatternFilterTest {
 
         Assert.assertFalse(filter.isMatch("11.0.2.22"));
     }
+
+    @Test
+    public void testApplyFilterPacked() {
+        IpPatternFilter filter = new IpPatternFilter("10.0-253.2-9.*");
+
+        Assert.assertTrue(filter.isMatch(Ipv4Address.parseField("\"10.253.9.254\"")));
+        Assert.assertFalse(filter.isMatch(Ipv4Address.parseField("10.254.9.88")));
+        Assert.assertFalse(filter.isMatch(Ipv4Address.parseField("11.0.2.22")));
+
+        IpPatternFilter literal = new IpPatternFilter("192.168.1.5");
+        Assert.assertTrue(literal.isMatch(Ipv4Address.parseField("192.168.1.5")));
+        Assert.assertFalse(literal.isMatch(Ipv4Address.parseField("192.168.1.6")));
+
+        IpPatternFilter any = new IpPatternFilter("*.*.*.*");
+        Assert.assertTrue(any.isMatch(Ipv4Address.parseField("255.255.255.255")));
+
+        Assert.assertEquals(Ipv4Address.NONE, Ipv4Address.parseField("10.0.2"));
+        Assert.assertEquals(Ipv4Address.NONE, Ipv4Address.parseField("10.0.2.256"));
+        Assert.assertEquals(Ipv4Address.NONE, Ipv4Address.parseField(""));
+        Assert.assertEquals("255.0.2.22", Ipv4Address.format(Ipv4Address.parseField(" 255.0.2.22 ")));
+    }
+
+    @Test
+    public void testCidr() {
+        IpPatternFilter filter = new IpPatternFilter("10.20.0.0/14");
+
+        Assert.assertFalse(filter.isIpv6());
+        Assert.assertEquals(IpPatternFilter.FilterType.Range, filter.getOctets()[1].filterType);
+        Assert.assertEquals(20, filter.getOctets()[1].rangeStart);
+        Assert.assertEquals(23, filter.getOctets()[1].rangeEnd);
+
+        Assert.assertTrue(filter.isMatch("10.20.0.1"));
+        Assert.assertTrue(filter.isMatch("10.23.255.255"));
+        Assert.assertFalse(filter.isMatch("10.24.0.0"));
+        Assert.assertTrue(filter.isMatch("::ffff:10.21.1.1"));
+
+        IpPatternFilter ipv6Filter = new IpPatternFilter("2001:db8::/32");
+
+        Assert.assertTrue(ipv6Filter.isIpv6());
+        Assert.assertTrue(ipv6Filter.isMatch("2001:db8:1::5"));
+        Assert.assertFalse(ipv6Filter.isMatch("2001:db9::5"));
+        Assert.assertFalse(ipv6Filter.isMatch("10.20.0.1"));
+
+        // IPv4-mapped prefixes are IPv4 patterns
+        Assert.assertFalse(new IpPatternFilter("::ffff:192.168.0.0/112").isIpv6());
+        Assert.assertTrue(new IpPatternFilter("::ffff:192.168.0.0/112").isMatch("192.168.3.4"));
+
+        Assert.assertTrue(new IpPatternFilter("fe80::1").isMatch("FE80:0:0::1"));
+    }
+
+    @Test
+    public void testInvalidAddressDoesNotMatch() {
+        IpPatternFilter any = new IpPatternFilter("*.*.*.*");
+
+        Assert.assertFalse(any.isMatch("10.0.0.256"));
+        Assert.assertFalse(any.isMatch("10.0.0"));
+        Assert.assertFalse(any.isMatch("not an address"));
+        Assert.assertFalse(any.isMatch("2001:db8::zz"));
+        Assert.assertFalse(any.isMatch((String) null));
+        Assert.assertFalse(IpPatternFilterSet.forPatterns(List.of("*.*.*.*")).isMatch("999.1.1.1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPrefixLength() {
+        new IpPatternFilter("10.0.0.0/33");
+    }
+
+    @Test
+    public void testIpv6Address() {
+        Assert.assertEquals("2001:db8::1", Ipv6Address.parse("2001:0DB8:0:0:0:0:0:1").toString());
+        Assert.assertEquals("::", Ipv6Address.parse("::").toString());
+        Assert.assertEquals("1::", Ipv6Address.parse("1::").toString());
+        Assert.assertEquals("2001:db8:0:1:1:1:1:1", Ipv6Address.parse("2001:db8:0:1:1:1:1:1").toString());
+        Assert.assertEquals("2001:0:0:1::1", Ipv6Address.parse("2001:0:0:1:0:0:0:1").toString());
+
+        Ipv6Address mapped = Ipv6Address.parseField("\"::ffff:10.0.1.5\"");
+        Assert.assertTrue(mapped.isIpv4Mapped());
+        Assert.assertEquals("10.0.1.5", Ipv4Address.format(mapped.toIpv4()));
+
+        Assert.assertNull(Ipv6Address.parse("1:2"));
+        Assert.assertNull(Ipv6Address.parse("1::2::3"));
+        Assert.assertNull(Ipv6Address.parse("1:2:3:4:5:6:7:8:9"));
+        Assert.assertNull(Ipv6Address.parse("12345::"));
+        Assert.assertNull(Ipv6Address.parseField("10.0.1.5"));
+    }
 }
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricAggregatorTest {
+
+    @Test
+    public void testFlush() {
+        MetricPathTable paths = new MetricPathTable();
+        MetricAggregator aggregator = new MetricAggregator(paths, 300000L);
+        MetricBatch batch = new MetricBatch(paths, 8);
+
+        batch.add("mos-cdr:10.0.0.1:mos", 430L, 1660003200000L);
+        batch.add("mos-cdr:10.0.0.1:mos", 410L, 1660003299999L);
+        batch.add("mos-cdr:10.0.0.1:mos", 300L, 1660003500000L);
+        batch.add("mos-cdr:10.0.0.2:jitter", 1.5, 1660003200000L);
+        batch.add("mos-cdr:10.0.0.1:mos", 450L, 1660003200001L);
+
+        // spread over enough paths to rehash
+        for (int i = 0; i < 5000; i++) {
+            aggregator.add(paths.intern("p" + (i % 1000)), i, 1660003200000L);
+        }
+
+        aggregator.clear();
+        aggregator.addAll(batch);
+        Assert.assertEquals(3, aggregator.size());
+
+        MetricBatch out = new MetricBatch(paths, 16);
+        Assert.assertEquals(15, aggregator.flush(out));
+        Assert.assertTrue(aggregator.isEmpty());
+
+        Assert.assertEquals(List.of(
+            "mos-cdr:10.0.0.1:mos_count 3 1660003200000",
+            "mos-cdr:10.0.0.1:mos_min 410 1660003200000",
+            "mos-cdr:10.0.0.1:mos_max 450 1660003200000",
+            "mos-cdr:10.0.0.1:mos_mean 430.0 1660003200000",
+            "mos-cdr:10.0.0.1:mos_sum 1290 1660003200000",
+            "mos-cdr:10.0.0.1:mos_count 1 1660003500000",
+            "mos-cdr:10.0.0.1:mos_min 300 1660003500000",
+            "mos-cdr:10.0.0.1:mos_max 300 1660003500000",
+            "mos-cdr:10.0.0.1:mos_mean 300.0 1660003500000",
+            "mos-cdr:10.0.0.1:mos_sum 300 1660003500000",
+            "mos-cdr:10.0.0.2:jitter_count 1 1660003200000",
+            "mos-cdr:10.0.0.2:jitter_min 1.5 1660003200000",
+            "mos-cdr:10.0.0.2:jitter_max 1.5 1660003200000",
+            "mos-cdr:10.0.0.2:jitter_mean 1.5 1660003200000",
+            "mos-cdr:10.0.0.2:jitter_sum 1.5 1660003200000"), out.toLines());
+    }
+}
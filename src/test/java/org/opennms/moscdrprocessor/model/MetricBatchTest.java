@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricBatchTest {
+
+    @Test
+    public void testLines() {
+        List<String> lines = List.of(
+            "mos-cdr:10.0.0.1:Acme_Calling_MOS 430 1660003200000",
+            "mos-cdr:10.0.0.1:Acme_Called_MOS -2 1660003200000",
+            "  mos-cdr:10.0.0.1:Jitter 1.25 1660003200001\n");
+
+        MetricBatch batch = MetricBatch.fromLines(lines);
+
+        Assert.assertEquals(3, batch.size());
+        Assert.assertFalse(batch.isDouble(0));
+        Assert.assertEquals(430L, batch.getLong(0));
+        Assert.assertTrue(batch.isDouble(2));
+        Assert.assertEquals(1.25, batch.getDouble(2), 0.0);
+        Assert.assertEquals(1660003200001L, batch.getTimestamp(2));
+        Assert.assertEquals("mos-cdr:10.0.0.1:Jitter", batch.getPath(2));
+        Assert.assertEquals(batch.getPathId(0), batch.getPaths().intern("mos-cdr:10.0.0.1:Acme_Calling_MOS"));
+        Assert.assertNotSame(batch.getPaths(), MetricBatch.fromLines(lines).getPaths());
+
+        Assert.assertEquals(List.of(
+            "mos-cdr:10.0.0.1:Acme_Calling_MOS 430 1660003200000",
+            "mos-cdr:10.0.0.1:Acme_Called_MOS -2 1660003200000",
+            "mos-cdr:10.0.0.1:Jitter 1.25 1660003200001"), batch.toLines());
+
+        MetricBatch copy = new MetricBatch(batch.getPaths(), 1);
+        copy.addAll(batch);
+        copy.addAll(batch);
+        Assert.assertEquals(6, copy.size());
+        Assert.assertEquals(batch.toLine(1), copy.toLine(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLine() {
+        MetricBatch.fromLines(List.of("mos-cdr:10.0.0.1:Acme_Calling_MOS 430"));
+    }
+}
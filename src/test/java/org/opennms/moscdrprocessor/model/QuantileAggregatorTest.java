@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuantileAggregatorTest {
+
+    @Test
+    public void testSuffix() {
+        Assert.assertEquals("_p50", QuantileAggregator.suffix(0.5));
+        Assert.assertEquals("_p90", QuantileAggregator.suffix(0.9));
+        Assert.assertEquals("_p99", QuantileAggregator.suffix(0.99));
+        Assert.assertEquals("_p99_9", QuantileAggregator.suffix(0.999));
+    }
+
+    @Test
+    public void testMergeFiles() {
+        MetricPathTable paths = new MetricPathTable();
+        QuantileAggregator aggregator = new QuantileAggregator(paths, 300000L, List.of(0.5, 0.9, 0.999));
+
+        // two files with values for the same interval, the second also starting the next one
+        MetricBatch first = new MetricBatch(paths, 50);
+        MetricBatch second = new MetricBatch(paths, 51);
+
+        for (int i = 1; i <= 50; i++) {
+            first.add("mos-cdr:10.0.0.1:mos", (long) i, 1660003200000L + i);
+            second.add("mos-cdr:10.0.0.1:mos", (long) (50 + i), 1660003499999L - i);
+        }
+
+        second.add("mos-cdr:10.0.0.1:mos", 300L, 1660003500000L);
+
+        aggregator.addAll(first);
+        aggregator.addAll(second);
+        Assert.assertEquals(2, aggregator.size());
+
+        MetricBatch out = new MetricBatch(paths, 6);
+        Assert.assertEquals(6, aggregator.flush(out));
+        Assert.assertEquals(0, aggregator.size());
+
+        Assert.assertEquals("mos-cdr:10.0.0.1:mos_p50", out.getPath(0));
+        Assert.assertEquals(50.0, out.getDouble(0), 0.5);
+        Assert.assertEquals(1660003200000L, out.getTimestamp(0));
+        Assert.assertEquals("mos-cdr:10.0.0.1:mos_p90", out.getPath(1));
+        Assert.assertEquals(90.0, out.getDouble(1), 0.9);
+        Assert.assertEquals("mos-cdr:10.0.0.1:mos_p99_9", out.getPath(2));
+        Assert.assertEquals(99.0, out.getDouble(2), 1.0);
+        Assert.assertEquals(1660003200000L, out.getTimestamp(2));
+
+        for (int q = 3; q < 6; q++) {
+            Assert.assertEquals(300.0, out.getDouble(q), 3.0);
+            Assert.assertEquals(1660003500000L, out.getTimestamp(q));
+        }
+
+        Assert.assertEquals("mos-cdr:10.0.0.1:mos_p50", out.getPath(3));
+    }
+
+    @Test
+    public void testFlushBefore() {
+        MetricPathTable paths = new MetricPathTable();
+        QuantileAggregator aggregator = new QuantileAggregator(paths, 300000L, List.of(0.5, 0.999));
+        int mos = paths.intern("mos-cdr:10.0.0.1:mos");
+
+        for (int i = 1; i <= 100; i++) {
+            aggregator.add(mos, i, 1660003200000L);
+        }
+
+        aggregator.add(mos, 50.0, 1660003500000L);
+
+        MetricBatch out = new MetricBatch(paths, 4);
+        Assert.assertEquals(0, aggregator.flushBefore(1660003200000L, out));
+        Assert.assertEquals(2, aggregator.flushBefore(1660003500000L, out));
+        Assert.assertEquals("mos-cdr:10.0.0.1:mos_p50", out.getPath(0));
+        Assert.assertEquals(50.0, out.getDouble(0), 0.5);
+        Assert.assertEquals("mos-cdr:10.0.0.1:mos_p99_9", out.getPath(1));
+        Assert.assertEquals(1660003200000L, out.getTimestamp(1));
+        Assert.assertEquals(1, aggregator.size());
+
+        // the first interval was sent, so late values are dropped rather than starting it again
+        aggregator.add(mos, 1.0, 1660003200000L);
+        aggregator.add(mos, 1.0, 1660003499999L);
+        Assert.assertEquals(2, aggregator.getLateCount());
+        Assert.assertEquals(1, aggregator.size());
+
+        // an earlier timestamp does not move the watermark back
+        Assert.assertEquals(0, aggregator.flushBefore(1660002900000L, out));
+        aggregator.add(mos, 1.0, 1660003200000L);
+        Assert.assertEquals(3, aggregator.getLateCount());
+
+        // spread over enough paths to rehash
+        for (int i = 0; i < 1000; i++) {
+            aggregator.add(paths.intern("p" + (i % 200)), i, 1660003500000L);
+        }
+
+        Assert.assertEquals(201, aggregator.size());
+        Assert.assertEquals(402, aggregator.flush(out));
+        Assert.assertEquals(0, aggregator.size());
+        Assert.assertEquals("mos-cdr:10.0.0.1:mos_p50", out.getPath(2));
+        Assert.assertEquals(50.0, out.getDouble(2), 0.0);
+        Assert.assertEquals(1660003500000L, out.getTimestamp(2));
+    }
+
+    @Test
+    public void testRebase() {
+        MetricPathTable paths = new MetricPathTable();
+        QuantileAggregator aggregator = new QuantileAggregator(paths, 300000L, List.of(0.5));
+
+        paths.intern("unused");
+        aggregator.add(paths.intern("mos-cdr:10.0.0.1:mos"), 10.0, 1660003200000L);
+        aggregator.add(paths.intern("mos-cdr:10.0.0.2:mos"), 20.0, 1660003200000L);
+
+        // cache the quantile paths in the old table
+        Assert.assertEquals(2, aggregator.flushBefore(1660003200000L + 300000L, new MetricBatch(paths, 2)));
+        aggregator.add(paths.intern("mos-cdr:10.0.0.1:mos"), 30.0, 1660003500000L);
+        aggregator.add(paths.intern("mos-cdr:10.0.0.2:mos"), 40.0, 1660003500000L);
+
+        MetricPathTable newPaths = new MetricPathTable();
+        aggregator.rebase(newPaths);
+
+        // values for the new table's ids merge into the moved sketches
+        aggregator.add(newPaths.intern("mos-cdr:10.0.0.2:mos"), 40.0, 1660003500000L);
+        Assert.assertEquals(2, aggregator.size());
+
+        try {
+            aggregator.flush(new MetricBatch(paths, 2));
+            Assert.fail("flushed into a batch of the old table");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(2, aggregator.size());
+        }
+
+        MetricBatch out = new MetricBatch(newPaths, 2);
+        Assert.assertEquals(2, aggregator.flush(out));
+        Assert.assertEquals(List.of(
+            "mos-cdr:10.0.0.1:mos_p50",
+            "mos-cdr:10.0.0.2:mos_p50"), List.of(out.getPath(0), out.getPath(1)));
+        Assert.assertEquals(30.0, out.getDouble(0), 0.3);
+        Assert.assertEquals(40.0, out.getDouble(1), 0.4);
+
+        // only the live paths and their quantile paths were carried over
+        Assert.assertEquals(5, paths.size());
+        Assert.assertEquals(4, newPaths.size());
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testRelativeAccuracy() {
+        Random random = new Random(19);
+        double[] values = new double[20000];
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+
+        for (int i = 0; i < values.length; i++) {
+            // MOS x100 and jitter like values, with a few zeros
+            values[i] = i % 100 == 0 ? 0.0 : Math.exp(random.nextDouble() * 8.0);
+            (i % 2 == 0 ? first : second).add(values[i]);
+        }
+
+        first.merge(second);
+        Arrays.sort(values);
+
+        Assert.assertEquals(values.length, first.getCount());
+        Assert.assertEquals(0.0, first.getQuantile(0.0), 0.0);
+        Assert.assertEquals(values[values.length - 1], first.getQuantile(1.0), 0.0);
+
+        for (double q : new double[] { 0.5, 0.9, 0.99 }) {
+            double expected = values[(int) (q * (values.length - 1))];
+            Assert.assertEquals(expected, first.getQuantile(q), expected * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+        }
+
+        first.clear();
+        Assert.assertTrue(Double.isNaN(first.getQuantile(0.5)));
+        first.add(430.0);
+        Assert.assertEquals(430.0, first.getQuantile(0.99), 0.0);
+    }
+
+    @Test
+    public void testBoundedBuckets() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 64);
+
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(Math.pow(1.1, i % 300));
+        }
+
+        // the lowest buckets were collapsed, the high quantiles are still accurate
+        double expected = Math.pow(1.1, 296);
+        Assert.assertEquals(expected, sketch.getQuantile(0.99), expected * 0.01);
+        Assert.assertEquals(1.0, sketch.getMin(), 0.0);
+    }
+}
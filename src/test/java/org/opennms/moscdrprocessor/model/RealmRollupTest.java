@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.model;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RealmRollupTest {
+
+    @Test
+    public void testRollup() {
+        MetricPathTable paths = new MetricPathTable();
+        RealmRollup rollup = new RealmRollup(paths, "mos-cdr-realm", List.of("mos", "jitter"), 300000L);
+        int core = rollup.internRealm("core");
+        int peer = rollup.internRealm("peer:1");
+
+        Assert.assertEquals(core, rollup.internRealm("core"));
+        Assert.assertEquals(RealmRollup.NO_REALM, rollup.internRealm(""));
+        Assert.assertEquals("peer:1", rollup.getRealm(peer));
+
+        rollup.add(core, RealmRollup.INGRESS, 0, 430.0, 1660003200000L);
+        rollup.add(core, RealmRollup.INGRESS, 0, 410.0, 1660003210000L);
+        rollup.add(peer, RealmRollup.EGRESS, 1, 7.0, 1660003200000L);
+        rollup.add(RealmRollup.NO_REALM, RealmRollup.EGRESS, 1, 7.0, 1660003200000L);
+        rollup.add(core, RealmRollup.INGRESS, 0, 400.0, 1660003500000L);
+
+        MetricBatch out = new MetricBatch(paths, 10);
+        Assert.assertEquals(0, rollup.flushBefore(1660003299999L, out));
+        Assert.assertEquals(10, rollup.flushBefore(1660003500000L, out));
+
+        Assert.assertEquals(List.of(
+            "mos-cdr-realm:core:Ingress_mos_count 2 1660003200000",
+            "mos-cdr-realm:core:Ingress_mos_min 410.0 1660003200000",
+            "mos-cdr-realm:core:Ingress_mos_max 430.0 1660003200000",
+            "mos-cdr-realm:core:Ingress_mos_mean 420.0 1660003200000",
+            "mos-cdr-realm:core:Ingress_mos_sum 840.0 1660003200000",
+            "mos-cdr-realm:peer_1:Egress_jitter_count 1 1660003200000",
+            "mos-cdr-realm:peer_1:Egress_jitter_min 7.0 1660003200000",
+            "mos-cdr-realm:peer_1:Egress_jitter_max 7.0 1660003200000",
+            "mos-cdr-realm:peer_1:Egress_jitter_mean 7.0 1660003200000",
+            "mos-cdr-realm:peer_1:Egress_jitter_sum 7.0 1660003200000"), out.toLines());
+
+        // the first interval was sent
+        rollup.add(core, RealmRollup.INGRESS, 0, 420.0, 1660003200000L);
+        Assert.assertEquals(1, rollup.getLateCount());
+
+        out.clear();
+        Assert.assertEquals(5, rollup.flush(out));
+        Assert.assertEquals("mos-cdr-realm:core:Ingress_mos_count 1 1660003500000", out.toLines().get(0));
+        Assert.assertEquals(0, rollup.flush(out));
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.opennms.moscdrprocessor.model.CdrHeader;
+
+public class CdrHeaderCacheTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private int parsed;
+
+    private final CdrParser parser = new CdrParserImpl() {
+        @Override
+        public CdrHeader parseCdrHeader(String filePath) throws CdrParserException {
+            parsed++;
+            return super.parseCdrHeader(filePath);
+        }
+    };
+
+    @Before
+    @After
+    public void clearCache() {
+        CdrHeaderCache.getInstance().clear();
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        CdrHeaderCache cache = CdrHeaderCache.getInstance();
+        File headerFile = tempFolder.newFile("SBC_Headers.csv");
+        String headerPath = headerFile.getPath();
+
+        write(headerFile, "Acct-Status-Type,Acme-Calling-MOS,Acme-Called-MOS\n", 1660003200000L);
+        CdrHeader first = cache.getCdrHeader(headerPath, parser);
+        Assert.assertEquals(Integer.valueOf(1), first.getColumnNameToIndexMap().get("Acme-Calling-MOS"));
+
+        // unchanged
+        Assert.assertSame(first, cache.getCdrHeader(headerPath, parser));
+        Assert.assertEquals(1, parsed);
+
+        // touched with the same contents: the hash matches, so the header is kept
+        write(headerFile, "Acct-Status-Type,Acme-Calling-MOS,Acme-Called-MOS\n", 1660003500000L);
+        Assert.assertSame(first, cache.getCdrHeader(headerPath, parser));
+        Assert.assertEquals(1, parsed);
+
+        // rewritten with the columns in another order, of the same size
+        write(headerFile, "Acct-Status-Type,Acme-Called-MOS,Acme-Calling-MOS\n", 1660003800000L);
+        CdrHeader second = cache.getCdrHeader(headerPath, parser);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, parsed);
+        Assert.assertEquals(Integer.valueOf(2), second.getColumnNameToIndexMap().get("Acme-Calling-MOS"));
+        Assert.assertEquals(Integer.valueOf(1), first.getColumnNameToIndexMap().get("Acme-Calling-MOS"));
+
+        Assert.assertSame(second, cache.getCdrHeader(headerPath, parser));
+        Assert.assertEquals(2, parsed);
+    }
+
+    @Test(expected = CdrParserException.class)
+    public void testMissingFile() throws Exception {
+        CdrHeaderCache.getInstance().getCdrHeader(new File(tempFolder.getRoot(), "missing.csv").getPath(), parser);
+    }
+
+    private static void write(File file, String contents, long lastModifiedMillis) throws Exception {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(lastModifiedMillis));
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.opennms.moscdrprocessor.model.CdrHeader;
+import org.opennms.moscdrprocessor.model.CdrRecord;
+import org.opennms.moscdrprocessor.model.CdrRecordItem;
+
+public class CdrParserImplTest {
+    private String headerPath;
+    private String dataPath;
+
+    @Before
+    public void setUp() throws Exception {
+        headerPath = resourcePath("/cdr/SBC_Headers.csv");
+        dataPath = resourcePath("/cdr/CDC_cdr202206130354a");
+    }
+
+    @Test
+    public void testParseCdrRecord() throws CdrParserException {
+        CdrParser parser = new CdrParserImpl();
+
+        CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+        CdrRecord cdrRecord = parser.parseCdrRecord(dataPath, cdrHeader);
+
+        Assert.assertEquals("CDC", cdrRecord.getFileType());
+        Assert.assertEquals("202206130354", cdrRecord.getFileTimeStamp());
+        Assert.assertEquals("a", cdrRecord.suffix);
+
+        // only the two rows with Acct-Status-Type of 2
+        Assert.assertEquals(2, cdrRecord.items.size());
+
+        CdrRecordItem item = cdrRecord.get(0);
+        Assert.assertEquals(2L, item.acctStatusType);
+        Assert.assertEquals(120L, item.acctSessionTime);
+        Assert.assertEquals(410L, item.acmeCallingMOS);
+        Assert.assertEquals(390L, item.acmeCalledMOS);
+        Assert.assertEquals(3L, item.acmeCallingRTPAvgJitterFS1);
+        Assert.assertEquals(5L, item.acmeCalledRTPAvgJitterFS1);
+        Assert.assertEquals("\"192.168.6.20\"", item.acmeFlowInSrcAddrFS1F);
+
+        Assert.assertEquals(435L, cdrRecord.get(1).acmeCallingMOS);
+        Assert.assertEquals(401L, cdrRecord.get(1).acmeCalledMOS);
+    }
+
+    @Test
+    public void testParseCdrRecordItemsStreams() throws CdrParserException {
+        CdrParser parser = new CdrParserImpl();
+        CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+
+        List<Long> callingMos = new ArrayList<>();
+
+        parser.parseCdrRecordItems(dataPath, cdrHeader, item -> callingMos.add(item.acmeCallingMOS));
+
+        Assert.assertEquals(List.of(410L, 435L), callingMos);
+    }
+
+    private String resourcePath(String name) throws URISyntaxException {
+        return new File(getClass().getResource(name).toURI()).getAbsolutePath();
+    }
+}
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.parsers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.opennms.moscdrprocessor.model.CdrHeader;
+import org.opennms.moscdrprocessor.model.CdrProjection;
+import org.opennms.moscdrprocessor.model.CdrRecord;
+import org.opennms.moscdrprocessor.model.CdrRecordItem;
+import org.opennms.moscdrprocessor.model.Ipv4Address;
+
+public class MappedCdrParserTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private String headerPath;
+    private String dataPath;
+
+    @Before
+    public void setUp() throws Exception {
+        headerPath = resourcePath("/cdr/SBC_Headers.csv");
+        dataPath = resourcePath("/cdr/CDC_cdr202206130354a");
+    }
+
+    @Test
+    public void testSameResultAsCsvEngine() throws CdrParserException {
+        CdrParser csvParser = new CdrParserImpl();
+        CdrParser mappedParser = new MappedCdrParser();
+
+        CdrHeader cdrHeader = csvParser.parseCdrHeader(headerPath);
+
+        CdrRecord expected = csvParser.parseCdrRecord(dataPath, cdrHeader);
+        CdrRecord actual = mappedParser.parseCdrRecord(dataPath, cdrHeader);
+
+        Assert.assertEquals(expected.getFileTimeStamp(), actual.getFileTimeStamp());
+        Assert.assertEquals(expected.items.size(), actual.items.size());
+
+        for (int i = 0; i < expected.items.size(); i++) {
+            CdrRecordItem e = expected.get(i);
+            CdrRecordItem a = actual.get(i);
+
+            Assert.assertEquals(e.acctSessionTime, a.acctSessionTime);
+            Assert.assertEquals(e.acmeCallingMOS, a.acmeCallingMOS);
+            Assert.assertEquals(e.acmeCalledMOS, a.acmeCalledMOS);
+            Assert.assertEquals(e.acmeCalledRTPAvgJitterFS1, a.acmeCalledRTPAvgJitterFS1);
+            Assert.assertEquals(e.nasIpAddress, a.nasIpAddress);
+            Assert.assertEquals(e.acmeSessionEgressRealm, a.acmeSessionEgressRealm);
+            Assert.assertEquals(e.acmeFlowOutDstAddrFS1R, a.acmeFlowOutDstAddrFS1R);
+        }
+    }
+
+    @Test
+    public void testRowsSpanningMapWindows() throws CdrParserException {
+        CdrParser parser = new MappedCdrParser(256);
+        CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+
+        List<Long> calledMos = new ArrayList<>();
+
+        parser.parseCdrRecordItems(dataPath, cdrHeader, item -> calledMos.add(item.acmeCalledMOS));
+
+        Assert.assertEquals(List.of(390L, 401L), calledMos);
+    }
+
+    @Test
+    public void testParallelChunksKeepFileOrder() throws CdrParserException {
+        CdrParser parser = new MappedCdrParser();
+        CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+
+        List<Long> expected = new ArrayList<>();
+        parser.parseCdrRecordItems(dataPath, cdrHeader, item -> expected.add(item.acctSessionTime));
+
+        // small chunks so every row ends up in its own chunk
+        CdrParser parallelParser = new MappedCdrParser(256, 4, 16);
+        List<Long> actual = new ArrayList<>();
+        parallelParser.parseCdrRecordItems(dataPath, cdrHeader, item -> actual.add(item.acctSessionTime));
+
+        Assert.assertEquals(List.of(120L, 60L), expected);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testProjection() throws CdrParserException {
+        CdrParser parser = new MappedCdrParser();
+        CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+
+        List<CdrRecordItem> items = new ArrayList<>();
+
+        parser.parseCdrRecordItems(dataPath, cdrHeader, CdrProjection.of("Acme-Calling-MOS", "Acme-Session-Ingress-Realm"), items::add);
+
+        Assert.assertEquals(2, items.size());
+        Assert.assertEquals(410L, items.get(0).acmeCallingMOS);
+        Assert.assertEquals("\"core\"", items.get(0).acmeSessionIngressRealm);
+
+        // not projected
+        Assert.assertEquals(0L, items.get(0).acmeCalledMOS);
+        Assert.assertEquals(0L, items.get(0).acctSessionTime);
+        Assert.assertNull(items.get(0).acmeFlowInSrcAddrFS1F);
+    }
+
+    @Test
+    public void testRowFilter() throws CdrParserException {
+        for (CdrParser parser : List.of(new CdrParserImpl(), new MappedCdrParser())) {
+            CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+
+            List<Long> filterSeenMos = new ArrayList<>();
+            CdrRowFilter rowFilter = CdrRowFilter.of(CdrProjection.of("Acme-Flow-In-Src-Addr_FS1_F"), item -> {
+                filterSeenMos.add(item.acmeCallingMOS);
+                return item.acmeFlowInSrcAddrFS1F.startsWith("\"10.9.");
+            });
+
+            List<CdrRecordItem> items = new ArrayList<>();
+
+            parser.parseCdrRecordItems(dataPath, cdrHeader, CdrProjection.of("Acme-Calling-MOS"), rowFilter, items::add);
+
+            // filter only sees its own fields, and only rows with "Acct-Status-Type" of 2
+            Assert.assertEquals(List.of(0L, 0L), filterSeenMos);
+
+            Assert.assertEquals(1, items.size());
+            Assert.assertEquals(435L, items.get(0).acmeCallingMOS);
+            Assert.assertEquals("\"10.9.9.9\"", items.get(0).acmeFlowInSrcAddrFS1F);
+        }
+    }
+
+    @Test
+    public void testPackedAddresses() throws CdrParserException {
+        for (CdrParser parser : List.of(new CdrParserImpl(), new MappedCdrParser())) {
+            CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+
+            List<CdrRecordItem> items = new ArrayList<>();
+
+            parser.parseCdrRecordItems(dataPath, cdrHeader,
+                CdrProjection.of("Acme-Flow-In-Src-Addr_FS1_F").packedAddresses(), items::add);
+
+            Assert.assertEquals(2, items.size());
+            Assert.assertEquals("10.9.9.9", Ipv4Address.format(items.get(1).acmeFlowInSrcAddrFS1FIpv4));
+            // the text is not created
+            Assert.assertNull(items.get(1).acmeFlowInSrcAddrFS1F);
+
+            // with the text, the address is still packed
+            CdrRecord cdrRecord = parser.parseCdrRecord(dataPath, cdrHeader);
+            Assert.assertEquals("\"10.9.9.9\"", cdrRecord.get(1).acmeFlowInSrcAddrFS1F);
+            Assert.assertEquals(items.get(1).acmeFlowInSrcAddrFS1FIpv4, cdrRecord.get(1).acmeFlowInSrcAddrFS1FIpv4);
+        }
+    }
+
+    @Test
+    public void testEmbeddedQuotes() throws Exception {
+        CdrParser parser = new MappedCdrParser();
+        CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+
+        CdrRecord cdrRecord = parser.parseCdrRecord(resourcePath("/cdr/HDC_cdr202206130400b"), cdrHeader);
+
+        Assert.assertEquals("HDC", cdrRecord.getFileType());
+        Assert.assertEquals(1, cdrRecord.items.size());
+
+        CdrRecordItem item = cdrRecord.get(0);
+
+        // comma inside quotes does not split the field
+        Assert.assertEquals("\"core, east\"", item.acmeSessionIngressRealm);
+        // quotes inside a quoted field are kept
+        Assert.assertEquals("\"peer \"x\" trunk\"", item.acmeSessionEgressRealm);
+        Assert.assertEquals("\"10.0.1.5\"", item.acmeFlowInSrcAddrFS1F);
+        Assert.assertEquals(420L, item.acmeCallingMOS);
+        Assert.assertEquals(415L, item.acmeCalledMOS);
+    }
+
+    @Test
+    public void testLongRange() throws Exception {
+        String data = Files.readString(Path.of(dataPath));
+
+        for (String value : List.of("9223372036854775807", "-9223372036854775808", "0000000000000000000000435")) {
+            File file = new File(tempFolder.getRoot(), "CDC_cdr202206130354a");
+            Files.writeString(file.toPath(), data.replace(",435,", "," + value + ","));
+
+            for (CdrParser parser : List.of(new CdrParserImpl(), new MappedCdrParser())) {
+                CdrRecord cdrRecord = parser.parseCdrRecord(file.getPath(), parser.parseCdrHeader(headerPath));
+
+                Assert.assertEquals(Long.parseLong(value), cdrRecord.get(1).acmeCallingMOS);
+            }
+        }
+
+        for (String value : List.of("9223372036854775808", "-9223372036854775809", "99999999999999999999")) {
+            File file = new File(tempFolder.getRoot(), "CDC_cdr202206130354a");
+            Files.writeString(file.toPath(), data.replace(",435,", "," + value + ","));
+
+            try {
+                new MappedCdrParser().parseCdrRecord(file.getPath(), new MappedCdrParser().parseCdrHeader(headerPath));
+                Assert.fail("out of range: " + value);
+            } catch (CdrParserException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains(value));
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedInput() throws Exception {
+        File gzipFile = new File(tempFolder.getRoot(), "CDC_cdr202206130354a.gz");
+        File zipFile = new File(tempFolder.getRoot(), "CDC_cdr202206130354a.zip");
+
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipFile))) {
+            Files.copy(Path.of(dataPath), out);
+        }
+
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            out.putNextEntry(new ZipEntry("CDC_cdr202206130354a"));
+            Files.copy(Path.of(dataPath), out);
+            out.closeEntry();
+        }
+
+        Assert.assertEquals(CdrFiles.Compression.NONE, CdrFiles.detectCompression(dataPath));
+        Assert.assertEquals(CdrFiles.Compression.GZIP, CdrFiles.detectCompression(gzipFile.getPath()));
+        Assert.assertEquals(CdrFiles.Compression.ZIP, CdrFiles.detectCompression(zipFile.getPath()));
+
+        // small map window so rows are carried over between reads
+        for (CdrParser parser : List.of(new CdrParserImpl(), new MappedCdrParser(), new MappedCdrParser(256))) {
+            CdrHeader cdrHeader = parser.parseCdrHeader(headerPath);
+
+            for (File file : List.of(gzipFile, zipFile)) {
+                CdrRecord cdrRecord = parser.parseCdrRecord(file.getPath(), cdrHeader);
+
+                Assert.assertEquals("CDC", cdrRecord.getFileType());
+                Assert.assertEquals(2, cdrRecord.items.size());
+                Assert.assertEquals(410L, cdrRecord.get(0).acmeCallingMOS);
+                Assert.assertEquals(401L, cdrRecord.get(1).acmeCalledMOS);
+            }
+        }
+    }
+
+    private String resourcePath(String name) throws URISyntaxException {
+        return new File(getClass().getResource(name).toURI()).getAbsolutePath();
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.moscdrprocessor.runners;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.opennms.moscdrprocessor.commands.RunConfig.MetricInfo;
+import org.opennms.moscdrprocessor.model.CdrRecordColumns;
+import org.opennms.moscdrprocessor.model.CdrRecordItem;
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+public class MetricPlanTest {
+
+    @Test
+    public void testDefault() {
+        MetricPlan plan = MetricPlan.compile(null);
+
+        Assert.assertEquals(List.of("Acme_Calling_MOS", "Acme_Called_MOS"), plan.getNames());
+        Assert.assertTrue(plan.getProjection().includes("Acme-Called-MOS"));
+        Assert.assertFalse(plan.getProjection().includes("Acme-Called-R-Factor"));
+
+        // MOS is sent as it is reported, 100-500
+        CdrRecordItem item = new CdrRecordItem();
+        item.acmeCallingMOS = 430;
+        item.acmeCalledMOS = 400;
+
+        MetricBatch batch = new MetricBatch(new MetricPathTable(), 2);
+        plan.addMetrics(item, new int[] { batch.getPaths().intern("a:calling"), batch.getPaths().intern("a:called") }, 100L, batch);
+
+        Assert.assertEquals(List.of("a:calling 430 100", "a:called 400 100"), batch.toLines());
+    }
+
+    @Test
+    public void testScaleIsExact() {
+        MetricPlan plan = MetricPlan.compile(List.of(
+            metric("Acme-Calling-MOS", "mos", 0.01),
+            metric("Acme-Called-MOS", "tenths", 0.3)));
+        CdrRecordItem item = new CdrRecordItem();
+        MetricBatch batch = new MetricBatch(new MetricPathTable(), 2);
+        int[] pathIds = { batch.getPaths().intern("a:mos"), batch.getPaths().intern("a:tenths") };
+
+        for (int mos = 100; mos <= 500; mos++) {
+            item.acmeCallingMOS = mos;
+            item.acmeCalledMOS = mos;
+
+            batch.clear();
+            plan.addMetrics(item, pathIds, 100L, batch);
+
+            // e.g. 140 as 1.4 rather than 1.4000000000000001
+            Assert.assertEquals("a:mos " + BigDecimal.valueOf(mos, 2).doubleValue() + " 100", batch.toLine(0));
+            Assert.assertEquals(BigDecimal.valueOf(mos * 3L, 1).doubleValue(), batch.getDouble(1), 0.0);
+        }
+    }
+
+    @Test
+    public void testAddMetrics() {
+        MetricPlan plan = MetricPlan.compile(List.of(
+            metric("Acme-Calling-MOS", "mos", 0.01),
+            metric("Acme-Called-RTP-Avg-Jitter_FS1", null, null)));
+
+        Assert.assertEquals(List.of("mos", "Acme_Called_RTP_Avg_Jitter_FS1"), plan.getNames());
+
+        CdrRecordItem item = new CdrRecordItem();
+        item.acmeCallingMOS = 430;
+        item.acmeCalledRTPAvgJitterFS1 = 12;
+
+        MetricBatch batch = new MetricBatch(new MetricPathTable(), 4);
+        int[] pathIds = { batch.getPaths().intern("a:mos"), batch.getPaths().intern("a:jitter") };
+
+        plan.addMetrics(item, pathIds, 100L, batch);
+
+        CdrRecordColumns block = new CdrRecordColumns(plan.getProjection());
+        block.add(item);
+        plan.addMetrics(plan.getColumns(block), 0, pathIds, 100L, batch);
+
+        Assert.assertEquals(List.of("a:mos 4.3 100", "a:jitter 12 100", "a:mos 4.3 100", "a:jitter 12 100"), batch.toLines());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStringField() {
+        MetricPlan.compile(List.of(metric("Acme-Session-Egress-Realm", null, null)));
+    }
+
+    private static MetricInfo metric(String field, String name, Double scale) {
+        MetricInfo metric = new MetricInfo();
+        metric.field = field;
+        metric.name = name;
+        metric.scale = scale;
+        return metric;
+    }
+}
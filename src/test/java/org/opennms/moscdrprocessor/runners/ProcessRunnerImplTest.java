@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2022 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2022 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.moscdrprocessor.runners;
+
+import java.io.File;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.opennms.moscdrprocessor.client.GraphiteClientRegistry;
+import org.opennms.moscdrprocessor.commands.RunConfig;
+import org.opennms.moscdrprocessor.log.ConsoleLogAdapter;
+import org.opennms.moscdrprocessor.model.MetricBatch;
+import org.opennms.moscdrprocessor.model.MetricPathTable;
+
+public class ProcessRunnerImplTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testUnspecifiedAddressIsSkipped() throws Exception {
+        // the preferred candidate of the first record is 0.0.0.0, which is treated as absent
+        String data = Files.readString(Path.of(resourcePath("/cdr/CDC_cdr202206130354a")))
+            .replace("\"10.0.1.6\",\"172.16.0.9\",3", "\"0.0.0.0\",\"172.16.0.9\",3");
+
+        RunConfig runConfig = runConfig(writeFile("CDC_cdr202206130354a", data));
+        runConfig.sourceIpFiltersAnyOf = List.of("*.*.*.*");
+
+        MetricBatch metrics = new ProcessRunnerImpl(runConfig, new ConsoleLogAdapter()).parseFileToMetrics();
+
+        Assert.assertEquals("mos-cdr:10.0.1.5:Acme_Calling_MOS", metrics.getPath(0));
+        Assert.assertEquals("mos-cdr:10.0.1.8:Acme_Calling_MOS", metrics.getPath(2));
+    }
+
+    @Test
+    public void testFilesOfAnIntervalAreAggregatedTogether() throws Exception {
+        String data = Files.readString(Path.of(resourcePath("/cdr/CDC_cdr202206130354a")));
+
+        RunConfig runConfig = runConfig(null);
+        runConfig.sourceIpFiltersAnyOf = List.of("*.*.*.*");
+        runConfig.aggregateStepSeconds = 300L;
+
+        AggregationState state = new AggregationState(runConfig);
+
+        // the 'a' and 'b' files of 03:54, then a file of the next interval which completes theirs
+        for (String name : List.of("CDC_cdr202206130354a", "CDC_cdr202206130354b", "CDC_cdr202206130400a")) {
+            runConfig.filePath = writeFile(name, data);
+            MetricBatch metrics = new ProcessRunnerImpl(runConfig, new ConsoleLogAdapter(), state).parseFileToMetrics();
+
+            Assert.assertEquals(name.endsWith("0400a"), metrics.size() > 0);
+
+            if (metrics.size() > 0) {
+                Assert.assertTrue(metrics.toLines().contains("mos-cdr:10.0.1.8:Acme_Calling_MOS_count 2 " + metrics.getTimestamp(0)));
+            }
+        }
+
+        // the 03:54 interval was sent, so a late file for it is dropped rather than overwriting it
+        runConfig.filePath = writeFile("CDC_cdr202206130354c", data);
+        Assert.assertEquals(0, new ProcessRunnerImpl(runConfig, new ConsoleLogAdapter(), state).parseFileToMetrics().size());
+        Assert.assertTrue(state.getLateCount() > 0);
+
+        MetricBatch open = new MetricBatch(state.getPathTable(), 16);
+        Assert.assertTrue(state.flush(open) > 0);
+        Assert.assertTrue(open.toLines().stream().anyMatch(line -> line.startsWith("mos-cdr:10.0.1.8:Acme_Calling_MOS_count 1 ")));
+    }
+
+    @Test
+    public void testPathTableIsReplacedOnceTooLarge() throws Exception {
+        String data = Files.readString(Path.of(resourcePath("/cdr/CDC_cdr202206130354a")));
+
+        RunConfig runConfig = runConfig(writeFile("CDC_cdr202206130354a", data));
+        runConfig.sourceIpFiltersAnyOf = List.of("*.*.*.*");
+        runConfig.aggregateStepSeconds = 300L;
+        runConfig.quantiles = List.of(0.5);
+
+        AggregationState state = new AggregationState(runConfig, 1);
+        MetricPathTable paths = state.getPathTable();
+
+        new ProcessRunnerImpl(runConfig, new ConsoleLogAdapter(), state).parseFileToMetrics();
+
+        // the open interval was moved to a new table
+        Assert.assertNotSame(paths, state.getPathTable());
+
+        MetricBatch open = new MetricBatch(state.getPathTable(), 16);
+        state.flush(open);
+        Assert.assertTrue(open.toLines().stream().anyMatch(line -> line.startsWith("mos-cdr:10.0.1.8:Acme_Calling_MOS_count 1 ")));
+        Assert.assertTrue(open.toLines().stream().anyMatch(line -> line.startsWith("mos-cdr:10.0.1.8:Acme_Calling_MOS_p50 ")));
+    }
+
+    @Test
+    public void testFlushIntervalsAfterPathTableIsReplaced() throws Exception {
+        try (DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            receiver.setSoTimeout(1000);
+
+            RunConfig.RecipientInfo recipient = new RunConfig.RecipientInfo();
+            recipient.hostName = "127.0.0.1";
+            recipient.port = receiver.getLocalPort();
+
+            RunConfig runConfig = runConfig(resourcePath("/cdr/CDC_cdr202206130354a"));
+            runConfig.sourceIpFiltersAnyOf = List.of("*.*.*.*");
+            runConfig.aggregateStepSeconds = 300L;
+            runConfig.quantiles = List.of(0.5);
+            runConfig.realmRollupPath = "mos-cdr-realm";
+            runConfig.suppressSendGraphite = false;
+            runConfig.recipients = List.of(recipient);
+
+            // as ProcessCdrCommand does, with a path table replaced at the end of the file
+            ProcessRunnerImpl runner = new ProcessRunnerImpl(runConfig, new ConsoleLogAdapter(), new AggregationState(runConfig, 1));
+            runner.execute();
+            runner.flushIntervals();
+
+            List<String> lines = new ArrayList<>();
+            byte[] buf = new byte[65536];
+
+            try {
+                while (true) {
+                    DatagramPacket packet = new DatagramPacket(buf, buf.length);
+                    receiver.receive(packet);
+                    lines.addAll(List.of(new String(buf, 0, packet.getLength(), StandardCharsets.UTF_8).split("\n")));
+                }
+            } catch (SocketTimeoutException e) {
+                // all received
+            }
+
+            Assert.assertTrue(lines.stream().anyMatch(line -> line.startsWith("mos-cdr:10.0.1.6:Acme_Calling_MOS_count 1 ")));
+            Assert.assertTrue(lines.stream().anyMatch(line -> line.startsWith("mos-cdr:10.0.1.8:Acme_Calling_MOS_p50 ")));
+            Assert.assertTrue(lines.stream().anyMatch(line -> line.startsWith("mos-cdr-realm:") && line.contains(":Ingress_Acme_Calling_MOS_count 2 ")));
+        } finally {
+            GraphiteClientRegistry.getInstance().closeAll();
+        }
+    }
+
+    private RunConfig runConfig(String filePath) throws Exception {
+        RunConfig runConfig = new RunConfig();
+        runConfig.headerFilePath = resourcePath("/cdr/SBC_Headers.csv");
+        runConfig.filePath = filePath;
+        runConfig.graphiteBasePath = "mos-cdr";
+        runConfig.suppressSendGraphite = true;
+
+        return runConfig;
+    }
+
+    private String writeFile(String name, String data) throws Exception {
+        File file = new File(tempFolder.getRoot(), name);
+        Files.writeString(file.toPath(), data);
+
+        return file.getAbsolutePath();
+    }
+
+    private String resourcePath(String name) throws Exception {
+        return new File(getClass().getResource(name).toURI()).getAbsolutePath();
+    }
+}